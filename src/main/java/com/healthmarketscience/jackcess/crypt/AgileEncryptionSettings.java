@@ -0,0 +1,85 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import com.healthmarketscience.jackcess.crypt.impl.office.XmlEncryptionDescriptor;
+import com.healthmarketscience.jackcess.impl.CustomToStringStyle;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Password key derivation settings used when writing Agile encryption info
+ * (see {@link CryptFileUtil}).  A lower spin count makes opening the
+ * resulting database cheaper, at the cost of making the password easier to
+ * brute-force.
+ * <p>
+ * Note, Standard (ECMA-376) encryption always uses SHA-1 with 50000
+ * iterations (readers do not get the iteration count from the file), so
+ * these settings do not apply to it.
+ *
+ * @author James Ahlborn
+ */
+public class AgileEncryptionSettings
+{
+  /** default spin count (used by Access 2013+) */
+  public static final int DEFAULT_SPIN_COUNT = 100000;
+  /** default password hash algorithm (used by Access 2013+) */
+  public static final String DEFAULT_HASH_ALGORITHM = "SHA512";
+  /** max spin count allowed by the Office encryption spec */
+  public static final int MAX_SPIN_COUNT = 10000000;
+
+  private int _spinCount = DEFAULT_SPIN_COUNT;
+  private String _hashAlgorithm = DEFAULT_HASH_ALGORITHM;
+
+  public AgileEncryptionSettings() {}
+
+  public int getSpinCount() {
+    return _spinCount;
+  }
+
+  /**
+   * Sets the number of hash iterations used to derive the password key
+   * (0 to {@link #MAX_SPIN_COUNT}).
+   */
+  public AgileEncryptionSettings setSpinCount(int newSpinCount) {
+    if((newSpinCount < 0) || (newSpinCount > MAX_SPIN_COUNT)) {
+      throw new IllegalArgumentException("Invalid spin count " + newSpinCount);
+    }
+    _spinCount = newSpinCount;
+    return this;
+  }
+
+  public String getHashAlgorithm() {
+    return _hashAlgorithm;
+  }
+
+  /**
+   * Sets the hash algorithm used to derive the password key (e.g. "SHA1",
+   * "SHA256", "SHA512").
+   */
+  public AgileEncryptionSettings setHashAlgorithm(String newHashAlgorithm) {
+    // validate the algorithm name
+    XmlEncryptionDescriptor.initDigest(newHashAlgorithm);
+    _hashAlgorithm = newHashAlgorithm;
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return ToStringBuilder.reflectionToString(this, CustomToStringStyle.VALUE_INSTANCE);
+  }
+}
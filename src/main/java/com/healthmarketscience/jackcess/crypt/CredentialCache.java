@@ -0,0 +1,183 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.HandlerCache;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+
+/**
+ * Cache of the passwords which successfully opened database files, keyed by
+ * a fingerprint of the header page of the file (which includes the salt and
+ * password verifier), see {@link CryptCodecProvider#setCredentialCache}.
+ * When a file with the same fingerprint is opened again, the remembered
+ * password is tried first, without invoking the password callback.  This
+ * avoids repeated round trips to (e.g.) a remote secret store, as well as
+ * the expensive key derivations for any incorrect candidate passwords.
+ * <p>
+ * If a remembered password is rejected, it is discarded and the password
+ * callback is invoked as usual.  Note that the passwords are retained in
+ * memory (in the clear) for as long as they are cached, so a cache should
+ * only be shared by providers which are allowed to use the same passwords.
+ * The cache is bounded by the number of remembered passwords, discarding the
+ * least recently used passwords as necessary.
+ *
+ * @author James Ahlborn
+ */
+public class CredentialCache
+{
+  private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  private final int _maxEntries;
+  private final Map<ByteBuffer,String> _credentials;
+  private final LongAdder _hits = new LongAdder();
+  private final LongAdder _misses = new LongAdder();
+
+  public CredentialCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * @param maxEntries the max number of remembered passwords
+   */
+  public CredentialCache(int maxEntries) {
+    if(maxEntries < 1) {
+      throw new IllegalArgumentException("Invalid max entries " + maxEntries);
+    }
+    _maxEntries = maxEntries;
+    _credentials = new LinkedHashMap<ByteBuffer,String>(16, 0.75f, true) {
+      private static final long serialVersionUID = 0L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer,String> e) {
+        return (size() > _maxEntries);
+      }
+    };
+  }
+
+  public int getMaxEntries() {
+    return _maxEntries;
+  }
+
+  /**
+   * @return the number of remembered passwords
+   */
+  public synchronized int size() {
+    return _credentials.size();
+  }
+
+  /**
+   * @return the number of files opened using a remembered password
+   */
+  public long getHitCount() {
+    return _hits.sum();
+  }
+
+  /**
+   * @return the number of files which required the password callback
+   */
+  public long getMissCount() {
+    return _misses.sum();
+  }
+
+  /**
+   * Discards all remembered passwords (the statistics are not reset).
+   */
+  public synchronized void clear() {
+    _credentials.clear();
+  }
+
+  /**
+   * Creates a handler for the database in the given channel using the
+   * remembered password for the file if available, otherwise using the given
+   * password callback (remembering the password if the handler is created
+   * successfully).
+   */
+  CodecHandler createHandler(PageChannel channel, Supplier<String> callback,
+                             HandlerCache.HandlerFactory factory)
+    throws IOException
+  {
+    ByteBuffer key = ByteBuffer.wrap(
+        BaseCryptCodecHandler.getHeaderFingerprint(channel));
+
+    String pwd = get(key);
+    if(pwd != null) {
+      try {
+        CodecHandler handler = factory.create(() -> pwd);
+        _hits.increment();
+        return handler;
+      } catch(InvalidCredentialsException e) {
+        // no longer valid (should not happen unless the file was modified
+        // in place), fall back to the callback
+        remove(key, pwd);
+      }
+    }
+
+    _misses.increment();
+    RecordingCallback recCallback = new RecordingCallback(callback);
+    CodecHandler handler = factory.create(recCallback);
+    if(recCallback._pwd != null) {
+      put(key, recCallback._pwd);
+    }
+    return handler;
+  }
+
+  private synchronized String get(ByteBuffer key) {
+    return _credentials.get(key);
+  }
+
+  private synchronized void put(ByteBuffer key, String pwd) {
+    _credentials.put(key, pwd);
+  }
+
+  private synchronized void remove(ByteBuffer key, String pwd) {
+    _credentials.remove(key, pwd);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "CredentialCache[%d of %d entries, hits=%d, misses=%d]", size(),
+        _maxEntries, getHitCount(), getMissCount());
+  }
+
+  /**
+   * Password callback which remembers the password it returned.
+   */
+  private static final class RecordingCallback implements Supplier<String>
+  {
+    private final Supplier<String> _callback;
+    private String _pwd;
+
+    private RecordingCallback(Supplier<String> callback) {
+      _callback = callback;
+    }
+
+    @Override
+    public String get() {
+      _pwd = _callback.get();
+      return _pwd;
+    }
+  }
+}
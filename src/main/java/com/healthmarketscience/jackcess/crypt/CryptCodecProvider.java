@@ -17,12 +17,23 @@ limitations under the License.
 package com.healthmarketscience.jackcess.crypt;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.HandlerCache;
 import com.healthmarketscience.jackcess.crypt.impl.JetCryptCodecHandler;
 import com.healthmarketscience.jackcess.crypt.impl.MSISAMCryptCodecHandler;
 import com.healthmarketscience.jackcess.crypt.impl.OfficeCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.OpenPrefetchCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.ReadAheadCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionInfoWriter;
 import com.healthmarketscience.jackcess.impl.CodecHandler;
 import com.healthmarketscience.jackcess.impl.CodecProvider;
 import com.healthmarketscience.jackcess.impl.DefaultCodecProvider;
@@ -48,6 +59,21 @@ import com.healthmarketscience.jackcess.impl.PageChannel;
  *     the password configured via the constructor or {@link
  *     #setPassword})</li>
  * </ul>
+ * <p>
+ * Optionally, sequential page reads may be sped up by decoding upcoming pages
+ * in the background (see {@link #setReadAhead}).  When the same file is
+ * opened multiple times using the same provider (e.g. one Database per reader
+ * thread), the handlers may be shared so that the expensive key derivation is
+ * only done once (see {@link #setShareHandlers}).  Decrypted pages may also
+ * be cached across files (see {@link #setPageCache}) or even across
+ * processes (see {@link #setSharedPageCache}), and the first pages of a
+ * database may be read while the key derivation is in progress (see {@link
+ * #setOpenPrefetchPages}).  The password which opened a file may be
+ * remembered, so that re-opening the file does not require the password
+ * callback (see {@link #setCredentialCache}).  When many databases are open
+ * at once, the memory retained by the handlers may be minimized (see {@link
+ * #setLeanHandlers}) and the total memory used by the caches may be capped
+ * (see {@link #setMemoryBudget}).
  *
  * @author Vladimir Berezniker
  */
@@ -55,6 +81,20 @@ public class CryptCodecProvider implements CodecProvider, PasswordCallback
 {
   private String _password;
   private Supplier<String> _callback;
+  private FileChannel _readAheadChannel;
+  private int _readAheadPages;
+  private Executor _readAheadExecutor = ForkJoinPool.commonPool();
+  private HandlerCache _handlerCache;
+  private DecryptedPageCache _pageCache;
+  private SharedPageCache _sharedPageCache;
+  private int _openPrefetchPages;
+  private boolean _leanHandlers;
+  private boolean _incrementalEncode;
+  private CryptMemoryBudget _memoryBudget;
+  private CredentialCache _credentialCache;
+  /** encryption info of a just created database, whose password hash is
+      re-used when the handler is created */
+  private EncryptionInfoWriter.NewEncryptionInfo _newEncInfo;
 
   public CryptCodecProvider() {
     this(null, null);
@@ -104,6 +144,211 @@ public class CryptCodecProvider implements CodecProvider, PasswordCallback
     return this;
   }
 
+  public FileChannel getReadAheadChannel() {
+    return _readAheadChannel;
+  }
+
+  public int getReadAheadPages() {
+    return _readAheadPages;
+  }
+
+  /**
+   * Enables read-ahead for encrypted databases.  When sequential page access
+   * is detected, the next {@code numPages} pages will be read from the given
+   * channel and decoded in the background.  The given channel must be the
+   * same channel used to open the Database (e.g. via {@link
+   * com.healthmarketscience.jackcess.DatabaseBuilder#setChannel}).
+   *
+   * @param channel the channel for the database file, {@code null} to
+   *                disable read-ahead
+   * @param numPages the max number of pages to decode ahead
+   */
+  public CryptCodecProvider setReadAhead(FileChannel channel, int numPages) {
+    _readAheadChannel = channel;
+    _readAheadPages = numPages;
+    return this;
+  }
+
+  public Executor getReadAheadExecutor() {
+    return _readAheadExecutor;
+  }
+
+  /**
+   * Sets the Executor used to decode pages for read-ahead (defaults to the
+   * common ForkJoinPool).
+   */
+  public CryptCodecProvider setReadAheadExecutor(Executor newExecutor) {
+    _readAheadExecutor = newExecutor;
+    return this;
+  }
+
+  public boolean isShareHandlers() {
+    return (_handlerCache != null);
+  }
+
+  /**
+   * Enables/disables sharing of handlers between Databases opened for the
+   * same file using this provider.  Handlers are safe for concurrent use, so
+   * a shared handler only needs to derive the encryption keys once.  A shared
+   * handler is only used if the password provided for the subsequent open
+   * matches the original password.  At most {@link
+   * HandlerCache#DEFAULT_MAX_HANDLERS} handlers are retained (see {@link
+   * #clearSharedHandlers}).
+   */
+  public CryptCodecProvider setShareHandlers(boolean shareHandlers) {
+    if(shareHandlers != isShareHandlers()) {
+      _handlerCache = (shareHandlers ? new HandlerCache() : null);
+    }
+    return this;
+  }
+
+  /**
+   * Discards any shared handlers retained by this provider (handlers already
+   * in use by open Databases are not affected).
+   */
+  public void clearSharedHandlers() {
+    HandlerCache handlerCache = _handlerCache;
+    if(handlerCache != null) {
+      handlerCache.clear();
+    }
+  }
+
+  public DecryptedPageCache getPageCache() {
+    return _pageCache;
+  }
+
+  /**
+   * Sets the cache of decrypted pages used by the handlers created by this
+   * provider (disabled by default).  A single cache may be shared by any
+   * number of providers, so that copies of the same encrypted database
+   * (e.g. snapshots) only need to decrypt each distinct page once.
+   *
+   * @param newPageCache the page cache, {@code null} to disable page caching
+   */
+  public CryptCodecProvider setPageCache(DecryptedPageCache newPageCache) {
+    _pageCache = newPageCache;
+    return this;
+  }
+
+  public SharedPageCache getSharedPageCache() {
+    return _sharedPageCache;
+  }
+
+  /**
+   * Sets the cache of decrypted pages shared with other processes used by
+   * the handlers created by this provider (disabled by default).  If a
+   * {@link #setPageCache page cache} is also configured, it is checked
+   * first.
+   *
+   * @param newSharedPageCache the shared page cache, {@code null} to disable
+   *                           shared page caching
+   */
+  public CryptCodecProvider setSharedPageCache(
+      SharedPageCache newSharedPageCache) {
+    _sharedPageCache = newSharedPageCache;
+    return this;
+  }
+
+  public int getOpenPrefetchPages() {
+    return _openPrefetchPages;
+  }
+
+  /**
+   * Sets the number of pages following the header page (which include the
+   * system catalog) which are read while the key derivation/password
+   * verification is in progress, and then decoded in parallel using the
+   * common ForkJoinPool (disabled by default).  The decoded pages are held
+   * only until the database has been opened.  The pages are read using the
+   * {@link #setReadAheadExecutor read-ahead executor}.
+   *
+   * @param numPages the number of pages to prefetch, 0 to disable
+   */
+  public CryptCodecProvider setOpenPrefetchPages(int numPages) {
+    if(numPages < 0) {
+      throw new IllegalArgumentException(
+          "Invalid open prefetch page count " + numPages);
+    }
+    _openPrefetchPages = numPages;
+    return this;
+  }
+
+  public boolean isLeanHandlers() {
+    return _leanHandlers;
+  }
+
+  /**
+   * Enables/disables lean mode for the handlers created by this provider
+   * (disabled by default).  Lean handlers retain as little memory as
+   * possible at the cost of some extra CPU, which is useful when many
+   * databases are held open at once.
+   *
+   * @see BaseCryptCodecHandler#setLean
+   */
+  public CryptCodecProvider setLeanHandlers(boolean leanHandlers) {
+    _leanHandlers = leanHandlers;
+    return this;
+  }
+
+  public boolean isIncrementalEncode() {
+    return _incrementalEncode;
+  }
+
+  /**
+   * Enables/disables incremental re-encoding for the handlers created by this
+   * provider (disabled by default).  Incremental re-encoding trades the
+   * memory needed to retain recently encoded pages for less cpu when the
+   * same pages are written repeatedly.
+   *
+   * @see BaseCryptCodecHandler#setIncrementalEncode
+   */
+  public CryptCodecProvider setIncrementalEncode(boolean incrementalEncode) {
+    _incrementalEncode = incrementalEncode;
+    return this;
+  }
+
+  public CryptMemoryBudget getMemoryBudget() {
+    return _memoryBudget;
+  }
+
+  /**
+   * Sets the memory budget to which all the caches used by the handlers
+   * created by this provider are charged (none by default).  A single budget
+   * is generally shared by all the providers in a process, capping the total
+   * memory used by the crypt layer caches.
+   */
+  public CryptCodecProvider setMemoryBudget(CryptMemoryBudget newMemoryBudget) {
+    _memoryBudget = newMemoryBudget;
+    return this;
+  }
+
+  public CredentialCache getCredentialCache() {
+    return _credentialCache;
+  }
+
+  /**
+   * Sets the cache used to remember which password opened each file (none
+   * by default).  A file which was opened before is opened using the
+   * remembered password, without invoking the password callback.
+   */
+  public CryptCodecProvider setCredentialCache(
+      CredentialCache newCredentialCache) {
+    _credentialCache = newCredentialCache;
+    return this;
+  }
+
+  /**
+   * Sets the (newly created) encryption info of the database which will be
+   * opened using this provider, so that the password key derivation done
+   * while creating the info is not repeated (see {@link
+   * CryptCodecUtil#createAgileDatabase}).  The hash in the info replaces the
+   * password verification.
+   */
+  CryptCodecProvider setNewEncryptionInfo(
+      EncryptionInfoWriter.NewEncryptionInfo newEncInfo) {
+    _newEncInfo = newEncInfo;
+    return this;
+  }
+
   @Override
   public CodecHandler createHandler(PageChannel channel, Charset charset)
     throws IOException
@@ -114,6 +359,105 @@ public class CryptCodecProvider implements CodecProvider, PasswordCallback
       callback = this;
     }
 
+    // start reading the first pages while the (expensive) handler is created
+    CompletableFuture<List<ByteBuffer>> prefetchF = null;
+    if((_openPrefetchPages > 0) &&
+       (channel.getFormat().CODEC_TYPE != JetFormat.CodecType.NONE)) {
+      prefetchF = OpenPrefetchCodecHandler.readPages(
+          channel, _openPrefetchPages, _readAheadExecutor);
+    }
+
+    CodecHandler handler = null;
+    boolean success = false;
+    try {
+      switch(channel.getFormat().CODEC_TYPE) {
+      case MSISAM:
+      case OFFICE:
+        if(_newEncInfo != null) {
+          handler = OfficeCryptCodecHandler.createForEncryptionInfo(
+              callback, channel, charset, _newEncInfo);
+          // only good for the database which was just created
+          _newEncInfo = null;
+        } else if(_credentialCache != null) {
+          // try the password which opened this file before (if any)
+          handler = _credentialCache.createHandler(
+              channel, callback,
+              cb -> createPasswordHandler(channel, charset, cb));
+        } else {
+          handler = createPasswordHandler(channel, charset, callback);
+        }
+        break;
+      default:
+        handler = createCryptHandler(channel, charset, callback);
+      }
+      success = true;
+    } finally {
+      if(!success && (prefetchF != null)) {
+        // e.g. invalid password, the prefetched pages will never be used
+        prefetchF.cancel(false);
+      }
+    }
+
+    if(handler instanceof BaseCryptCodecHandler) {
+      BaseCryptCodecHandler cryptHandler = (BaseCryptCodecHandler)handler;
+      if(_leanHandlers) {
+        cryptHandler.setLean(true);
+      }
+      if(_incrementalEncode) {
+        cryptHandler.setIncrementalEncode(true);
+      }
+      if(_memoryBudget != null) {
+        cryptHandler.setMemoryBudget(_memoryBudget);
+      }
+    }
+
+    if(prefetchF != null) {
+      if(handler != DefaultCodecProvider.DUMMY_HANDLER) {
+        handler = OpenPrefetchCodecHandler.create(handler, prefetchF,
+                                                  ForkJoinPool.commonPool(),
+                                                  _memoryBudget);
+      } else {
+        prefetchF.cancel(false);
+      }
+    }
+
+    if((_sharedPageCache != null) &&
+       (handler != DefaultCodecProvider.DUMMY_HANDLER)) {
+      handler = _sharedPageCache.wrap(handler, channel);
+    }
+
+    if((_pageCache != null) &&
+       (handler != DefaultCodecProvider.DUMMY_HANDLER)) {
+      handler = _pageCache.wrap(handler, channel, _memoryBudget);
+    }
+
+    if((_readAheadChannel != null) &&
+       (handler != DefaultCodecProvider.DUMMY_HANDLER)) {
+      handler = new ReadAheadCodecHandler(
+          handler, _readAheadChannel, channel.getFormat().PAGE_SIZE,
+          _readAheadPages, _readAheadExecutor, _memoryBudget);
+    }
+
+    return handler;
+  }
+
+  private CodecHandler createPasswordHandler(
+      PageChannel channel, Charset charset, Supplier<String> callback)
+    throws IOException
+  {
+    if(_handlerCache != null) {
+      // these handlers are expensive to create, so share them if possible
+      return _handlerCache.getHandler(
+          channel, charset, callback,
+          cb -> createCryptHandler(channel, charset, cb));
+    }
+    return createCryptHandler(channel, charset, callback);
+  }
+
+  private static CodecHandler createCryptHandler(
+      PageChannel channel, Charset charset, Supplier<String> callback)
+    throws IOException
+  {
     JetFormat format = channel.getFormat();
     switch(format.CODEC_TYPE) {
     case NONE:
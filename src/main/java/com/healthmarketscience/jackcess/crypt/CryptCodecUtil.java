@@ -16,7 +16,12 @@ limitations under the License.
 
 package com.healthmarketscience.jackcess.crypt;
 
+import java.io.File;
+import java.io.IOException;
+
+import com.healthmarketscience.jackcess.Database;
 import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionInfoWriter;
 
 /**
  * Utility class for configuring the {@link CryptCodecProvider} on the given
@@ -44,4 +49,40 @@ public class CryptCodecUtil
     return db.setCodecProvider(new CryptCodecProvider(pwd));
   }
 
+  /**
+   * Creates and opens a new, empty database with the given format which is
+   * encrypted using Agile encryption with the given password.
+   *
+   * @see CryptFileUtil#createAgile
+   */
+  public static Database createAgileDatabase(
+      File file, Database.FileFormat fileFormat, String pwd)
+    throws IOException
+  {
+    return createAgileDatabase(file, fileFormat, pwd,
+                               new AgileEncryptionSettings());
+  }
+
+  /**
+   * Creates and opens a new, empty database with the given format which is
+   * encrypted using Agile encryption with the given password and key
+   * derivation settings.  The (expensive) password key derivation is only
+   * done once, the key derived while creating the database is re-used to
+   * open it.
+   *
+   * @see CryptFileUtil#createAgile
+   */
+  public static Database createAgileDatabase(
+      File file, Database.FileFormat fileFormat, String pwd,
+      AgileEncryptionSettings settings)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    EncryptionInfoWriter.NewEncryptionInfo encInfo =
+      CryptFileUtil.newAgileInfo(pwd, settings);
+    CryptFileUtil.createAgile(file, fileFormat, pwd, encInfo, startTime);
+    return new DatabaseBuilder(file).setCodecProvider(
+        new CryptCodecProvider(pwd).setNewEncryptionInfo(encInfo)).open();
+  }
+
 }
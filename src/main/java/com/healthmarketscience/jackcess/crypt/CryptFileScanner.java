@@ -0,0 +1,222 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scans a directory tree for database files and determines the encryption
+ * used by each one (see {@link CryptFileUtil#probe}).  Only the header page
+ * of each file is read.  The files are probed in parallel using the given
+ * Executor, with a bounded number of probes pending at any time, and the
+ * results are reported to a {@link Listener} as they complete.
+ *
+ * @author James Ahlborn
+ */
+public class CryptFileScanner
+{
+  /** default file extensions which are scanned */
+  public static final Set<String> DEFAULT_EXTENSIONS =
+    Collections.unmodifiableSet(new HashSet<String>(
+                                    Arrays.asList("mdb", "accdb", "mny")));
+  /** default max number of pending probes per thread */
+  private static final int PENDING_PER_THREAD = 4;
+
+  /**
+   * Receives the results of a scan.  Note, methods will be invoked
+   * concurrently from the threads of the Executor.
+   */
+  public interface Listener
+  {
+    /**
+     * Called with the encryption info for a database file.
+     */
+    public void fileProbed(Path file, EncryptionInfo info);
+
+    /**
+     * Called if a file could not be read (or is not a database).
+     */
+    public void fileFailed(Path file, Exception failure);
+  }
+
+  private final Executor _executor;
+  private final int _maxPending;
+  private Set<String> _extensions = DEFAULT_EXTENSIONS;
+
+  /**
+   * @param executor the Executor in which files will be probed
+   * @param maxPending the max number of files which may be pending (queued
+   *                   or being probed) at any time
+   */
+  public CryptFileScanner(Executor executor, int maxPending) {
+    if(maxPending < 1) {
+      throw new IllegalArgumentException("Invalid max pending " + maxPending);
+    }
+    _executor = executor;
+    _maxPending = maxPending;
+  }
+
+  public Set<String> getExtensions() {
+    return _extensions;
+  }
+
+  /**
+   * Sets the (case-insensitive) extensions of the files which will be
+   * probed (defaults to {@link #DEFAULT_EXTENSIONS}).
+   */
+  public CryptFileScanner setExtensions(Set<String> newExtensions) {
+    Set<String> extensions = new HashSet<String>();
+    for(String ext : newExtensions) {
+      extensions.add(ext.toLowerCase(Locale.ROOT));
+    }
+    _extensions = Collections.unmodifiableSet(extensions);
+    return this;
+  }
+
+  /**
+   * Scans the given directory tree using a new pool with the given number of
+   * threads (which is shut down when the scan is complete).
+   *
+   * @return the number of files found
+   */
+  public static long scan(Path root, int numThreads, Listener listener)
+    throws IOException
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      return new CryptFileScanner(executor, numThreads * PENDING_PER_THREAD)
+        .scan(root, listener);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Scans the given directory tree, reporting each matching file to the
+   * given listener.  Returns once all the files have been reported.  If the
+   * listener throws an exception, the scan is stopped and the exception is
+   * re-thrown.
+   *
+   * @return the number of files found
+   */
+  public long scan(Path root, final Listener listener) throws IOException
+  {
+    final Semaphore pending = new Semaphore(_maxPending);
+    final AtomicReference<RuntimeException> listenerFailure =
+      new AtomicReference<RuntimeException>();
+    final AtomicLong numFiles = new AtomicLong();
+
+    try {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+          throws IOException
+        {
+          if(!attrs.isRegularFile() || !isMatch(file)) {
+            return FileVisitResult.CONTINUE;
+          }
+
+          acquire(pending, 1);
+          if(listenerFailure.get() != null) {
+            pending.release();
+            return FileVisitResult.TERMINATE;
+          }
+
+          numFiles.incrementAndGet();
+          try {
+            _executor.execute(() -> {
+                try {
+                  probe(file, listener);
+                } catch(RuntimeException e) {
+                  listenerFailure.compareAndSet(null, e);
+                } finally {
+                  pending.release();
+                }
+              });
+          } catch(RuntimeException e) {
+            pending.release();
+            throw e;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+          listener.fileFailed(file, e);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } finally {
+      // wait for all pending probes
+      acquire(pending, _maxPending);
+      pending.release(_maxPending);
+    }
+
+    if(listenerFailure.get() != null) {
+      throw listenerFailure.get();
+    }
+    return numFiles.get();
+  }
+
+  private boolean isMatch(Path file) {
+    String fileName = file.getFileName().toString();
+    int extIdx = fileName.lastIndexOf('.');
+    return ((extIdx >= 0) &&
+            _extensions.contains(
+                fileName.substring(extIdx + 1).toLowerCase(Locale.ROOT)));
+  }
+
+  private static void probe(Path file, Listener listener)
+  {
+    EncryptionInfo info = null;
+    try {
+      info = CryptFileUtil.probe(file.toFile());
+    } catch(IOException | RuntimeException e) {
+      listener.fileFailed(file, e);
+      return;
+    }
+    listener.fileProbed(file, info);
+  }
+
+  private static void acquire(Semaphore semaphore, int permits)
+    throws IOException
+  {
+    try {
+      semaphore.acquire(permits);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Scan interrupted");
+    }
+  }
+}
@@ -0,0 +1,842 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.crypt.impl.DelegatingCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.JetCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.OfficeCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.PageDecodeTask;
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.crypt.impl.PagePipeline;
+import com.healthmarketscience.jackcess.crypt.impl.PageStructureChecker;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionInfoWriter;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.DatabaseImpl;
+import com.healthmarketscience.jackcess.impl.DefaultCodecProvider;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import com.healthmarketscience.jackcess.impl.UnsupportedCodecException;
+import com.healthmarketscience.jackcess.util.MemFileChannel;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+/**
+ * Utility methods for processing entire encrypted database files at the page
+ * level (without opening them as a Database).  Pages are processed in
+ * parallel, using the common ForkJoinPool by default.
+ *
+ * @author James Ahlborn
+ */
+public class CryptFileUtil
+{
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private static final int DELTA_MAGIC = 0x4A50444C; // "JPDL"
+  private static final int DELTA_VERSION = 1;
+
+  private CryptFileUtil() {}
+
+  /**
+   * Writes a decrypted copy of the given source database to the given
+   * destination file using the common ForkJoinPool.
+   *
+   * @see #decrypt(File,File,CryptCodecProvider,ForkJoinPool)
+   */
+  public static Stats decrypt(File srcFile, File destFile,
+                              CryptCodecProvider provider)
+    throws IOException
+  {
+    return decrypt(srcFile, destFile, provider, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Writes a decrypted copy of the given source database to the given
+   * destination file.  The source file is memory-mapped and every page is
+   * decrypted in parallel using the given pool.  The encoding key and the
+   * encryption info are cleared in the header of the destination file, so it
+   * can subsequently be opened without a CodecProvider.
+   * <p>
+   * Note, MSISAM (Money) databases are always encrypted, so they are not
+   * supported.
+   *
+   * @param srcFile the encrypted database file
+   * @param destFile the file to which the decrypted database will be written
+   *                 (any existing file will be replaced)
+   * @param provider provider for the source database (and its password)
+   * @param pool the pool in which the pages will be decrypted
+   */
+  public static Stats decrypt(File srcFile, File destFile,
+                              CryptCodecProvider provider, ForkJoinPool pool)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    checkDifferentFiles(srcFile, destFile);
+
+    try(PageFile src = PageFile.open(srcFile.toPath(), true)) {
+
+      JetFormat format = src.getFormat();
+      ByteBuffer header = src.readHeaderPage();
+      switch(format.CODEC_TYPE) {
+      case NONE:
+        break;
+      case JET:
+        JetCryptCodecHandler.clearEncodingKey(header, format);
+        break;
+      case OFFICE:
+        OfficeCryptCodecHandler.clearEncryptionInfo(header, format);
+        break;
+      default:
+        throw new UnsupportedCodecException(
+            "Databases with codec type " + format.CODEC_TYPE +
+            " cannot be decrypted");
+      }
+
+      final CodecHandler handler = src.createHandler(provider);
+      final ThreadLocal<ByteBuffer> tmpPage =
+        ThreadLocal.withInitial(src::createPageBuffer);
+
+      try(PageFile dest = PageFile.create(destFile.toPath(), format)) {
+        int numPages = src.getPageCount();
+        new PagePipeline(pool).copyPages(
+            src, dest, 1, numPages,
+            (page, pageNumber) -> PageDecodeTask.decodePage(
+                handler, page, pageNumber, tmpPage.get()));
+        dest.writeHeaderPage(header);
+        dest.force();
+
+        return new Stats(numPages, (long)numPages * src.getPageSize(),
+                         System.nanoTime() - startTime);
+      }
+    }
+  }
+
+  /**
+   * Writes a re-encrypted copy of the given source database, protected by
+   * the given new password, to the given destination file using the common
+   * ForkJoinPool.
+   *
+   * @see #changePassword(File,File,CryptCodecProvider,String,ForkJoinPool)
+   */
+  public static Stats changePassword(File srcFile, File destFile,
+                                     CryptCodecProvider provider,
+                                     String newPassword)
+    throws IOException
+  {
+    return changePassword(srcFile, destFile, provider, newPassword,
+                          ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Writes a re-encrypted copy of the given source database, protected by
+   * the given new password, to the given destination file.  New salts and
+   * keys are generated for the new password (using the same algorithms as
+   * the source database), and every page is decrypted with the old key and
+   * encrypted with the new key in parallel using the given pool.  Only a
+   * fixed number of pages are held in memory at any time.
+   * <p>
+   * Note, only Office databases using Agile or Standard (AES) encryption
+   * are supported.
+   *
+   * @param srcFile the encrypted database file
+   * @param destFile the file to which the re-encrypted database will be
+   *                 written (any existing file will be replaced)
+   * @param provider provider for the source database (and its current
+   *                 password)
+   * @param newPassword the new password for the destination database
+   * @param pool the pool in which the pages will be re-encrypted
+   */
+  public static Stats changePassword(File srcFile, File destFile,
+                                     CryptCodecProvider provider,
+                                     String newPassword, ForkJoinPool pool)
+    throws IOException
+  {
+    return changePassword(srcFile, destFile, provider, newPassword, null,
+                          pool);
+  }
+
+  /**
+   * Writes a re-encrypted copy of the given source database, protected by
+   * the given new password, to the given destination file.  If the source
+   * database uses Agile encryption, the given settings (if any) replace the
+   * key derivation parameters of the source database.
+   *
+   * @see #changePassword(File,File,CryptCodecProvider,String,ForkJoinPool)
+   */
+  public static Stats changePassword(File srcFile, File destFile,
+                                     CryptCodecProvider provider,
+                                     String newPassword,
+                                     AgileEncryptionSettings settings,
+                                     ForkJoinPool pool)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    checkDifferentFiles(srcFile, destFile);
+
+    try(PageFile src = PageFile.open(srcFile.toPath(), true)) {
+
+      JetFormat format = src.getFormat();
+      CodecHandler handler = unwrap(src.createHandler(provider));
+      if(!(handler instanceof OfficeCryptCodecHandler)) {
+        throw new UnsupportedCodecException(
+            "Cannot change the password of databases with codec type " +
+            format.CODEC_TYPE + " (" + handler.getClass().getSimpleName() +
+            ")");
+      }
+
+      // the encoding key is retained, only the encryption info changes
+      ByteBuffer header = src.readHeaderPage();
+      EncryptionInfoWriter.NewEncryptionInfo encInfo =
+        ((OfficeCryptCodecHandler)handler).createEncryptionInfo(
+            newPassword, settings, RANDOM);
+      OfficeCryptCodecHandler.writeEncryptionInfo(header, encInfo.getBytes());
+
+      return reencrypt(src, handler, header, destFile, newPassword, encInfo,
+                       pool, startTime);
+    }
+  }
+
+  /**
+   * Writes a copy of the given source database, encrypted with the default
+   * Agile encryption (AES-256) and protected by the given password, to the
+   * given destination file using the common ForkJoinPool.
+   *
+   * @see #convertToAgile(File,File,CryptCodecProvider,String,ForkJoinPool)
+   */
+  public static Stats convertToAgile(File srcFile, File destFile,
+                                     CryptCodecProvider provider,
+                                     String newPassword)
+    throws IOException
+  {
+    return convertToAgile(srcFile, destFile, provider, newPassword,
+                          ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Writes a copy of the given source database, encrypted with the default
+   * Agile encryption (AES-256) and protected by the given password, to the
+   * given destination file.  The source database may be unencrypted or use
+   * any of the supported Office encryption types.  Every page is decrypted
+   * (if necessary) and encrypted with the new key in parallel using the
+   * given pool.  Only a fixed number of pages are held in memory at any
+   * time.
+   * <p>
+   * Note, Agile encryption is only supported by Office (Access 2007+)
+   * databases, so Jet (mdb) databases cannot be converted.
+   *
+   * @param srcFile the source database file
+   * @param destFile the file to which the encrypted database will be
+   *                 written (any existing file will be replaced)
+   * @param provider provider for the source database (and its password, if
+   *                 any)
+   * @param newPassword the password for the destination database
+   * @param pool the pool in which the pages will be encrypted
+   */
+  public static Stats convertToAgile(File srcFile, File destFile,
+                                     CryptCodecProvider provider,
+                                     String newPassword, ForkJoinPool pool)
+    throws IOException
+  {
+    return convertToAgile(srcFile, destFile, provider, newPassword,
+                          new AgileEncryptionSettings(), pool);
+  }
+
+  /**
+   * Writes a copy of the given source database, encrypted with Agile
+   * encryption (AES-256) using the given key derivation settings and
+   * protected by the given password, to the given destination file.
+   *
+   * @see #convertToAgile(File,File,CryptCodecProvider,String,ForkJoinPool)
+   */
+  public static Stats convertToAgile(File srcFile, File destFile,
+                                     CryptCodecProvider provider,
+                                     String newPassword,
+                                     AgileEncryptionSettings settings,
+                                     ForkJoinPool pool)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    checkDifferentFiles(srcFile, destFile);
+
+    try(PageFile src = PageFile.open(srcFile.toPath(), true)) {
+
+      JetFormat format = src.getFormat();
+      if(format.CODEC_TYPE != JetFormat.CodecType.OFFICE) {
+        throw new UnsupportedCodecException(
+            "Databases with codec type " + format.CODEC_TYPE +
+            " cannot use agile encryption");
+      }
+
+      return convertToAgile(src, src.createHandler(provider), destFile,
+                            newPassword, newAgileInfo(newPassword, settings),
+                            pool, startTime);
+    }
+  }
+
+  /**
+   * Creates a new, empty database file with the given format, encrypted
+   * with the default Agile encryption (AES-256) and protected by the given
+   * password, using the common ForkJoinPool.  The pages of the empty
+   * database are encrypted as they are first written, and the resulting file
+   * may be opened using a {@link CryptCodecProvider} with the given password
+   * (all subsequently written pages will be encrypted).
+   * <p>
+   * Note, Agile encryption is only supported by Office (Access 2007+)
+   * database formats.
+   *
+   * @param file the database file to create (any existing file will be
+   *             replaced)
+   * @param fileFormat the format of the new database
+   * @param password the password for the new database
+   * @see CryptCodecUtil#createAgileDatabase
+   */
+  public static Stats createAgile(File file, Database.FileFormat fileFormat,
+                                  String password)
+    throws IOException
+  {
+    return createAgile(file, fileFormat, password,
+                       new AgileEncryptionSettings());
+  }
+
+  /**
+   * Creates a new, empty database file with the given format, encrypted
+   * with Agile encryption (AES-256) using the given key derivation settings
+   * and protected by the given password.
+   *
+   * @see #createAgile(File,Database.FileFormat,String)
+   */
+  public static Stats createAgile(File file, Database.FileFormat fileFormat,
+                                  String password,
+                                  AgileEncryptionSettings settings)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    return createAgile(file, fileFormat, password,
+                       newAgileInfo(password, settings), startTime);
+  }
+
+  /**
+   * Creates a new, empty database file with the given format, encrypted
+   * with the given (newly created) Agile encryption info for the given
+   * password.
+   */
+  static Stats createAgile(File file, Database.FileFormat fileFormat,
+                           String password,
+                           EncryptionInfoWriter.NewEncryptionInfo encInfo,
+                           long startTime)
+    throws IOException
+  {
+    DatabaseImpl.FileFormatDetails details =
+      DatabaseImpl.getFileFormatDetails(fileFormat);
+    if((details.getEmptyFilePath() == null) ||
+       (details.getFormat().CODEC_TYPE != JetFormat.CodecType.OFFICE)) {
+      throw new UnsupportedCodecException(
+          "Cannot create agile encrypted databases with format " + fileFormat);
+    }
+
+    InputStream in = DatabaseImpl.class.getClassLoader().getResourceAsStream(
+        details.getEmptyFilePath());
+    if(in == null) {
+      throw new IOException("Could not load empty database resource " +
+                            details.getEmptyFilePath());
+    }
+
+    // the (small) empty database is loaded into memory and encrypted as it
+    // is written to the new file
+    try(PageFile src = PageFile.open(MemFileChannel.newChannel(
+            in, MemFileChannel.RO_CHANNEL_MODE))) {
+      return convertToAgile(src, DefaultCodecProvider.DUMMY_HANDLER, file,
+                            password, encInfo, ForkJoinPool.commonPool(),
+                            startTime);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static Stats convertToAgile(
+      PageFile src, CodecHandler handler, File destFile, String newPassword,
+      EncryptionInfoWriter.NewEncryptionInfo encInfo, ForkJoinPool pool,
+      long startTime)
+    throws IOException
+  {
+    // unencrypted databases need an encoding key
+    ByteBuffer header = src.readHeaderPage();
+    OfficeCryptCodecHandler.initEncodingKey(header, src.getFormat(), RANDOM);
+    OfficeCryptCodecHandler.writeEncryptionInfo(header, encInfo.getBytes());
+
+    return reencrypt(src, handler, header, destFile, newPassword, encInfo,
+                     pool, startTime);
+  }
+
+  /**
+   * Creates new Agile encryption info for the given password (this is where
+   * the expensive password key derivation happens).
+   */
+  static EncryptionInfoWriter.NewEncryptionInfo newAgileInfo(
+      String password, AgileEncryptionSettings settings)
+  {
+    return EncryptionInfoWriter.writeAgile(
+        OfficeCryptCodecHandler.getPasswordBytes(password), settings, RANDOM);
+  }
+
+  private static Stats reencrypt(PageFile src, final CodecHandler handler,
+                                 ByteBuffer header, File destFile,
+                                 final String newPassword,
+                                 EncryptionInfoWriter.NewEncryptionInfo encInfo,
+                                 ForkJoinPool pool, long startTime)
+    throws IOException
+  {
+    JetFormat format = src.getFormat();
+    final ThreadLocal<ByteBuffer> tmpPage =
+      ThreadLocal.withInitial(src::createPageBuffer);
+
+    try(PageFile dest = PageFile.create(destFile.toPath(), format)) {
+      dest.writeHeaderPage(header);
+      // the password hash derived while writing the new encryption info is
+      // re-used, so the key derivation is only done once
+      final CodecHandler newHandler =
+        OfficeCryptCodecHandler.createForEncryptionInfo(
+            () -> newPassword, dest.getPageChannel(), format.CHARSET, encInfo);
+
+      int numPages = src.getPageCount();
+      new PagePipeline(pool).copyPages(
+          src, dest, 1, numPages,
+          (page, pageNumber) -> {
+            PageDecodeTask.decodePage(handler, page, pageNumber,
+                                      tmpPage.get());
+            encodePage(newHandler, page, pageNumber);
+          });
+      dest.force();
+
+      return new Stats(numPages, (long)numPages * src.getPageSize(),
+                       System.nanoTime() - startTime);
+    }
+  }
+
+  private static void encodePage(CodecHandler handler, ByteBuffer page,
+                                 int pageNumber)
+    throws IOException
+  {
+    ByteBuffer encPage = handler.encodePage(page, pageNumber, 0);
+    if(encPage != page) {
+      System.arraycopy(encPage.array(), 0, page.array(), 0, page.limit());
+    }
+  }
+
+  private static CodecHandler unwrap(CodecHandler handler) {
+    while(handler instanceof DelegatingCodecHandler) {
+      handler = ((DelegatingCodecHandler)handler).getDelegate();
+    }
+    return handler;
+  }
+
+  /**
+   * Determines the encryption used by the given database file by reading
+   * only its header page.  No password is needed and no keys are derived, so
+   * this is cheap enough to use when scanning large numbers of files.
+   */
+  public static EncryptionInfo probe(File file) throws IOException
+  {
+    try(PageFile pageFile = PageFile.open(file.toPath(), false)) {
+      return EncryptionInfo.read(pageFile);
+    }
+  }
+
+  /**
+   * Checks the integrity of the given database file using the common
+   * ForkJoinPool.
+   *
+   * @see #verify(File,CryptCodecProvider,ForkJoinPool)
+   */
+  public static IntegrityReport verify(File file, CryptCodecProvider provider)
+    throws IOException
+  {
+    return verify(file, provider, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Checks that every page of the given database file decrypts to a
+   * structurally valid page.  The file is memory-mapped and the pages are
+   * decrypted and checked in parallel using the given pool.  The page type
+   * and the header fields of every page are checked (for data pages, the
+   * free space and the row offsets), as well as the owning table definition
+   * of every data page and the usage maps of those tables.  Rows and indexes
+   * are not parsed, so this is much faster than reading every table, but is
+   * not a complete consistency check.
+   *
+   * @param file the encrypted database file
+   * @param provider provider for the database (and its password)
+   * @param pool the pool in which the pages will be decrypted
+   */
+  public static IntegrityReport verify(File file, CryptCodecProvider provider,
+                                       ForkJoinPool pool)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+
+    try(final PageFile src = PageFile.open(file.toPath(), true)) {
+
+      final CodecHandler handler = src.createHandler(provider);
+      final ThreadLocal<ByteBuffer> tmpPage =
+        ThreadLocal.withInitial(src::createPageBuffer);
+      final PageStructureChecker checker = new PageStructureChecker(
+          src.getFormat(), src.getPageCount());
+
+      int numPages = src.getPageCount();
+      new PagePipeline(pool).processPages(
+          src, 0, numPages,
+          (page, pageNumber) -> {
+            PageDecodeTask.decodePage(handler, page, pageNumber, tmpPage.get());
+            checker.checkPage(page, pageNumber);
+          });
+
+      final ByteBuffer page = src.createPageBuffer();
+      checker.checkUsageMaps(pageNumber -> {
+          src.readPage(page, pageNumber);
+          PageDecodeTask.decodePage(handler, page, pageNumber, null);
+          return page;
+        });
+
+      return new IntegrityReport(
+          new Stats(numPages, (long)numPages * src.getPageSize(),
+                    System.nanoTime() - startTime),
+          checker.getProblems());
+    }
+  }
+
+  /**
+   * Writes the pages of the given database file which have changed since
+   * the given base index to the given delta file using the common
+   * ForkJoinPool.
+   *
+   * @see #createDelta(File,PageHashIndex,File,ForkJoinPool)
+   */
+  public static PageHashIndex createDelta(File dbFile, PageHashIndex baseIndex,
+                                          File deltaFile)
+    throws IOException
+  {
+    return createDelta(dbFile, baseIndex, deltaFile, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Writes the pages of the given database file which have changed since
+   * the given base index to the given delta file.  The pages are compared
+   * exactly as stored, so no password is needed (the pages of an encrypted
+   * database are written still encrypted).  The delta can be applied to a
+   * replica of the version of the database described by the base index
+   * using {@link #applyDelta}.
+   * <p>
+   * Typical usage is to keep the index of the last version shipped to the
+   * replica in a sidecar file, and to replace it with the returned index
+   * once the delta has been applied.  The database must not be modified
+   * while the delta is created.
+   *
+   * @param dbFile the (current version of the) database file
+   * @param baseIndex the index of the version of the database held by the
+   *                  replica, {@code null} to write all the pages
+   * @param deltaFile the file to which the changed pages will be written
+   *                  (any existing file will be replaced)
+   * @param pool the pool in which the pages will be hashed
+   * @return the index of the given database file
+   */
+  public static PageHashIndex createDelta(File dbFile, PageHashIndex baseIndex,
+                                          File deltaFile, ForkJoinPool pool)
+    throws IOException
+  {
+    checkDifferentFiles(dbFile, deltaFile);
+
+    try(PageFile src = PageFile.open(dbFile.toPath(), true)) {
+
+      int pageSize = src.getPageSize();
+      if((baseIndex != null) && (baseIndex.getPageSize() != pageSize)) {
+        throw new IllegalArgumentException(
+            "Base index page size " + baseIndex.getPageSize() +
+            " does not match database page size " + pageSize);
+      }
+
+      PageHashIndex index = PageHashIndex.build(src, pool);
+      int numPages = index.getPageCount();
+      int[] changedPages = new int[numPages];
+      int numChanged = 0;
+      for(int i = 0; i < numPages; ++i) {
+        if((baseIndex == null) || index.isPageChanged(baseIndex, i)) {
+          changedPages[numChanged++] = i;
+        }
+      }
+
+      int basePageCount = ((baseIndex != null) ? baseIndex.getPageCount() : -1);
+      ByteBuffer page = src.createPageBuffer();
+      try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+              Files.newOutputStream(deltaFile.toPath())))) {
+        out.writeInt(DELTA_MAGIC);
+        out.writeInt(DELTA_VERSION);
+        out.writeInt(pageSize);
+        out.writeInt(basePageCount);
+        out.writeInt(numPages);
+        out.writeInt(numChanged);
+        for(int i = 0; i < numChanged; ++i) {
+          int pageNumber = changedPages[i];
+          out.writeInt(pageNumber);
+          if(pageNumber < basePageCount) {
+            // the replica page is verified before it is replaced
+            out.write(baseIndex.getPageHash(pageNumber));
+          }
+          src.readPage(page, pageNumber);
+          out.write(page.array(), 0, pageSize);
+        }
+      }
+
+      return index;
+    }
+  }
+
+  /**
+   * Applies a delta written by {@link #createDelta} to the given replica
+   * database file (which will be created if the delta includes all the
+   * pages).  Before any pages are written, the size of the replica and the
+   * pages to be replaced are checked against the base of the delta, which
+   * catches most attempts to apply a delta to the wrong version of the
+   * database.  Note, however, that the pages which are not replaced are not
+   * checked, so a replica which differs from the base only in those pages is
+   * not detected (the caller must ensure the replica is the base version).
+   * No password is needed.
+   *
+   * @param deltaFile the delta to apply
+   * @param replicaFile the replica database file to update in place
+   */
+  public static Stats applyDelta(File deltaFile, File replicaFile)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    checkDifferentFiles(deltaFile, replicaFile);
+
+    try(FileChannel replica = FileChannel.open(
+            replicaFile.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+      // verify all the pages before applying any of them
+      applyDelta(deltaFile, replica, false);
+      int numPages = applyDelta(deltaFile, replica, true);
+
+      return new Stats(numPages, replica.size(), System.nanoTime() - startTime);
+    }
+  }
+
+  private static int applyDelta(File deltaFile, FileChannel replica,
+                                boolean apply)
+    throws IOException
+  {
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(deltaFile.toPath())))) {
+
+      if((in.readInt() != DELTA_MAGIC) || (in.readInt() != DELTA_VERSION)) {
+        throw new IOException("Invalid delta file " + deltaFile);
+      }
+      int pageSize = in.readInt();
+      int basePageCount = in.readInt();
+      int numPages = in.readInt();
+      int numChanged = in.readInt();
+
+      if((basePageCount >= 0) &&
+         (replica.size() != ((long)basePageCount * pageSize))) {
+        throw new IOException(
+            "Replica size " + replica.size() + " does not match delta base " +
+            basePageCount + " pages of " + pageSize + " bytes");
+      }
+
+      SHA256Digest digest = new SHA256Digest();
+      byte[] baseHash = new byte[PageHashIndex.HASH_LENGTH];
+      byte[] curHash = new byte[PageHashIndex.HASH_LENGTH];
+      ByteBuffer page = ByteBuffer.allocate(pageSize);
+      for(int i = 0; i < numChanged; ++i) {
+        int pageNumber = in.readInt();
+        if((pageNumber < 0) || (pageNumber >= numPages)) {
+          throw new IOException("Invalid page number " + pageNumber +
+                                " in delta file " + deltaFile);
+        }
+        long pos = (long)pageNumber * pageSize;
+
+        if(pageNumber < basePageCount) {
+          in.readFully(baseHash);
+          if(!apply) {
+            readFully(replica, page, pos);
+            digest.update(page.array(), 0, pageSize);
+            digest.doFinal(curHash, 0);
+            if(!Arrays.equals(baseHash, curHash)) {
+              throw new IOException("Replica page " + pageNumber +
+                                    " does not match delta base");
+            }
+          }
+        }
+
+        in.readFully(page.array());
+        if(apply) {
+          page.clear();
+          while(page.hasRemaining()) {
+            replica.write(page, pos + page.position());
+          }
+        }
+      }
+
+      if(apply) {
+        replica.truncate((long)numPages * pageSize);
+        replica.force(true);
+      }
+      return numChanged;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buf, long pos)
+    throws IOException
+  {
+    buf.clear();
+    while(buf.hasRemaining()) {
+      if(channel.read(buf, pos + buf.position()) < 0) {
+        throw new IOException("Unexpected end of file at " + pos);
+      }
+    }
+  }
+
+  private static void checkDifferentFiles(File srcFile, File destFile)
+    throws IOException
+  {
+    if(destFile.exists() &&
+       Files.isSameFile(srcFile.toPath(), destFile.toPath())) {
+      throw new IllegalArgumentException(
+          "Source and destination must be different files: " + srcFile);
+    }
+  }
+
+  /**
+   * The results of an integrity check.
+   */
+  public static final class IntegrityReport
+  {
+    private final Stats _stats;
+    private final SortedMap<Integer,String> _problems;
+
+    private IntegrityReport(Stats stats, SortedMap<Integer,String> problems) {
+      _stats = stats;
+      _problems = problems;
+    }
+
+    public Stats getStats() {
+      return _stats;
+    }
+
+    /**
+     * @return {@code true} if no problems were found, {@code false}
+     *         otherwise
+     */
+    public boolean isIntact() {
+      return _problems.isEmpty();
+    }
+
+    /**
+     * @return the numbers of the pages with problems, in order
+     */
+    public int[] getCorruptPages() {
+      int[] pages = new int[_problems.size()];
+      int i = 0;
+      for(Integer pageNumber : _problems.keySet()) {
+        pages[i++] = pageNumber;
+      }
+      return pages;
+    }
+
+    /**
+     * @return a description of the (first) problem found for each page with
+     *         problems, by page number
+     */
+    public SortedMap<Integer,String> getProblems() {
+      return _problems;
+    }
+
+    @Override
+    public String toString() {
+      return (isIntact() ? "Intact" : (_problems.size() + " corrupt pages")) +
+        ", " + _stats;
+    }
+  }
+
+  /**
+   * Statistics about a completed file operation.
+   */
+  public static final class Stats
+  {
+    private final int _pageCount;
+    private final long _byteCount;
+    private final long _elapsedNanos;
+
+    private Stats(int pageCount, long byteCount, long elapsedNanos) {
+      _pageCount = pageCount;
+      _byteCount = byteCount;
+      _elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of pages processed
+     */
+    public int getPageCount() {
+      return _pageCount;
+    }
+
+    /**
+     * @return the number of bytes processed
+     */
+    public long getByteCount() {
+      return _byteCount;
+    }
+
+    /**
+     * @return the elapsed time of the operation in milliseconds
+     */
+    public long getElapsedMillis() {
+      return _elapsedNanos / 1000000L;
+    }
+
+    /**
+     * @return the throughput of the operation in MB (2^20 bytes) per second
+     */
+    public double getMegabytesPerSecond() {
+      double seconds = Math.max(_elapsedNanos, 1L) / 1e9d;
+      return (_byteCount / (double)(1 << 20)) / seconds;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d pages (%d bytes) in %d ms (%.1f MB/s)",
+                           _pageCount, _byteCount, getElapsedMillis(),
+                           getMegabytesPerSecond());
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Process-wide memory budget for the caches of the crypt layer (see {@link
+ * CryptCodecProvider#setMemoryBudget}).  Every cached entry of the caches
+ * which use the budget (decrypted pages, recently encoded pages, read-ahead
+ * and prefetched pages) is charged to the budget, and once the total exceeds
+ * the max size, entries are evicted across all the caches (and all the
+ * databases using them).  Thus, the total memory used by the caches has a
+ * hard cap, but the few databases which are actually in use at any given
+ * time may use all of it.
+ * <p>
+ * Entries are evicted by a combination of recency and cost (the "GreedyDual"
+ * algorithm): each entry has a priority of the current "inflation" value
+ * plus the (relative) cost of re-creating the entry.  The entry with the
+ * lowest priority is evicted first, and the inflation value is raised to its
+ * priority.  So, expensive entries outlive cheap entries which were used at
+ * about the same time, but all unused entries are eventually evicted.  Using
+ * an entry only marks it as used (without locking), and a used entry gets a
+ * "second chance" when it comes up for eviction (its priority is refreshed
+ * instead), so the recency is approximate.
+ * <p>
+ * Note that the per-thread state of the handlers (cipher parameters, temp
+ * buffers) is not charged to the budget (see {@link
+ * CryptCodecProvider#setLeanHandlers} for minimizing that state).
+ *
+ * @author James Ahlborn
+ */
+public class CryptMemoryBudget
+{
+  private static final Comparator<Charge> EVICTION_ORDER =
+    Comparator.<Charge>comparingLong(c -> c._priority)
+    .thenComparingLong(c -> c._seq);
+
+  private final long _maxBytes;
+  private final TreeSet<Charge> _charges = new TreeSet<Charge>(EVICTION_ORDER);
+  private long _size;
+  private long _inflation;
+  private long _seq;
+  private long _evictions;
+
+  /**
+   * @param maxBytes the max total size of the memory charged to this budget
+   */
+  public CryptMemoryBudget(long maxBytes) {
+    if(maxBytes < 0L) {
+      throw new IllegalArgumentException("Invalid max bytes " + maxBytes);
+    }
+    _maxBytes = maxBytes;
+  }
+
+  public long getMaxBytes() {
+    return _maxBytes;
+  }
+
+  /**
+   * @return the current total size of the memory charged to this budget
+   */
+  public synchronized long getSize() {
+    return _size;
+  }
+
+  /**
+   * @return the number of entries currently charged to this budget
+   */
+  public synchronized int getChargeCount() {
+    return _charges.size();
+  }
+
+  /**
+   * @return the number of entries evicted to keep the total within the max
+   *         size
+   */
+  public synchronized long getEvictionCount() {
+    return _evictions;
+  }
+
+  /**
+   * Evicts all the entries currently charged to this budget (the statistics
+   * are not reset).
+   */
+  public void clear() {
+    List<Charge> evicted = null;
+    synchronized(this) {
+      evicted = new ArrayList<Charge>(_charges);
+      _charges.clear();
+      _size = 0L;
+      for(Charge charge : evicted) {
+        charge._released = true;
+      }
+    }
+    evict(evicted);
+  }
+
+  /**
+   * Charges a new cache entry to this budget, evicting other entries (or
+   * this one) as necessary.  The given callback is invoked (from an
+   * arbitrary thread) when the entry is evicted, and must remove the entry
+   * from its cache.  Note, this method must not be invoked while holding any
+   * cache lock which may be needed by an eviction callback.
+   *
+   * @param bytes the (approximate) memory used by the entry
+   * @param cost the relative cost of re-creating the entry (at least 1)
+   * @param onEvict callback which removes the entry from its cache
+   *
+   * @return the charge for the entry, which must be released if the cache
+   *         discards the entry itself
+   */
+  public Charge charge(long bytes, int cost, Runnable onEvict)
+  {
+    if(bytes < 0L) {
+      throw new IllegalArgumentException("Invalid bytes " + bytes);
+    }
+    if(cost < 1) {
+      throw new IllegalArgumentException("Invalid cost " + cost);
+    }
+
+    Charge charge = new Charge(this, bytes, cost, onEvict);
+    List<Charge> evicted = null;
+    synchronized(this) {
+      prioritize(charge);
+      _charges.add(charge);
+      _size += bytes;
+      evicted = evictOverflow();
+    }
+    evict(evicted);
+    return charge;
+  }
+
+  private void prioritize(Charge charge) {
+    charge._priority = _inflation + charge._cost;
+    charge._seq = ++_seq;
+  }
+
+  private List<Charge> evictOverflow() {
+    List<Charge> evicted = Collections.emptyList();
+    // bound the second chances (entries may be re-used concurrently)
+    int numChances = _charges.size();
+    while(_size > _maxBytes) {
+      Charge charge = _charges.pollFirst();
+      if(charge._used && (numChances-- > 0)) {
+        // used since it was last prioritized, refresh its priority instead
+        charge._used = false;
+        prioritize(charge);
+        _charges.add(charge);
+        continue;
+      }
+      if(evicted.isEmpty()) {
+        evicted = new ArrayList<Charge>();
+      }
+      evicted.add(charge);
+      charge._released = true;
+      _size -= charge._bytes;
+      _inflation = charge._priority;
+      ++_evictions;
+    }
+    return evicted;
+  }
+
+  private static void evict(List<Charge> evicted) {
+    // note, the callbacks are invoked without holding the budget lock (they
+    // generally need the lock of the relevant cache)
+    for(Charge charge : evicted) {
+      charge._onEvict.run();
+    }
+  }
+
+  private synchronized void release(Charge charge) {
+    if(charge._released) {
+      return;
+    }
+    _charges.remove(charge);
+    _size -= charge._bytes;
+    charge._released = true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "CryptMemoryBudget[%d entries, %d of %d bytes, evictions=%d]",
+        getChargeCount(), getSize(), _maxBytes, getEvictionCount());
+  }
+
+  /**
+   * The memory charged to the budget for a cache entry.
+   */
+  public static final class Charge
+  {
+    private final CryptMemoryBudget _budget;
+    private final long _bytes;
+    private final int _cost;
+    private final Runnable _onEvict;
+    private long _priority;
+    private long _seq;
+    private boolean _released;
+    private volatile boolean _used;
+
+    private Charge(CryptMemoryBudget budget, long bytes, int cost,
+                   Runnable onEvict) {
+      _budget = budget;
+      _bytes = bytes;
+      _cost = cost;
+      _onEvict = onEvict;
+    }
+
+    public long getBytes() {
+      return _bytes;
+    }
+
+    /**
+     * Marks the entry as recently used.  This is cheap (does not lock), so it
+     * may be called on every use of the entry.
+     */
+    public void touch() {
+      _used = true;
+    }
+
+    /**
+     * @return {@code true} if the memory of the entry was released (or
+     *         evicted), {@code false} otherwise
+     */
+    public boolean isReleased() {
+      synchronized(_budget) {
+        return _released;
+      }
+    }
+
+    /**
+     * Releases the memory of an entry which was discarded by its cache (the
+     * eviction callback will not be invoked).
+     */
+    public void release() {
+      _budget.release(this);
+    }
+  }
+}
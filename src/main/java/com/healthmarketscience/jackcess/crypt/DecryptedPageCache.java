@@ -0,0 +1,427 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.DelegatingCodecHandler;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+
+/**
+ * Cache of decrypted pages which may be shared by all the databases opened
+ * in a process (see {@link CryptCodecProvider#setPageCache}).  Pages are
+ * keyed by a fingerprint of the encryption key material, the page number and
+ * the encrypted page contents, so the plaintext decrypted for one copy of a
+ * database (e.g. yesterday's snapshot) is reused for any other copy which
+ * has the same encrypted page.
+ * <p>
+ * The key fingerprint is a hash of the header page of the database (which
+ * includes all the encryption info), so copies of a database share cached
+ * pages as long as they were not re-encrypted.  A cached page is only used
+ * if its encrypted contents exactly match the page being decoded (the
+ * encrypted page is retained along with the decrypted page), so a cached
+ * page can never be returned for a page which has since been modified.
+ * <p>
+ * The cache is bounded by the total size of the cached pages (encrypted and
+ * decrypted), evicting the least recently used pages as necessary.  If the
+ * provider has a {@link CryptMemoryBudget}, the cached pages are also
+ * charged to (and may be evicted by) the budget.
+ *
+ * @author James Ahlborn
+ */
+public class DecryptedPageCache
+{
+  /** the cache is split into segments (of at least the min size) to reduce
+      lock contention */
+  private static final int MAX_SEGMENTS = 16;
+  private static final long MIN_SEGMENT_BYTES = 1L << 20;
+  /** approximate memory overhead of each cached page */
+  private static final int ENTRY_OVERHEAD = 128;
+  /** relative cost of a cached page (saves a full page decryption, possibly
+      for many databases) */
+  private static final int PAGE_COST = 2;
+
+  private final long _maxBytes;
+  private final Segment[] _segments;
+  private final LongAdder _hits = new LongAdder();
+  private final LongAdder _misses = new LongAdder();
+  private final LongAdder _evictions = new LongAdder();
+
+  /**
+   * @param maxBytes the max total size of the cached pages
+   */
+  public DecryptedPageCache(long maxBytes) {
+    if(maxBytes < 0L) {
+      throw new IllegalArgumentException("Invalid max bytes " + maxBytes);
+    }
+    _maxBytes = maxBytes;
+    int numSegments = (int)Math.max(
+        1L, Math.min(MAX_SEGMENTS, maxBytes / MIN_SEGMENT_BYTES));
+    _segments = new Segment[numSegments];
+    for(int i = 0; i < numSegments; ++i) {
+      _segments[i] = new Segment(maxBytes / numSegments);
+    }
+  }
+
+  public long getMaxBytes() {
+    return _maxBytes;
+  }
+
+  /**
+   * @return the current total size of the cached pages
+   */
+  public long getSize() {
+    long size = 0L;
+    for(Segment segment : _segments) {
+      synchronized(segment) {
+        size += segment._bytes;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of cached pages
+   */
+  public int getPageCount() {
+    int count = 0;
+    for(Segment segment : _segments) {
+      synchronized(segment) {
+        count += segment._pages.size();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of page decodes served from the cache
+   */
+  public long getHitCount() {
+    return _hits.sum();
+  }
+
+  /**
+   * @return the number of page decodes not served from the cache
+   */
+  public long getMissCount() {
+    return _misses.sum();
+  }
+
+  /**
+   * @return the number of pages evicted to keep the cache within its max
+   *         size
+   */
+  public long getEvictionCount() {
+    return _evictions.sum();
+  }
+
+  /**
+   * @return the fraction of page decodes served from the cache
+   */
+  public double getHitRate() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return ((total > 0L) ? ((double)hits / total) : 0.0d);
+  }
+
+  /**
+   * Discards all cached pages (the statistics are not reset).
+   */
+  public void clear() {
+    List<CachedPage> removed = new ArrayList<CachedPage>();
+    for(Segment segment : _segments) {
+      synchronized(segment) {
+        removed.addAll(segment._pages.values());
+        segment._pages.clear();
+        segment._bytes = 0L;
+      }
+    }
+    release(removed);
+  }
+
+  /**
+   * Wraps the given handler (for the database in the given channel) so that
+   * decoded pages are served from and added to this cache.
+   */
+  CodecHandler wrap(CodecHandler handler, PageChannel channel,
+                    CryptMemoryBudget budget)
+    throws IOException
+  {
+    byte[] fingerprint = BaseCryptCodecHandler.getHeaderFingerprint(channel);
+    return new CachingCodecHandler(handler, this, fingerprint, budget);
+  }
+
+  private Segment getSegment(PageKey key) {
+    return _segments[(key._hashCode & 0x7FFFFFFF) % _segments.length];
+  }
+
+  private byte[] get(PageKey key, byte[] encPage, int len)
+  {
+    Segment segment = getSegment(key);
+    CachedPage page = null;
+    synchronized(segment) {
+      page = segment._pages.get(key);
+      if((page != null) && !page.matches(encPage, len)) {
+        page = null;
+      }
+    }
+    byte[] decPage = null;
+    if(page != null) {
+      decPage = page._decPage;
+      CryptMemoryBudget.Charge charge = page._charge;
+      if(charge != null) {
+        charge.touch();
+      }
+      _hits.increment();
+    } else {
+      _misses.increment();
+    }
+    return decPage;
+  }
+
+  private void put(PageKey key, CachedPage page, CryptMemoryBudget budget)
+  {
+    Segment segment = getSegment(key);
+    long pageBytes = page.getBytes();
+    if(pageBytes > segment._maxBytes) {
+      return;
+    }
+    List<CachedPage> removed = Collections.emptyList();
+    synchronized(segment) {
+      CachedPage oldPage = segment._pages.put(key, page);
+      if(oldPage != null) {
+        segment._bytes -= oldPage.getBytes();
+        removed = new ArrayList<CachedPage>();
+        removed.add(oldPage);
+      }
+      segment._bytes += pageBytes;
+
+      Iterator<CachedPage> iter = segment._pages.values().iterator();
+      while(segment._bytes > segment._maxBytes) {
+        CachedPage evictedPage = iter.next();
+        segment._bytes -= evictedPage.getBytes();
+        iter.remove();
+        _evictions.increment();
+        if(removed.isEmpty()) {
+          removed = new ArrayList<CachedPage>();
+        }
+        removed.add(evictedPage);
+      }
+    }
+    release(removed);
+
+    if(budget != null) {
+      // note, must be charged outside of the segment lock
+      page._charge = budget.charge(pageBytes, PAGE_COST,
+                                   () -> remove(key, page));
+      // the page may have been discarded before the charge was assigned (in
+      // which case the charge was not released)
+      if(!contains(key, page)) {
+        page._charge.release();
+      }
+    }
+  }
+
+  private boolean contains(PageKey key, CachedPage page)
+  {
+    Segment segment = getSegment(key);
+    synchronized(segment) {
+      return (segment._pages.get(key) == page);
+    }
+  }
+
+  private void remove(PageKey key, CachedPage page)
+  {
+    Segment segment = getSegment(key);
+    synchronized(segment) {
+      if(segment._pages.remove(key, page)) {
+        segment._bytes -= page.getBytes();
+        _evictions.increment();
+      }
+    }
+  }
+
+  private static void release(List<CachedPage> pages) {
+    for(CachedPage page : pages) {
+      if(page._charge != null) {
+        page._charge.release();
+      }
+    }
+  }
+
+  /**
+   * Computes a quick (non-cryptographic) hash of the given page.  Cached
+   * pages are always compared in full, so the hash only needs to spread the
+   * pages well.
+   */
+  static long hashPage(long seed, byte[] bytes, int len)
+  {
+    ByteBuffer bb = ByteBuffer.wrap(bytes, 0, len)
+      .order(ByteOrder.LITTLE_ENDIAN);
+    long h = ((seed + 1L) * 0x9E3779B97F4A7C15L) ^ len;
+    while(bb.remaining() >= 8) {
+      h ^= bb.getLong();
+      h *= 0xC2B2AE3D27D4EB4FL;
+      h ^= (h >>> 31);
+    }
+    while(bb.hasRemaining()) {
+      h = (h ^ bb.get()) * 0x100000001B3L;
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "DecryptedPageCache[%d pages, %d of %d bytes, hits=%d, misses=%d, " +
+        "evictions=%d]", getPageCount(), getSize(), _maxBytes, getHitCount(),
+        getMissCount(), getEvictionCount());
+  }
+
+  /**
+   * One segment of the cache, in least recently used order.
+   */
+  private static final class Segment
+  {
+    private final long _maxBytes;
+    private final Map<PageKey,CachedPage> _pages =
+      new LinkedHashMap<PageKey,CachedPage>(16, 0.75f, true);
+    private long _bytes;
+
+    private Segment(long maxBytes) {
+      _maxBytes = maxBytes;
+    }
+  }
+
+  private static final class PageKey
+  {
+    private final byte[] _fingerprint;
+    private final int _pageNumber;
+    private final long _pageHash;
+    private final int _hashCode;
+
+    private PageKey(byte[] fingerprint, int pageNumber, long pageHash) {
+      _fingerprint = fingerprint;
+      _pageNumber = pageNumber;
+      _pageHash = pageHash;
+      _hashCode = (31 * ((31 * Arrays.hashCode(fingerprint)) + pageNumber)) +
+        Long.hashCode(pageHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if(!(o instanceof PageKey)) {
+        return false;
+      }
+      PageKey other = (PageKey)o;
+      return ((_pageNumber == other._pageNumber) &&
+              (_pageHash == other._pageHash) &&
+              Arrays.equals(_fingerprint, other._fingerprint));
+    }
+  }
+
+  private static final class CachedPage
+  {
+    private final byte[] _encPage;
+    private final byte[] _decPage;
+    private volatile CryptMemoryBudget.Charge _charge;
+
+    private CachedPage(byte[] encPage, byte[] decPage) {
+      _encPage = encPage;
+      _decPage = decPage;
+    }
+
+    private long getBytes() {
+      return _encPage.length + _decPage.length + ENTRY_OVERHEAD;
+    }
+
+    private boolean matches(byte[] encPage, int len) {
+      if(_encPage.length != len) {
+        return false;
+      }
+      for(int i = 0; i < len; ++i) {
+        if(_encPage[i] != encPage[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * CodecHandler which serves decoded pages from the cache when possible.
+   */
+  private static final class CachingCodecHandler
+    extends DelegatingCodecHandler
+  {
+    private final DecryptedPageCache _cache;
+    private final byte[] _fingerprint;
+    private final CryptMemoryBudget _budget;
+
+    private CachingCodecHandler(CodecHandler delegate,
+                                DecryptedPageCache cache, byte[] fingerprint,
+                                CryptMemoryBudget budget) {
+      super(delegate);
+      _cache = cache;
+      _fingerprint = fingerprint;
+      _budget = budget;
+    }
+
+    @Override
+    public void decodePage(ByteBuffer inPage, ByteBuffer outPage,
+                           int pageNumber)
+      throws IOException
+    {
+      byte[] encBytes = inPage.array();
+      int len = inPage.limit();
+      PageKey key = new PageKey(_fingerprint, pageNumber,
+                                hashPage(0L, encBytes, len));
+
+      byte[] decBytes = _cache.get(key, encBytes, len);
+      if(decBytes != null) {
+        ByteBuffer decodedPage = (canDecodeInline() ? inPage : outPage);
+        System.arraycopy(decBytes, 0, decodedPage.array(), 0, len);
+        return;
+      }
+
+      // the encoded page may be decoded inline, so grab a copy first
+      byte[] encPage = Arrays.copyOf(encBytes, len);
+      super.decodePage(inPage, outPage, pageNumber);
+      ByteBuffer decodedPage = (canDecodeInline() ? inPage : outPage);
+      _cache.put(key, new CachedPage(
+                     encPage, Arrays.copyOf(decodedPage.array(), len)),
+                 _budget);
+    }
+  }
+}
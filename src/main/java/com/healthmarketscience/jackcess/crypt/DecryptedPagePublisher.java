@@ -0,0 +1,406 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.healthmarketscience.jackcess.crypt.impl.PageDecodeTask;
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+
+/**
+ * Publishes the decrypted pages of an encrypted database file, in page
+ * order, to subscribers which control the rate at which pages are produced.
+ * Pages are read and decrypted in parallel in the given pool, but only
+ * pages which have been requested by the subscriber are decrypted (and at
+ * most a fixed number at once), so a slow subscriber slows down the
+ * decryption rather than causing pages to be buffered.
+ * <p>
+ * The {@link Subscriber} and {@link Subscription} interfaces mirror those
+ * of {@code java.util.concurrent.Flow} (which is not available in Java 8),
+ * so adapting this publisher to a Flow.Publisher is trivial.  Each
+ * subscriber receives its own stream of pages (the file is opened when the
+ * subscriber subscribes and closed when the stream terminates).  The header
+ * page is published exactly as stored.
+ *
+ * @author James Ahlborn
+ */
+public class DecryptedPagePublisher
+{
+  /** default max number of pages being decrypted at once per subscriber */
+  public static final int DEFAULT_MAX_PAGES_IN_FLIGHT = 64;
+
+  /**
+   * Receiver of published items, mirrors
+   * {@code java.util.concurrent.Flow.Subscriber}.
+   */
+  public interface Subscriber<T>
+  {
+    public void onSubscribe(Subscription subscription);
+
+    public void onNext(T item);
+
+    public void onError(Throwable throwable);
+
+    public void onComplete();
+  }
+
+  /**
+   * Link between a publisher and a subscriber, mirrors
+   * {@code java.util.concurrent.Flow.Subscription}.
+   */
+  public interface Subscription
+  {
+    public void request(long n);
+
+    public void cancel();
+  }
+
+  private final Path _path;
+  private final CryptCodecProvider _provider;
+  private final ForkJoinPool _pool;
+  private int _startPage;
+  private int _endPage = -1;
+  private int _maxPagesInFlight = DEFAULT_MAX_PAGES_IN_FLIGHT;
+
+  /**
+   * @param path the encrypted database file
+   * @param provider provider for the database (and its password)
+   * @param pool the pool in which the pages will be decrypted
+   */
+  public DecryptedPagePublisher(Path path, CryptCodecProvider provider,
+                                ForkJoinPool pool) {
+    _path = path;
+    _provider = provider;
+    _pool = pool;
+  }
+
+  public int getStartPage() {
+    return _startPage;
+  }
+
+  /**
+   * @return the (exclusive) end page, -1 for the end of the file
+   */
+  public int getEndPage() {
+    return _endPage;
+  }
+
+  /**
+   * Sets the range of pages [startPage, endPage) which will be published
+   * (defaults to all pages).
+   *
+   * @param startPage the first page to publish
+   * @param endPage the (exclusive) end page, -1 for the end of the file
+   */
+  public DecryptedPagePublisher setPageRange(int startPage, int endPage) {
+    if((startPage < 0) || ((endPage >= 0) && (endPage < startPage))) {
+      throw new IllegalArgumentException(
+          "Invalid page range " + startPage + " to " + endPage);
+    }
+    _startPage = startPage;
+    _endPage = endPage;
+    return this;
+  }
+
+  public int getMaxPagesInFlight() {
+    return _maxPagesInFlight;
+  }
+
+  /**
+   * Sets the max number of pages which may be decrypted at once for a
+   * single subscriber (regardless of the outstanding demand).
+   */
+  public DecryptedPagePublisher setMaxPagesInFlight(int newMaxPagesInFlight) {
+    if(newMaxPagesInFlight < 1) {
+      throw new IllegalArgumentException(
+          "Invalid max pages in flight " + newMaxPagesInFlight);
+    }
+    _maxPagesInFlight = newMaxPagesInFlight;
+    return this;
+  }
+
+  /**
+   * Adds the given subscriber.  The database file is opened (and the
+   * password verified) in the calling thread.  If that fails, the failure
+   * is reported via {@link Subscriber#onError}.
+   */
+  public void subscribe(Subscriber<? super Page> subscriber)
+  {
+    if(subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+
+    PageSubscription subscription = null;
+    PageFile pageFile = null;
+    try {
+      pageFile = PageFile.open(_path, false);
+      int endPage = ((_endPage >= 0) ?
+                     Math.min(_endPage, pageFile.getPageCount()) :
+                     pageFile.getPageCount());
+      subscription = new PageSubscription(
+          subscriber, pageFile, pageFile.createHandler(_provider),
+          Math.min(_startPage, endPage), endPage, _maxPagesInFlight, _pool);
+    } catch(IOException | RuntimeException e) {
+      closeQuietly(pageFile);
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {}
+        @Override
+        public void cancel() {}
+      });
+      subscriber.onError(e);
+      return;
+    }
+
+    subscriber.onSubscribe(subscription);
+    subscription.drain();
+  }
+
+  private static void closeQuietly(PageFile pageFile) {
+    if(pageFile != null) {
+      try {
+        pageFile.close();
+      } catch(IOException ignored) {
+        // nothing to do
+      }
+    }
+  }
+
+  /**
+   * A single decrypted page.
+   */
+  public static final class Page
+  {
+    private final int _pageNumber;
+    private final ByteBuffer _buffer;
+
+    private Page(int pageNumber, ByteBuffer buffer) {
+      _pageNumber = pageNumber;
+      _buffer = buffer;
+    }
+
+    public int getPageNumber() {
+      return _pageNumber;
+    }
+
+    /**
+     * @return the decrypted page bytes (the buffer is owned by the
+     *         subscriber)
+     */
+    public ByteBuffer getBuffer() {
+      return _buffer;
+    }
+
+    @Override
+    public String toString() {
+      return "Page " + _pageNumber;
+    }
+  }
+
+  /**
+   * Subscription for a single subscriber.  All signals to the subscriber
+   * are made from the drain loop, which is only ever run by one thread at a
+   * time.
+   */
+  private static final class PageSubscription implements Subscription
+  {
+    private final Subscriber<? super Page> _subscriber;
+    private final PageFile _pageFile;
+    private final CodecHandler _handler;
+    private final int _endPage;
+    private final int _maxPagesInFlight;
+    private final ForkJoinPool _pool;
+    private final AtomicInteger _wip = new AtomicInteger();
+    private final AtomicLong _requested = new AtomicLong();
+    private volatile boolean _cancelled;
+    private volatile Throwable _requestError;
+    // only accessed in the drain loop
+    private final Queue<CompletableFuture<Page>> _inFlight =
+      new ArrayDeque<CompletableFuture<Page>>();
+    private int _nextPage;
+    private long _emitted;
+    private boolean _done;
+
+    private PageSubscription(Subscriber<? super Page> subscriber,
+                             PageFile pageFile, CodecHandler handler,
+                             int startPage, int endPage, int maxPagesInFlight,
+                             ForkJoinPool pool) {
+      _subscriber = subscriber;
+      _pageFile = pageFile;
+      _handler = handler;
+      _nextPage = startPage;
+      _endPage = endPage;
+      _maxPagesInFlight = maxPagesInFlight;
+      _pool = pool;
+    }
+
+    @Override
+    public void request(long n) {
+      if(n <= 0L) {
+        _requestError = new IllegalArgumentException(
+            "Invalid request " + n);
+      } else {
+        long cur = 0L;
+        long next = 0L;
+        do {
+          cur = _requested.get();
+          next = cur + n;
+          if(next < 0L) {
+            // overflow, effectively unbounded
+            next = Long.MAX_VALUE;
+          }
+        } while(!_requested.compareAndSet(cur, next));
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      _cancelled = true;
+      drain();
+    }
+
+    private void drain()
+    {
+      if(_wip.getAndIncrement() != 0) {
+        // the current drain loop will pick up the new state
+        return;
+      }
+
+      int missed = 1;
+      while(true) {
+
+        if(!drainOnce()) {
+          // terminated, leave _wip non-zero so the loop never runs again
+          return;
+        }
+
+        missed = _wip.addAndGet(-missed);
+        if(missed == 0) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * @return {@code false} if the stream has been terminated, {@code true}
+     *         otherwise
+     */
+    private boolean drainOnce()
+    {
+      if(_cancelled) {
+        terminate();
+        return false;
+      }
+      if(_requestError != null) {
+        return terminate(_requestError);
+      }
+
+      long requested = _requested.get();
+
+      // emit the completed pages in order
+      while((_emitted < requested) && !_inFlight.isEmpty() &&
+            _inFlight.peek().isDone()) {
+        Page page = null;
+        try {
+          page = _inFlight.poll().join();
+        } catch(CompletionException e) {
+          Throwable cause = e.getCause();
+          if(cause instanceof UncheckedIOException) {
+            cause = cause.getCause();
+          }
+          return terminate(cause);
+        }
+
+        try {
+          _subscriber.onNext(page);
+        } catch(RuntimeException e) {
+          // a failing subscriber is treated as cancelled
+          terminate();
+          return false;
+        }
+        ++_emitted;
+
+        if(_cancelled) {
+          terminate();
+          return false;
+        }
+      }
+
+      if((_nextPage >= _endPage) && _inFlight.isEmpty()) {
+        terminate();
+        _subscriber.onComplete();
+        return false;
+      }
+
+      // start decrypting more pages, but only those which have been
+      // requested
+      while((_nextPage < _endPage) &&
+            (_inFlight.size() < _maxPagesInFlight) &&
+            ((_emitted + _inFlight.size()) < requested)) {
+        final int pageNumber = _nextPage++;
+        CompletableFuture<Page> future = CompletableFuture.supplyAsync(
+            () -> decodePage(pageNumber), _pool);
+        _inFlight.add(future);
+        future.whenComplete((page, e) -> drain());
+      }
+
+      return true;
+    }
+
+    private Page decodePage(int pageNumber)
+    {
+      try {
+        ByteBuffer page = _pageFile.createPageBuffer();
+        _pageFile.readPage(page, pageNumber);
+        PageDecodeTask.decodePage(_handler, page, pageNumber, null);
+        page.rewind();
+        return new Page(pageNumber, page);
+      } catch(IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private boolean terminate(Throwable error) {
+      terminate();
+      _subscriber.onError(error);
+      return false;
+    }
+
+    private void terminate() {
+      if(!_done) {
+        _done = true;
+        for(CompletableFuture<Page> future : _inFlight) {
+          future.cancel(false);
+        }
+        _inFlight.clear();
+        closeQuietly(_pageFile);
+      }
+    }
+  }
+}
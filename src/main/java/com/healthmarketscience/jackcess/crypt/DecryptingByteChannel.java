@@ -0,0 +1,264 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.healthmarketscience.jackcess.crypt.impl.PageDecodeTask;
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+
+/**
+ * Read-only SeekableByteChannel which provides the decrypted contents of an
+ * encrypted database file, for tools which need the plaintext page bytes
+ * without opening the file as a Database (and without writing a decrypted
+ * copy of the file).  Pages are decrypted on demand and a small window of
+ * recently used decrypted pages is cached.
+ * <p>
+ * The header page is returned exactly as stored.  Any trailing partial page
+ * in the file is ignored.  All methods are thread-safe, although concurrent
+ * readers should use the positional {@link #read(ByteBuffer,long)} method,
+ * which does not lock the channel (only the page cache is locked, briefly,
+ * and pages are decrypted outside of that lock).
+ *
+ * @author James Ahlborn
+ */
+public class DecryptingByteChannel implements SeekableByteChannel
+{
+  /** default number of decrypted pages which are cached */
+  public static final int DEFAULT_CACHED_PAGES = 16;
+
+  private final PageFile _pageFile;
+  private final CodecHandler _handler;
+  private final int _pageSize;
+  private final long _size;
+  private final int _maxCachedPages;
+  /** decrypted pages, in least recently used order (the cached buffers are
+      never modified, so they may be read without holding the lock) */
+  private final Map<Integer,ByteBuffer> _pages =
+    new LinkedHashMap<Integer,ByteBuffer>(16, 0.75f, true) {
+      private static final long serialVersionUID = 0L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer,ByteBuffer> e) {
+        return (size() > _maxCachedPages);
+      }
+    };
+  private long _position;
+  private volatile boolean _closed;
+
+  private DecryptingByteChannel(PageFile pageFile, CodecHandler handler,
+                                int maxCachedPages)
+    throws IOException
+  {
+    _pageFile = pageFile;
+    _handler = handler;
+    _pageSize = pageFile.getPageSize();
+    _size = (long)pageFile.getPageCount() * _pageSize;
+    _maxCachedPages = maxCachedPages;
+  }
+
+  /**
+   * Opens the given encrypted database file for reading, caching the
+   * default number of pages.
+   *
+   * @param path the encrypted database file
+   * @param provider provider for the database (and its password)
+   */
+  public static DecryptingByteChannel open(Path path,
+                                           CryptCodecProvider provider)
+    throws IOException
+  {
+    return open(path, provider, DEFAULT_CACHED_PAGES);
+  }
+
+  /**
+   * Opens the given encrypted database file for reading.
+   *
+   * @param path the encrypted database file
+   * @param provider provider for the database (and its password)
+   * @param maxCachedPages the max number of decrypted pages to cache
+   */
+  public static DecryptingByteChannel open(Path path,
+                                           CryptCodecProvider provider,
+                                           int maxCachedPages)
+    throws IOException
+  {
+    if(maxCachedPages < 1) {
+      throw new IllegalArgumentException(
+          "Invalid max cached pages " + maxCachedPages);
+    }
+    PageFile pageFile = PageFile.open(path, false);
+    try {
+      return new DecryptingByteChannel(
+          pageFile, pageFile.createHandler(provider), maxCachedPages);
+    } catch(IOException | RuntimeException e) {
+      pageFile.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the given encrypted database file as an InputStream of the
+   * decrypted contents.
+   *
+   * @param path the encrypted database file
+   * @param provider provider for the database (and its password)
+   */
+  public static InputStream newInputStream(Path path,
+                                           CryptCodecProvider provider)
+    throws IOException
+  {
+    return Channels.newInputStream(open(path, provider));
+  }
+
+  public int getPageSize() {
+    return _pageSize;
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst) throws IOException
+  {
+    int numRead = read(dst, _position);
+    if(numRead > 0) {
+      _position += numRead;
+    }
+    return numRead;
+  }
+
+  /**
+   * Reads bytes from the given position into the given buffer, without
+   * modifying the position of this channel.
+   *
+   * @return the number of bytes read, possibly zero, or -1 if the given
+   *         position is at or past the end of the channel
+   */
+  public int read(ByteBuffer dst, long position)
+    throws IOException
+  {
+    checkOpen();
+    if(position < 0L) {
+      throw new IllegalArgumentException("Invalid position " + position);
+    }
+    if(position >= _size) {
+      return -1;
+    }
+
+    int numRead = 0;
+    while(dst.hasRemaining() && (position < _size)) {
+      int pageNumber = (int)(position / _pageSize);
+      int pageOffset = (int)(position % _pageSize);
+      ByteBuffer page = getPage(pageNumber).duplicate();
+      page.position(pageOffset);
+      if(page.remaining() > dst.remaining()) {
+        page.limit(pageOffset + dst.remaining());
+      }
+      int len = page.remaining();
+      dst.put(page);
+      numRead += len;
+      position += len;
+    }
+    return numRead;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    checkOpen();
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized long position() throws IOException {
+    checkOpen();
+    return _position;
+  }
+
+  @Override
+  public synchronized DecryptingByteChannel position(long newPosition)
+    throws IOException
+  {
+    checkOpen();
+    if(newPosition < 0L) {
+      throw new IllegalArgumentException("Invalid position " + newPosition);
+    }
+    _position = newPosition;
+    return this;
+  }
+
+  @Override
+  public synchronized long size() throws IOException {
+    checkOpen();
+    return _size;
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) throws IOException {
+    checkOpen();
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return !_closed;
+  }
+
+  @Override
+  public synchronized void close() throws IOException
+  {
+    if(!_closed) {
+      _closed = true;
+      synchronized(_pages) {
+        _pages.clear();
+      }
+      _pageFile.close();
+    }
+  }
+
+  private ByteBuffer getPage(int pageNumber) throws IOException
+  {
+    synchronized(_pages) {
+      ByteBuffer page = _pages.get(pageNumber);
+      if(page != null) {
+        return page;
+      }
+    }
+
+    // note, decrypted outside of the lock so that concurrent readers are not
+    // blocked (if multiple readers decrypt the same page, the last one wins)
+    ByteBuffer page = _pageFile.createPageBuffer();
+    _pageFile.readPage(page, pageNumber);
+    PageDecodeTask.decodePage(_handler, page, pageNumber, null);
+    synchronized(_pages) {
+      _pages.put(pageNumber, page);
+    }
+    return page;
+  }
+
+  private void checkOpen() throws IOException {
+    if(_closed) {
+      throw new ClosedChannelException();
+    }
+  }
+}
@@ -0,0 +1,367 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import com.healthmarketscience.jackcess.crypt.impl.JetCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.MSISAMCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.OfficeCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionHeader;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionInfoWriter;
+import com.healthmarketscience.jackcess.crypt.model.CTEncryption;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyData;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyEncryptor;
+import com.healthmarketscience.jackcess.crypt.model.password.CTPasswordKeyEncryptor;
+import com.healthmarketscience.jackcess.impl.ByteUtil;
+import com.healthmarketscience.jackcess.impl.CustomToStringStyle;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Immutable description of the encryption used by a database file, as
+ * determined from the header page alone (no password is needed and no keys
+ * are derived).
+ *
+ * @see CryptFileUtil#probe
+ * @author James Ahlborn
+ */
+public final class EncryptionInfo
+{
+  /** the type of encryption used by a database */
+  public enum Type {
+    /** not encrypted */
+    NONE(false),
+    /** Jet RC4 obfuscation (key stored in the file) */
+    JET(false),
+    /** older MSISAM, Jet style RC4 obfuscation (key stored in the file) */
+    MSISAM_JET(false),
+    /** MSISAM password based RC4 encryption */
+    MSISAM(true),
+    /** Office binary document RC4 encryption */
+    OFFICE_RC4(true),
+    /** Office RC4 CryptoAPI encryption */
+    OFFICE_RC4_CRYPTO_API(true),
+    /** Office Standard (ECMA-376) AES encryption */
+    OFFICE_STANDARD(true),
+    /** Office Standard AES encryption without hash iterations (older Access
+        versions) */
+    OFFICE_NON_STANDARD(true),
+    /** Office Agile encryption */
+    OFFICE_AGILE(true),
+    /** Office Extensible encryption (not supported) */
+    OFFICE_EXTENSIBLE(true),
+    /** unrecognized Office encryption (not supported) */
+    OFFICE_UNKNOWN(true);
+
+    private final boolean _passwordProtected;
+
+    private Type(boolean passwordProtected) {
+      _passwordProtected = passwordProtected;
+    }
+
+    public boolean isPasswordProtected() {
+      return _passwordProtected;
+    }
+  }
+
+  private static final int STANDARD_SPIN_COUNT = 50000;
+  private static final int JET_KEY_BITS = 32;
+  private static final int MSISAM_KEY_BITS = 160;
+  private static final int OFFICE_RC4_KEY_BITS = 128;
+
+  private final JetFormat _format;
+  private final int _pageSize;
+  private final int _pageCount;
+  private final Type _type;
+  private final int _versionMajor;
+  private final int _versionMinor;
+  private final String _cipherAlgorithm;
+  private final String _cipherChaining;
+  private final String _hashAlgorithm;
+  private final int _keyBits;
+  private final int _spinCount;
+
+  private EncryptionInfo(JetFormat format, int pageCount, Parser parser)
+  {
+    _format = format;
+    _pageSize = format.PAGE_SIZE;
+    _pageCount = pageCount;
+    _type = parser._type;
+    _versionMajor = parser._versionMajor;
+    _versionMinor = parser._versionMinor;
+    _cipherAlgorithm = parser._cipherAlgorithm;
+    _cipherChaining = parser._cipherChaining;
+    _hashAlgorithm = parser._hashAlgorithm;
+    _keyBits = parser._keyBits;
+    _spinCount = parser._spinCount;
+  }
+
+  /**
+   * Reads the encryption info from the header page of the given file.
+   */
+  static EncryptionInfo read(PageFile pageFile) throws IOException
+  {
+    JetFormat format = pageFile.getFormat();
+    Parser parser = new Parser(format);
+    parser.parse(pageFile.readHeaderPage());
+    return new EncryptionInfo(format, pageFile.getPageCount(), parser);
+  }
+
+  public JetFormat getFormat() {
+    return _format;
+  }
+
+  public JetFormat.CodecType getCodecType() {
+    return _format.CODEC_TYPE;
+  }
+
+  public int getPageSize() {
+    return _pageSize;
+  }
+
+  public int getPageCount() {
+    return _pageCount;
+  }
+
+  public Type getType() {
+    return _type;
+  }
+
+  public boolean isEncrypted() {
+    return (_type != Type.NONE);
+  }
+
+  /**
+   * @return {@code true} if a password is needed to decrypt the database
+   *         (note, the password may be blank)
+   */
+  public boolean isPasswordProtected() {
+    return _type.isPasswordProtected();
+  }
+
+  /**
+   * @return the major version of the Office encryption info, -1 if not an
+   *         Office encrypted database
+   */
+  public int getVersionMajor() {
+    return _versionMajor;
+  }
+
+  /**
+   * @return the minor version of the Office encryption info, -1 if not an
+   *         Office encrypted database
+   */
+  public int getVersionMinor() {
+    return _versionMinor;
+  }
+
+  /**
+   * @return the name of the cipher used to encrypt the pages (e.g. "RC4",
+   *         "AES"), {@code null} if unknown
+   */
+  public String getCipherAlgorithm() {
+    return _cipherAlgorithm;
+  }
+
+  /**
+   * @return the name of the cipher chaining mode (Agile encryption only),
+   *         {@code null} otherwise
+   */
+  public String getCipherChaining() {
+    return _cipherChaining;
+  }
+
+  /**
+   * @return the name of the hash algorithm used to derive the password key,
+   *         {@code null} if no password is used
+   */
+  public String getHashAlgorithm() {
+    return _hashAlgorithm;
+  }
+
+  /**
+   * @return the size of the page encryption key in bits, 0 if unknown
+   */
+  public int getKeyBits() {
+    return _keyBits;
+  }
+
+  /**
+   * @return the number of hash iterations used to derive the password key
+   */
+  public int getSpinCount() {
+    return _spinCount;
+  }
+
+  /**
+   * @return an estimate of the cost of deriving the password key, as the
+   *         approximate number of hash operations (0 if no password is
+   *         used)
+   */
+  public long getKeyDerivationCost() {
+    return (isPasswordProtected() ? (_spinCount + 1L) : 0L);
+  }
+
+  @Override
+  public String toString()
+  {
+    return ToStringBuilder.reflectionToString(
+        this, CustomToStringStyle.VALUE_INSTANCE);
+  }
+
+  /**
+   * Collects the encryption info while parsing the header page.
+   */
+  private static final class Parser
+  {
+    private final JetFormat _format;
+    private Type _type;
+    private int _versionMajor = -1;
+    private int _versionMinor = -1;
+    private String _cipherAlgorithm;
+    private String _cipherChaining;
+    private String _hashAlgorithm;
+    private int _keyBits;
+    private int _spinCount;
+
+    private Parser(JetFormat format) {
+      _format = format;
+    }
+
+    private void parse(ByteBuffer header) {
+      _type = readType(header);
+    }
+
+    private Type readType(ByteBuffer header)
+    {
+      switch(_format.CODEC_TYPE) {
+      case JET:
+        if(!JetCryptCodecHandler.hasEncodingKey(header, _format)) {
+          return Type.NONE;
+        }
+        initRC4(JET_KEY_BITS, null);
+        return Type.JET;
+
+      case MSISAM:
+        if(!MSISAMCryptCodecHandler.isNewEncryption(header)) {
+          initRC4(JET_KEY_BITS, null);
+          return Type.MSISAM_JET;
+        }
+        initRC4(MSISAM_KEY_BITS,
+                (MSISAMCryptCodecHandler.isSha1Digest(header) ?
+                 "SHA1" : "MD5"));
+        return Type.MSISAM;
+
+      case OFFICE:
+        if(!JetCryptCodecHandler.hasEncodingKey(header, _format)) {
+          return Type.NONE;
+        }
+        return readOfficeType(
+            OfficeCryptCodecHandler.readEncryptionInfo(header));
+
+      default:
+        return Type.NONE;
+      }
+    }
+
+    private Type readOfficeType(ByteBuffer encProvBuf)
+    {
+      // OC: 2.1.4 Version
+      _versionMajor = ByteUtil.getUnsignedShort(encProvBuf);
+      _versionMinor = ByteUtil.getUnsignedShort(encProvBuf);
+
+      if((_versionMajor == 4) && (_versionMinor == 4)) {
+
+        // OC: 2.3.4.10 - Agile Encryption: 4,4
+        encProvBuf.rewind();
+        CTEncryption encryption = EncryptionInfoWriter.readAgile(encProvBuf);
+        CTKeyData keyData = encryption.getKeyData();
+        _cipherAlgorithm = keyData.getCipherAlgorithm();
+        _cipherChaining = keyData.getCipherChaining();
+        _keyBits = (int)keyData.getKeyBits();
+        if(encryption.getKeyEncryptors() != null) {
+          for(CTKeyEncryptor keyEnc :
+                encryption.getKeyEncryptors().getKeyEncryptor()) {
+            if(keyEnc.getAny() instanceof CTPasswordKeyEncryptor) {
+              CTPasswordKeyEncryptor pwdKeyEnc =
+                (CTPasswordKeyEncryptor)keyEnc.getAny();
+              _hashAlgorithm = pwdKeyEnc.getHashAlgorithm();
+              _spinCount = (int)pwdKeyEnc.getSpinCount();
+              break;
+            }
+          }
+        }
+        return Type.OFFICE_AGILE;
+
+      } else if((_versionMajor == 1) && (_versionMinor == 1)) {
+
+        // OC: 2.3.6.1 - RC4 Encryption: 1,1
+        initRC4(OFFICE_RC4_KEY_BITS, "MD5");
+        return Type.OFFICE_RC4;
+
+      } else if(((_versionMajor == 3) || (_versionMajor == 4)) &&
+                (_versionMinor == 3)) {
+
+        // OC: 2.3.4.6 - Extensible Encryption: (3,4),3
+        return Type.OFFICE_EXTENSIBLE;
+
+      } else if(((_versionMajor == 2) || (_versionMajor == 3) ||
+                 (_versionMajor == 4)) && (_versionMinor == 2)) {
+
+        // read flags (copy of the flags in EncryptionHeader)
+        int flags = encProvBuf.getInt();
+        if(EncryptionHeader.isFlagSet(flags,
+                                      EncryptionHeader.FCRYPTO_API_FLAG)) {
+
+          EncryptionHeader encHeader = EncryptionHeader.read(
+              encProvBuf,
+              EnumSet.allOf(EncryptionHeader.CryptoAlgorithm.class),
+              EnumSet.allOf(EncryptionHeader.HashAlgorithm.class));
+          _hashAlgorithm = encHeader.getHashAlgorithm().name();
+          _keyBits = encHeader.getKeySize();
+
+          if(encHeader.getCryptoAlgorithm() ==
+             EncryptionHeader.CryptoAlgorithm.RC4) {
+            // OC: 2.3.5.1 - RC4 CryptoAPI Encryption: (2,3,4),2
+            _cipherAlgorithm = "RC4";
+            return Type.OFFICE_RC4_CRYPTO_API;
+          }
+
+          _cipherAlgorithm = "AES";
+          if(EncryptionHeader.isFlagSet(flags, EncryptionHeader.FAES_FLAG)) {
+            // OC: 2.3.4.5 - Standard Encryption: (3,4),2
+            _spinCount = STANDARD_SPIN_COUNT;
+            return Type.OFFICE_STANDARD;
+          }
+          return Type.OFFICE_NON_STANDARD;
+        }
+      }
+
+      return Type.OFFICE_UNKNOWN;
+    }
+
+    private void initRC4(int keyBits, String hashAlgorithm) {
+      _cipherAlgorithm = "RC4";
+      _keyBits = keyBits;
+      _hashAlgorithm = hashAlgorithm;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.crypt.impl.PagePipeline;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+/**
+ * Index of the SHA-256 hashes of the pages of a database file, exactly as
+ * stored (i.e. the encrypted pages of an encrypted database).  Since the
+ * encryption of every page depends only on the page number, a page which is
+ * not modified keeps the same hash, so comparing an index of a previous
+ * version of a file with the current file finds the changed pages without
+ * needing the password.
+ * <p>
+ * An index is normally stored in a "sidecar" file next to the database (see
+ * {@link #getSidecarFile}) and used with {@link CryptFileUtil#createDelta}
+ * and {@link CryptFileUtil#applyDelta} to replicate only the changed pages of
+ * a database.
+ *
+ * @author James Ahlborn
+ */
+public final class PageHashIndex
+{
+  /** size of a page hash */
+  public static final int HASH_LENGTH = 32;
+  /** extension of the sidecar file for a database */
+  public static final String SIDECAR_EXTENSION = ".pagehash";
+
+  private static final int MAGIC = 0x4A504849; // "JPHI"
+  private static final int VERSION = 1;
+
+  private final int _pageSize;
+  private final byte[] _hashes;
+
+  private PageHashIndex(int pageSize, byte[] hashes) {
+    _pageSize = pageSize;
+    _hashes = hashes;
+  }
+
+  /**
+   * @return the conventional sidecar file for the index of the given
+   *         database file
+   */
+  public static File getSidecarFile(File dbFile) {
+    return new File(dbFile.getPath() + SIDECAR_EXTENSION);
+  }
+
+  /**
+   * Builds the index for the given database file using the common
+   * ForkJoinPool.
+   */
+  public static PageHashIndex build(File dbFile) throws IOException
+  {
+    return build(dbFile, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Builds the index for the given database file, hashing the pages in
+   * parallel using the given pool.
+   */
+  public static PageHashIndex build(File dbFile, ForkJoinPool pool)
+    throws IOException
+  {
+    try(PageFile pageFile = PageFile.open(dbFile.toPath(), true)) {
+      return build(pageFile, pool);
+    }
+  }
+
+  static PageHashIndex build(PageFile pageFile, ForkJoinPool pool)
+    throws IOException
+  {
+    int numPages = pageFile.getPageCount();
+    final byte[] hashes = new byte[numPages * HASH_LENGTH];
+    final ThreadLocal<Digest> digest = ThreadLocal.withInitial(
+        SHA256Digest::new);
+    new PagePipeline(pool).processPages(
+        pageFile, 0, numPages,
+        (page, pageNumber) -> hashPage(digest.get(), page, hashes,
+                                       pageNumber * HASH_LENGTH));
+    return new PageHashIndex(pageFile.getPageSize(), hashes);
+  }
+
+  /**
+   * Reads an index previously written by {@link #write}.
+   */
+  public static PageHashIndex read(File indexFile) throws IOException
+  {
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(indexFile.toPath())))) {
+      if((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+        throw new IOException("Invalid page hash index " + indexFile);
+      }
+      int pageSize = in.readInt();
+      int numPages = in.readInt();
+      if((pageSize <= 0) || (numPages < 0)) {
+        throw new IOException("Invalid page hash index " + indexFile);
+      }
+      byte[] hashes = new byte[numPages * HASH_LENGTH];
+      in.readFully(hashes);
+      return new PageHashIndex(pageSize, hashes);
+    }
+  }
+
+  /**
+   * Writes this index to the given file.  The index is written to a
+   * temporary file which then replaces the given file, so an existing index
+   * is never left partially written.
+   */
+  public void write(File indexFile) throws IOException
+  {
+    Path path = indexFile.toPath().toAbsolutePath();
+    Path tmpPath = Files.createTempFile(path.getParent(),
+                                        path.getFileName().toString(), ".tmp");
+    try {
+      try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+              Files.newOutputStream(tmpPath)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(_pageSize);
+        out.writeInt(getPageCount());
+        out.write(_hashes);
+      }
+      Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmpPath);
+    }
+  }
+
+  public int getPageSize() {
+    return _pageSize;
+  }
+
+  public int getPageCount() {
+    return _hashes.length / HASH_LENGTH;
+  }
+
+  /**
+   * @return a copy of the hash of the given page
+   */
+  public byte[] getPageHash(int pageNumber) {
+    byte[] hash = new byte[HASH_LENGTH];
+    System.arraycopy(_hashes, pageNumber * HASH_LENGTH, hash, 0, HASH_LENGTH);
+    return hash;
+  }
+
+  /**
+   * @return {@code true} if the given page has the given hash, {@code false}
+   *         otherwise (or if the page is not in this index)
+   */
+  public boolean isPageHash(int pageNumber, byte[] hash) {
+    if((pageNumber < 0) || (pageNumber >= getPageCount())) {
+      return false;
+    }
+    int offset = pageNumber * HASH_LENGTH;
+    for(int i = 0; i < HASH_LENGTH; ++i) {
+      if(_hashes[offset + i] != hash[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the given page differs between this index and
+   *         the given index (or is not in either one), {@code false}
+   *         otherwise
+   */
+  public boolean isPageChanged(PageHashIndex other, int pageNumber) {
+    return ((_pageSize != other._pageSize) ||
+            (pageNumber >= getPageCount()) ||
+            !other.isPageHash(pageNumber, getPageHash(pageNumber)));
+  }
+
+  /**
+   * Hashes the given page into the given position of the given array.
+   */
+  static void hashPage(Digest digest, ByteBuffer page, byte[] hashes,
+                       int offset)
+  {
+    digest.reset();
+    digest.update(page.array(), 0, page.limit());
+    digest.doFinal(hashes, offset);
+  }
+
+  @Override
+  public String toString() {
+    return "PageHashIndex[pageSize=" + _pageSize + ", pageCount=" +
+      getPageCount() + "]";
+  }
+}
@@ -0,0 +1,216 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.impl.UnsupportedCodecException;
+
+/**
+ * Checks a password against database files without opening them as a
+ * Database.  Only the header page of each file is read, and only the work
+ * needed to verify the password (the key derivation) is done.
+ * <p>
+ * Files are checked in parallel using the given Executor.  Since the key
+ * derivation is cpu and memory intensive, the number of key derivations
+ * running at once is limited separately from the number of files being
+ * read.
+ *
+ * @author James Ahlborn
+ */
+public class PasswordVerifier
+{
+  /** the result of checking a password against a file */
+  public enum Result {
+    /** the password is correct */
+    VALID,
+    /** the password is incorrect */
+    INVALID,
+    /** the file does not require a password */
+    NOT_ENCRYPTED,
+    /** the file uses unsupported encryption */
+    UNSUPPORTED,
+    /** the file could not be read */
+    ERROR;
+  }
+
+  private final Executor _executor;
+  private final Semaphore _kdfPermits;
+
+  /**
+   * Creates a PasswordVerifier using the common ForkJoinPool and allowing
+   * one key derivation per available processor.
+   */
+  public PasswordVerifier() {
+    this(ForkJoinPool.commonPool(),
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param executor the Executor in which files will be checked
+   * @param maxConcurrentKdf the max number of key derivations which may run
+   *                         at once
+   */
+  public PasswordVerifier(Executor executor, int maxConcurrentKdf) {
+    if(maxConcurrentKdf < 1) {
+      throw new IllegalArgumentException(
+          "Invalid max concurrent kdf " + maxConcurrentKdf);
+    }
+    _executor = executor;
+    _kdfPermits = new Semaphore(maxConcurrentKdf);
+  }
+
+  /**
+   * Checks the given password against each of the given files in parallel.
+   *
+   * @return the verification for each file, in the same order as the given
+   *         files
+   */
+  public List<Verification> verify(List<File> files, final String password)
+    throws IOException
+  {
+    List<FutureTask<Verification>> tasks =
+      new ArrayList<FutureTask<Verification>>(files.size());
+    for(final File file : files) {
+      FutureTask<Verification> task = new FutureTask<Verification>(
+          () -> verify(file, password));
+      tasks.add(task);
+      _executor.execute(task);
+    }
+
+    List<Verification> results = new ArrayList<Verification>(files.size());
+    try {
+      for(FutureTask<Verification> task : tasks) {
+        // check any files which the executor has not gotten to yet in this
+        // thread instead of waiting (the executor may be busy, or this may
+        // be one of its threads), noop if the task was already started
+        task.run();
+        results.add(task.get());
+      }
+    } catch(InterruptedException e) {
+      for(FutureTask<Verification> task : tasks) {
+        task.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Verification interrupted");
+    } catch(ExecutionException e) {
+      // verify(File,String) does not throw
+      throw new IllegalStateException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Checks the given password against the given file (in the calling
+   * thread).
+   */
+  public Verification verify(File file, String password)
+  {
+    EncryptionInfo info = null;
+    try(PageFile pageFile = PageFile.open(file.toPath(), false)) {
+
+      info = EncryptionInfo.read(pageFile);
+      if(!info.isPasswordProtected()) {
+        return new Verification(file, Result.NOT_ENCRYPTED, info, null);
+      }
+
+      _kdfPermits.acquire();
+      try {
+        // creating the handler verifies the password
+        pageFile.createHandler(new CryptCodecProvider(password));
+      } finally {
+        _kdfPermits.release();
+      }
+      return new Verification(file, Result.VALID, info, null);
+
+    } catch(InvalidCredentialsException e) {
+      return new Verification(file, Result.INVALID, info, null);
+    } catch(UnsupportedCodecException e) {
+      return new Verification(file, Result.UNSUPPORTED, info, e);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new Verification(file, Result.ERROR, info, e);
+    } catch(IOException | RuntimeException e) {
+      return new Verification(file, Result.ERROR, info, e);
+    }
+  }
+
+  /**
+   * The result of checking a password against a single file.
+   */
+  public static final class Verification
+  {
+    private final File _file;
+    private final Result _result;
+    private final EncryptionInfo _info;
+    private final Exception _failure;
+
+    private Verification(File file, Result result, EncryptionInfo info,
+                         Exception failure) {
+      _file = file;
+      _result = result;
+      _info = info;
+      _failure = failure;
+    }
+
+    public File getFile() {
+      return _file;
+    }
+
+    public Result getResult() {
+      return _result;
+    }
+
+    /**
+     * @return {@code true} if the file can be opened with the password
+     *         (valid or not needed), {@code false} otherwise
+     */
+    public boolean isAccessible() {
+      return ((_result == Result.VALID) || (_result == Result.NOT_ENCRYPTED));
+    }
+
+    /**
+     * @return the encryption info for the file, if available
+     */
+    public EncryptionInfo getEncryptionInfo() {
+      return _info;
+    }
+
+    /**
+     * @return the cause of an UNSUPPORTED or ERROR result, {@code null}
+     *         otherwise
+     */
+    public Exception getFailure() {
+      return _failure;
+    }
+
+    @Override
+    public String toString() {
+      return _file + ": " + _result;
+    }
+  }
+}
@@ -0,0 +1,506 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.DelegatingCodecHandler;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+
+/**
+ * Cache of decrypted pages stored in a memory-mapped file, which may be
+ * shared by all the processes on a host which read the same encrypted
+ * databases (see {@link CryptCodecProvider#setSharedPageCache}).  The file
+ * would normally be on a memory backed filesystem (e.g. under
+ * {@code /dev/shm}).  Like the {@link DecryptedPageCache}, pages are keyed by
+ * a fingerprint of the database header, the page number and the encrypted
+ * page contents, so a cached page is only ever used for the exact same
+ * encrypted page.
+ * <p>
+ * The file is made up of a fixed number of page sized slots, and each page
+ * may be stored in one of two slots.  Writers claim a slot using a
+ * (non-blocking) lock on the slot region of the file, and simply skip caching
+ * the page if the slot is busy.  Readers do not lock.  Each slot has a stamp
+ * which is odd while the slot is being written, which lets readers cheaply
+ * skip slots which are obviously being written.  However, plain reads of a
+ * mapped file have no ordering guarantees (the reads of the slot contents may
+ * be reordered around the reads of the stamp), so the real guard against a
+ * torn read is the checksum stored in each slot, which covers the
+ * fingerprint, generation, page number and the encrypted and decrypted page.
+ * A lookup only succeeds if the checksum of everything read matches.  The
+ * checksum is a (non-cryptographic) 64-bit hash, which is sufficient since
+ * the file is only writable by the owner.  The cache has a generation number,
+ * and {@link #invalidate} discards all the cached pages (in all processes) by
+ * bumping the generation.
+ * <p>
+ * Note that the cache contains decrypted data, so the file is created
+ * readable only by the owner, and an existing file which is accessible by
+ * other users is rejected (on filesystems which support posix permissions).
+ *
+ * @author James Ahlborn
+ */
+public class SharedPageCache implements Closeable
+{
+  /** the largest page size which may be cached */
+  public static final int MAX_PAGE_SIZE = 4096;
+
+  private static final int MAGIC = 0x4A535043; // "JSPC"
+  private static final int VERSION = 2;
+
+  // file header layout
+  private static final int HEADER_SIZE = 64;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int SLOT_SIZE_OFFSET = 8;
+  private static final int NUM_SLOTS_OFFSET = 12;
+  private static final int GENERATION_OFFSET = 16;
+
+  // slot layout
+  private static final int FINGERPRINT_LENGTH = 32;
+  private static final int STAMP_OFFSET = 0;
+  private static final int SLOT_GENERATION_OFFSET = 8;
+  private static final int FINGERPRINT_OFFSET = 16;
+  private static final int PAGE_NUMBER_OFFSET =
+    FINGERPRINT_OFFSET + FINGERPRINT_LENGTH;
+  private static final int PAGE_SIZE_OFFSET = PAGE_NUMBER_OFFSET + 4;
+  private static final int CHECKSUM_OFFSET = PAGE_SIZE_OFFSET + 4;
+  private static final int DATA_OFFSET = CHECKSUM_OFFSET + 8;
+  private static final int SLOT_SIZE = DATA_OFFSET + (2 * MAX_PAGE_SIZE);
+
+  /** number of locks used to serialize the writers within this process */
+  private static final int NUM_WRITE_LOCKS = 64;
+
+  private static final Set<PosixFilePermission> OWNER_ONLY =
+    PosixFilePermissions.fromString("rw-------");
+
+  private final Path _file;
+  private final FileChannel _channel;
+  private final MappedByteBuffer _buffer;
+  private final int _numSlots;
+  private final Object[] _writeLocks = new Object[NUM_WRITE_LOCKS];
+  private final LongAdder _hits = new LongAdder();
+  private final LongAdder _misses = new LongAdder();
+  private final LongAdder _stores = new LongAdder();
+  private final LongAdder _skips = new LongAdder();
+
+  private SharedPageCache(Path file, FileChannel channel,
+                          MappedByteBuffer buffer, int numSlots) {
+    _file = file;
+    _channel = channel;
+    _buffer = buffer;
+    _numSlots = numSlots;
+    for(int i = 0; i < NUM_WRITE_LOCKS; ++i) {
+      _writeLocks[i] = new Object();
+    }
+  }
+
+  /**
+   * Opens the shared cache in the given file, creating it (with room for
+   * roughly the given number of bytes of pages) if it does not already
+   * exist.  If the file already exists, the size it was created with is
+   * used.
+   *
+   * @param file the cache file, normally on a memory backed filesystem
+   * @param maxBytes the max size of the file, if it is created (at most 2GB)
+   */
+  public static SharedPageCache open(Path file, long maxBytes)
+    throws IOException
+  {
+    long maxSlots = (maxBytes - HEADER_SIZE) / SLOT_SIZE;
+    if((maxSlots < 2L) ||
+       (maxSlots > ((Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE))) {
+      throw new IllegalArgumentException("Invalid max bytes " + maxBytes);
+    }
+
+    boolean posix = file.toAbsolutePath().getParent().getFileSystem()
+      .supportedFileAttributeViews().contains("posix");
+    FileAttribute<?>[] attrs = (posix ?
+        new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(
+            OWNER_ONLY)} :
+        new FileAttribute<?>[0]);
+
+    FileChannel channel = FileChannel.open(
+        file, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ,
+                         StandardOpenOption.WRITE), attrs);
+    boolean success = false;
+    try {
+      if(posix) {
+        Set<PosixFilePermission> perms = Files.getPosixFilePermissions(file);
+        perms.removeAll(OWNER_ONLY);
+        if(!perms.isEmpty()) {
+          throw new IOException("Shared page cache " + file +
+                                " is accessible by other users");
+        }
+      }
+
+      int numSlots = 0;
+      // the header is locked while the file is initialized (by whichever
+      // process gets there first)
+      FileLock lock = channel.lock(0L, HEADER_SIZE, false);
+      try {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(channel.size() == 0L) {
+          numSlots = (int)maxSlots;
+          header.putInt(MAGIC_OFFSET, MAGIC)
+            .putInt(VERSION_OFFSET, VERSION)
+            .putInt(SLOT_SIZE_OFFSET, SLOT_SIZE)
+            .putInt(NUM_SLOTS_OFFSET, numSlots)
+            .putLong(GENERATION_OFFSET, 1L);
+          channel.write(ByteBuffer.allocate(1),
+                        HEADER_SIZE + ((long)numSlots * SLOT_SIZE) - 1L);
+          channel.write(header, 0L);
+        } else {
+          while(header.hasRemaining() &&
+                (channel.read(header, header.position()) >= 0)) {
+            // keep reading
+          }
+          numSlots = header.getInt(NUM_SLOTS_OFFSET);
+          if((header.getInt(MAGIC_OFFSET) != MAGIC) ||
+             (header.getInt(VERSION_OFFSET) != VERSION) ||
+             (header.getInt(SLOT_SIZE_OFFSET) != SLOT_SIZE) ||
+             (numSlots < 2) ||
+             (channel.size() != (HEADER_SIZE + ((long)numSlots * SLOT_SIZE)))) {
+            throw new IOException("Invalid shared page cache " + file);
+          }
+        }
+      } finally {
+        lock.release();
+      }
+
+      MappedByteBuffer buffer = channel.map(
+          FileChannel.MapMode.READ_WRITE, 0L, channel.size());
+      SharedPageCache cache = new SharedPageCache(file, channel, buffer,
+                                                  numSlots);
+      success = true;
+      return cache;
+    } finally {
+      if(!success) {
+        channel.close();
+      }
+    }
+  }
+
+  public Path getFile() {
+    return _file;
+  }
+
+  /**
+   * @return the number of page slots in the cache
+   */
+  public int getSlotCount() {
+    return _numSlots;
+  }
+
+  /**
+   * @return the current generation of the cache
+   */
+  public long getGeneration() {
+    return _buffer.getLong(GENERATION_OFFSET);
+  }
+
+  /**
+   * @return the number of page decodes (in this process) served from the
+   *         cache
+   */
+  public long getHitCount() {
+    return _hits.sum();
+  }
+
+  /**
+   * @return the number of page decodes (in this process) not served from the
+   *         cache
+   */
+  public long getMissCount() {
+    return _misses.sum();
+  }
+
+  /**
+   * @return the number of pages stored in the cache by this process
+   */
+  public long getStoreCount() {
+    return _stores.sum();
+  }
+
+  /**
+   * @return the number of pages not stored in the cache because the slot was
+   *         being written by another thread or process
+   */
+  public long getSkipCount() {
+    return _skips.sum();
+  }
+
+  /**
+   * @return the fraction of page decodes (in this process) served from the
+   *         cache
+   */
+  public double getHitRate() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return ((total > 0L) ? ((double)hits / total) : 0.0d);
+  }
+
+  /**
+   * Discards all cached pages, in all the processes using this cache, by
+   * advancing the generation of the cache.
+   */
+  public void invalidate() throws IOException
+  {
+    FileLock lock = _channel.lock(0L, HEADER_SIZE, false);
+    try {
+      _buffer.putLong(GENERATION_OFFSET, getGeneration() + 1L);
+    } finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * Closes the cache file.  Note that the memory mapping remains valid until
+   * the cache is garbage collected, so all handlers using this cache should
+   * be closed first.
+   */
+  @Override
+  public void close() throws IOException {
+    _channel.close();
+  }
+
+  /**
+   * Wraps the given handler (for the database in the given channel) so that
+   * decoded pages are served from and added to this cache.
+   */
+  CodecHandler wrap(CodecHandler handler, PageChannel channel)
+    throws IOException
+  {
+    if(channel.getFormat().PAGE_SIZE > MAX_PAGE_SIZE) {
+      return handler;
+    }
+    byte[] fingerprint = BaseCryptCodecHandler.getHeaderFingerprint(channel);
+    return new SharingCodecHandler(handler, this, fingerprint);
+  }
+
+  private int getSlot(long pageHash, int probe) {
+    // the two candidate slots for a page are adjacent
+    int slot = (int)((pageHash & Long.MAX_VALUE) % _numSlots);
+    return ((probe == 0) ? slot : ((slot + 1) % _numSlots));
+  }
+
+  private static int getSlotOffset(int slot) {
+    return HEADER_SIZE + (slot * SLOT_SIZE);
+  }
+
+  private boolean get(byte[] fingerprint, int pageNumber, long pageHash,
+                      byte[] encPage, int len, byte[] decPage)
+  {
+    long generation = getGeneration();
+    for(int probe = 0; probe < 2; ++probe) {
+      if(readSlot(getSlotOffset(getSlot(pageHash, probe)), generation,
+                  fingerprint, pageNumber, encPage, len, decPage)) {
+        _hits.increment();
+        return true;
+      }
+    }
+    _misses.increment();
+    return false;
+  }
+
+  private boolean readSlot(int offset, long generation, byte[] fingerprint,
+                           int pageNumber, byte[] encPage, int len,
+                           byte[] decPage)
+  {
+    long stamp = _buffer.getLong(offset + STAMP_OFFSET);
+    if(((stamp & 1L) != 0L) ||
+       (_buffer.getLong(offset + SLOT_GENERATION_OFFSET) != generation) ||
+       (_buffer.getInt(offset + PAGE_NUMBER_OFFSET) != pageNumber) ||
+       (_buffer.getInt(offset + PAGE_SIZE_OFFSET) != len)) {
+      return false;
+    }
+
+    ByteBuffer slot = _buffer.duplicate();
+    slot.position(offset + FINGERPRINT_OFFSET);
+    byte[] slotFingerprint = new byte[FINGERPRINT_LENGTH];
+    slot.get(slotFingerprint);
+    if(!Arrays.equals(fingerprint, slotFingerprint)) {
+      return false;
+    }
+
+    slot.position(offset + DATA_OFFSET);
+    for(int i = 0; i < len; ++i) {
+      if(slot.get() != encPage[i]) {
+        return false;
+      }
+    }
+    slot.get(decPage, 0, len);
+
+    // the page is only valid if it was not modified while being read.  the
+    // stamp re-check catches most concurrent writes, but the reads are not
+    // ordered, so the checksum is what actually detects a torn read
+    long checksum = _buffer.getLong(offset + CHECKSUM_OFFSET);
+    return ((checksum == checksum(fingerprint, generation, pageNumber,
+                                  encPage, decPage, len)) &&
+            (_buffer.getLong(offset + STAMP_OFFSET) == stamp));
+  }
+
+  private void put(byte[] fingerprint, int pageNumber, long pageHash,
+                   byte[] encPage, int len, byte[] decPage)
+  {
+    // prefer a slot which does not currently hold a valid page
+    long generation = getGeneration();
+    int slot = getSlot(pageHash, 0);
+    int offset = getSlotOffset(slot);
+    if(_buffer.getLong(offset + SLOT_GENERATION_OFFSET) == generation) {
+      int altSlot = getSlot(pageHash, 1);
+      int altOffset = getSlotOffset(altSlot);
+      if(_buffer.getLong(altOffset + SLOT_GENERATION_OFFSET) != generation) {
+        slot = altSlot;
+        offset = altOffset;
+      }
+    }
+
+    synchronized(_writeLocks[slot % NUM_WRITE_LOCKS]) {
+      FileLock lock = null;
+      try {
+        lock = _channel.tryLock(offset, SLOT_SIZE, false);
+        if(lock == null) {
+          _skips.increment();
+          return;
+        }
+
+        // a writer which died mid-write leaves an odd stamp behind
+        long stamp = _buffer.getLong(offset + STAMP_OFFSET);
+        long writeStamp = (((stamp & 1L) == 0L) ? (stamp + 1L) : stamp);
+        _buffer.putLong(offset + STAMP_OFFSET, writeStamp);
+
+        _buffer.putLong(offset + SLOT_GENERATION_OFFSET, generation);
+        _buffer.putInt(offset + PAGE_NUMBER_OFFSET, pageNumber);
+        _buffer.putInt(offset + PAGE_SIZE_OFFSET, len);
+        _buffer.putLong(offset + CHECKSUM_OFFSET,
+                        checksum(fingerprint, generation, pageNumber, encPage,
+                                 decPage, len));
+        ByteBuffer slotBuf = _buffer.duplicate();
+        slotBuf.position(offset + FINGERPRINT_OFFSET);
+        slotBuf.put(fingerprint, 0, FINGERPRINT_LENGTH);
+        slotBuf.position(offset + DATA_OFFSET);
+        slotBuf.put(encPage, 0, len);
+        slotBuf.put(decPage, 0, len);
+
+        _buffer.putLong(offset + STAMP_OFFSET, writeStamp + 1L);
+        _stores.increment();
+
+      } catch(OverlappingFileLockException e) {
+        // another cache instance in this process is writing the slot
+        _skips.increment();
+      } catch(IOException e) {
+        // caching is best effort
+        _skips.increment();
+      } finally {
+        releaseQuietly(lock);
+      }
+    }
+  }
+
+  private static void releaseQuietly(FileLock lock) {
+    if(lock != null) {
+      try {
+        lock.release();
+      } catch(IOException e) {
+        // ignored, released when the channel is closed
+      }
+    }
+  }
+
+  private static long checksum(byte[] fingerprint, long generation,
+                               int pageNumber, byte[] encPage, byte[] decPage,
+                               int len)
+  {
+    long h = DecryptedPageCache.hashPage(
+        (((long)pageNumber) << 32) ^ generation, fingerprint,
+        FINGERPRINT_LENGTH);
+    h = DecryptedPageCache.hashPage(h, encPage, len);
+    return DecryptedPageCache.hashPage(h, decPage, len);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "SharedPageCache[%s, %d slots, generation=%d, hits=%d, misses=%d, " +
+        "stores=%d, skips=%d]", _file, _numSlots, getGeneration(),
+        getHitCount(), getMissCount(), getStoreCount(), getSkipCount());
+  }
+
+  /**
+   * CodecHandler which serves decoded pages from the shared cache when
+   * possible.
+   */
+  private static final class SharingCodecHandler
+    extends DelegatingCodecHandler
+  {
+    private final SharedPageCache _cache;
+    private final byte[] _fingerprint;
+    private final long _fingerprintHash;
+
+    private SharingCodecHandler(CodecHandler delegate, SharedPageCache cache,
+                                byte[] fingerprint) {
+      super(delegate);
+      _cache = cache;
+      _fingerprint = fingerprint;
+      _fingerprintHash = DecryptedPageCache.hashPage(
+          0L, fingerprint, fingerprint.length);
+    }
+
+    @Override
+    public void decodePage(ByteBuffer inPage, ByteBuffer outPage,
+                           int pageNumber)
+      throws IOException
+    {
+      byte[] encBytes = inPage.array();
+      int len = inPage.limit();
+      long pageHash = DecryptedPageCache.hashPage(
+          _fingerprintHash + pageNumber, encBytes, len);
+
+      ByteBuffer decodedPage = (canDecodeInline() ? inPage : outPage);
+      byte[] decBytes = new byte[len];
+      if(_cache.get(_fingerprint, pageNumber, pageHash, encBytes, len,
+                    decBytes)) {
+        System.arraycopy(decBytes, 0, decodedPage.array(), 0, len);
+        return;
+      }
+
+      // the encoded page may be decoded inline, so grab a copy first
+      byte[] encPage = Arrays.copyOf(encBytes, len);
+      super.decodePage(inPage, outPage, pageNumber);
+      _cache.put(_fingerprint, pageNumber, pageHash, encPage, len,
+                 decodedPage.array());
+    }
+  }
+}
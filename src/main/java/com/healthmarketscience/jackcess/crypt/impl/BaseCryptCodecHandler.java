@@ -19,8 +19,11 @@ package com.healthmarketscience.jackcess.crypt.impl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
+import com.healthmarketscience.jackcess.crypt.CryptMemoryBudget;
 import com.healthmarketscience.jackcess.crypt.util.StreamCipherCompat;
 import com.healthmarketscience.jackcess.impl.ByteUtil;
 import com.healthmarketscience.jackcess.impl.CodecHandler;
@@ -30,12 +33,23 @@ import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 
 
 /**
  * Common CodecHandler support.
+ * <p>
+ * CodecHandler instances are safe for concurrent use.  All mutable cipher,
+ * digest and buffer state is maintained per-thread, so multiple threads may
+ * decode (or encode) pages using the same handler without any locking.
+ * <p>
+ * Note that the per-thread state is held in ThreadLocals of the handler, so
+ * the state of each thread which used a handler (e.g. a pooled thread)
+ * lingers until the handler is garbage collected and the thread expunges the
+ * stale entries.  The temp buffer is only softly referenced, and lean
+ * handlers (see {@link #setLean}) minimize the rest of that state.
  *
  * @author Vladimir Berezniker
  */
@@ -52,13 +66,61 @@ public abstract class BaseCryptCodecHandler implements CodecHandler
         return computeCipherParams(pageNumber);
       }
     };
-  private TempBufferHolder _tempBufH;
+  private volatile boolean _lean;
+  private volatile boolean _incrementalEncode;
+  private volatile CryptMemoryBudget _memoryBudget;
+  private final ThreadLocal<TempBufferHolder> _tempBufH =
+    ThreadLocal.withInitial(
+        () -> TempBufferHolder.newHolder(TempBufferHolder.Type.SOFT, true));
 
   protected BaseCryptCodecHandler(PageChannel channel, byte[] encodingKey) {
     _channel = channel;
     _encodingKey = encodingKey;
   }
 
+  public boolean isLean() {
+    return _lean;
+  }
+
+  /**
+   * Enables/disables lean mode, which minimizes the memory retained by this
+   * handler (e.g. when many databases are held open) at the cost of some
+   * extra CPU.  In lean mode, only the key for the most recently used page is
+   * cached (per thread) and recently encoded pages are not retained.
+   */
+  public void setLean(boolean lean) {
+    _lean = lean;
+    _paramCache.setMaxSize(lean ? 1 : KeyCache.MAX_KEY_CACHE_SIZE);
+  }
+
+  public boolean isIncrementalEncode() {
+    return _incrementalEncode;
+  }
+
+  /**
+   * Enables/disables incremental re-encoding (disabled by default).  When
+   * enabled, handlers which support it (block cipher handlers) retain the
+   * plaintext and ciphertext of recently encoded pages, so that re-encoding
+   * one of those pages only re-encrypts the changed blocks.  This mostly
+   * benefits ECB mode, since chained modes (CBC, CFB) must re-encrypt all the
+   * blocks following the first change.  Ignored in lean mode.
+   */
+  public void setIncrementalEncode(boolean incrementalEncode) {
+    _incrementalEncode = incrementalEncode;
+  }
+
+  public CryptMemoryBudget getMemoryBudget() {
+    return _memoryBudget;
+  }
+
+  /**
+   * Sets the budget to which any pages cached by this handler are charged
+   * (may be {@code null}).
+   */
+  public void setMemoryBudget(CryptMemoryBudget memoryBudget) {
+    _memoryBudget = memoryBudget;
+  }
+
   protected CipherParameters getCipherParams(int pageNumber) {
     return _paramCache.get(pageNumber);
   }
@@ -75,11 +137,14 @@ public abstract class BaseCryptCodecHandler implements CodecHandler
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Returns a page sized buffer for use by the current thread.  Note, the
+   * returned buffer will be re-used by subsequent calls from the same thread.
+   * The buffer is only allocated on first use (i.e. when a page is first
+   * encoded), and may be reclaimed when memory is low.
+   */
   protected ByteBuffer getTempBuffer() {
-    if(_tempBufH == null) {
-      _tempBufH = TempBufferHolder.newHolder(TempBufferHolder.Type.SOFT, true);
-    }
-    ByteBuffer tempBuf = _tempBufH.getPageBuffer(_channel);
+    ByteBuffer tempBuf = _tempBufH.get().getPageBuffer(_channel);
     tempBuf.clear();
     return tempBuf;
   }
@@ -153,6 +218,160 @@ public abstract class BaseCryptCodecHandler implements CodecHandler
     }
   }
 
+  /**
+   * Decodes only the bytes from {@code from} (inclusive) to {@code to}
+   * (exclusive) of the given page, e.g. when only the page header is needed.
+   * The decoded bytes are written to the same buffer as {@link #decodePage}
+   * would use ({@code inPage} if the handler can decode inline, otherwise
+   * {@code outPage}), the contents of the rest of that buffer are undefined.
+   * By default, the entire page is decoded.
+   */
+  public void decodePageRange(ByteBuffer inPage, ByteBuffer outPage,
+                              int pageNumber, int from, int to)
+    throws IOException
+  {
+    checkPageRange(inPage, from, to);
+    decodePage(inPage, outPage, pageNumber);
+  }
+
+  /**
+   * Decrypts the beginning of the given buffer, up to (but not including)
+   * the given offset, using a stream cipher.
+   */
+  protected void streamDecryptRange(ByteBuffer buffer, int pageNumber, int to) {
+    StreamCipherCompat cipher = decryptInit(getStreamCipher(),
+                                            getCipherParams(pageNumber));
+
+    // the keystream cannot be skipped, so we always start at offset 0
+    byte[] array = buffer.array();
+    cipher.processStreamBytes(array, 0, to, array, 0);
+  }
+
+  /**
+   * Decrypts the blocks of the given page which cover the given range using
+   * a block cipher.  If the cipher is chained, the ciphertext preceding the
+   * range is used as the IV (which works for both CBC and CFB chaining).
+   */
+  protected void blockDecryptRange(ByteBuffer inPage, ByteBuffer outPage,
+                                   int pageNumber, int from, int to,
+                                   boolean chained)
+  {
+    BufferedBlockCipher cipher = getBlockCipher();
+    CipherParameters params = getCipherParams(pageNumber);
+
+    byte[] inArray = inPage.array();
+    int blockSize = cipher.getBlockSize();
+    int start = (from / blockSize) * blockSize;
+    int end = Math.min(inArray.length,
+                       ((to + blockSize - 1) / blockSize) * blockSize);
+    if(start >= end) {
+      return;
+    }
+
+    if(chained) {
+      params = getRangeParams(params, inArray, start);
+    }
+
+    decryptInit(cipher, params);
+    processRange(cipher, inArray, outPage.array(), start, end);
+  }
+
+  /**
+   * Encrypts the given range of the given page (which must be aligned to
+   * the cipher block size) using a block cipher.  If the cipher is chained,
+   * the output array must already contain the ciphertext preceding the
+   * range.
+   */
+  protected void blockEncryptRange(byte[] inArray, byte[] outArray,
+                                   int pageNumber, int start, int end,
+                                   boolean chained)
+  {
+    BufferedBlockCipher cipher = getBlockCipher();
+    CipherParameters params = getCipherParams(pageNumber);
+    if(chained) {
+      params = getRangeParams(params, outArray, start);
+    }
+
+    encryptInit(cipher, params);
+    processRange(cipher, inArray, outArray, start, end);
+  }
+
+  /**
+   * Returns the params for a chained cipher starting at the given offset of
+   * the page with the given ciphertext.  The IV for the range is the bytes
+   * preceding the range in (IV + ciphertext), which works for both CBC and
+   * CFB chaining.
+   */
+  private static CipherParameters getRangeParams(
+      CipherParameters params, byte[] encArray, int start)
+  {
+    if(start == 0) {
+      return params;
+    }
+    ParametersWithIV ivParams = (ParametersWithIV)params;
+    byte[] iv = ivParams.getIV();
+    int ivLen = iv.length;
+    int encLen = Math.min(start, ivLen);
+    byte[] rangeIv = new byte[ivLen];
+    System.arraycopy(iv, encLen, rangeIv, 0, ivLen - encLen);
+    System.arraycopy(encArray, start - encLen, rangeIv, ivLen - encLen,
+                     encLen);
+    return new ParametersWithIV(ivParams.getParameters(), rangeIv);
+  }
+
+  private static void processRange(BufferedBlockCipher cipher,
+                                   byte[] inArray, byte[] outArray,
+                                   int start, int end)
+  {
+    try {
+      int outLen = cipher.processBytes(inArray, start, end - start, outArray,
+                                       start);
+      cipher.doFinal(outArray, start + outLen);
+    } catch(InvalidCipherTextException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Checks that the given range is within the given page.
+   */
+  protected static void checkPageRange(ByteBuffer page, int from, int to) {
+    if((from < 0) || (from > to) || (to > page.capacity())) {
+      throw new IllegalArgumentException(
+          "Invalid page range " + from + " to " + to);
+    }
+  }
+
+  /**
+   * Decodes the given pages (in place) in parallel using the common
+   * ForkJoinPool.
+   *
+   * @see PageDecodeTask#decodePages
+   */
+  public void decodePages(ByteBuffer[] pages, int[] pageNumbers)
+    throws IOException
+  {
+    PageDecodeTask.decodePages(this, pages, pageNumbers,
+                               ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Decodes the given contiguous range of pages (in place) in parallel using
+   * the common ForkJoinPool.
+   *
+   * @param pages the encoded pages, will contain the decoded pages on return
+   * @param firstPageNumber the page number of the first given page
+   */
+  public void decodePages(ByteBuffer[] pages, int firstPageNumber)
+    throws IOException
+  {
+    int[] pageNumbers = new int[pages.length];
+    for(int i = 0; i < pageNumbers.length; ++i) {
+      pageNumbers[i] = firstPageNumber + i;
+    }
+    decodePages(pages, pageNumbers);
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName();
@@ -251,6 +470,20 @@ public abstract class BaseCryptCodecHandler implements CodecHandler
     return buffer;
   }
 
+  /**
+   * @return a SHA-256 hash of the header page of the database in the given
+   *         channel, which identifies the encryption info (and therefore
+   *         the key material) of the database
+   */
+  public static byte[] getHeaderFingerprint(PageChannel pageChannel)
+    throws IOException
+  {
+    ByteBuffer header = readHeaderPage(pageChannel);
+    byte[] formatBytes = pageChannel.getFormat().toString().getBytes(
+        StandardCharsets.UTF_8);
+    return hash(new SHA256Digest(), formatBytes, header.array());
+  }
+
   /**
    * Returns a copy of the given key with the bytes of the given pageNumber
    * applied at the given offset using XOR.
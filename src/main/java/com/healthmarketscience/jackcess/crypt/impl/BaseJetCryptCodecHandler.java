@@ -31,7 +31,8 @@ import com.healthmarketscience.jackcess.impl.PageChannel;
  */
 public abstract class BaseJetCryptCodecHandler extends BaseCryptCodecHandler
 {
-  private StreamCipherCompat _engine;
+  private final ThreadLocal<StreamCipherCompat> _engine =
+    ThreadLocal.withInitial(StreamCipherFactory::newRC4Engine);
 
   protected BaseJetCryptCodecHandler(PageChannel channel, byte[] encodingKey) {
     super(channel, encodingKey);
@@ -52,10 +53,7 @@ public abstract class BaseJetCryptCodecHandler extends BaseCryptCodecHandler
 
   @Override
   protected final StreamCipherCompat getStreamCipher() {
-    if(_engine == null) {
-      _engine = StreamCipherFactory.newRC4Engine();
-    }
-    return _engine;
+    return _engine.get();
   }
 
   @Override
@@ -68,6 +66,18 @@ public abstract class BaseJetCryptCodecHandler extends BaseCryptCodecHandler
     streamDecrypt(inPage, pageNumber);
   }
 
+  @Override
+  public void decodePageRange(ByteBuffer inPage, ByteBuffer outPage,
+                              int pageNumber, int from, int to) {
+    checkPageRange(inPage, from, to);
+    if(!isEncryptedPage(pageNumber)) {
+      // not encoded
+      return;
+    }
+
+    streamDecryptRange(inPage, pageNumber, to);
+  }
+
   @Override
   public ByteBuffer encodePage(ByteBuffer buffer, int pageNumber,
                                int pageOffset) {
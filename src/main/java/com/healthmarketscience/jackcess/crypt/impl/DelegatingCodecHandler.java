@@ -0,0 +1,73 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+
+/**
+ * Base class for CodecHandlers which wrap another CodecHandler (which does
+ * the actual encoding/decoding).  All methods delegate to the wrapped handler
+ * by default.
+ *
+ * @author James Ahlborn
+ */
+public abstract class DelegatingCodecHandler implements CodecHandler
+{
+  private final CodecHandler _delegate;
+
+  protected DelegatingCodecHandler(CodecHandler delegate) {
+    _delegate = delegate;
+  }
+
+  public CodecHandler getDelegate() {
+    return _delegate;
+  }
+
+  @Override
+  public boolean canEncodePartialPage() {
+    return _delegate.canEncodePartialPage();
+  }
+
+  @Override
+  public boolean canDecodeInline() {
+    return _delegate.canDecodeInline();
+  }
+
+  @Override
+  public void decodePage(ByteBuffer inPage, ByteBuffer outPage,
+                         int pageNumber)
+    throws IOException
+  {
+    _delegate.decodePage(inPage, outPage, pageNumber);
+  }
+
+  @Override
+  public ByteBuffer encodePage(ByteBuffer buffer, int pageNumber,
+                               int pageOffset)
+    throws IOException
+  {
+    return _delegate.encodePage(buffer, pageNumber, pageOffset);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + _delegate + "]";
+  }
+}
@@ -0,0 +1,269 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+/**
+ * Cache of fully initialized CodecHandlers, keyed by the header page of the
+ * database file.  Since CodecHandlers are safe for concurrent use, a single
+ * handler (and the expensive key derivation performed while creating it) can
+ * be shared by all the Database instances opened for the same file.
+ * <p>
+ * A cached handler is only shared if the password returned by the password
+ * callback matches the password used to create the handler (the password is
+ * not retained, only a hash of it).  Concurrent requests for the same file
+ * wait for a single handler to be created (the handler is created outside of
+ * any map locks, so creating it does not block requests for other files).
+ * <p>
+ * The cache is bounded by the number of cached handlers, discarding the
+ * oldest handlers as necessary (a discarded handler remains usable by the
+ * Databases already using it).
+ *
+ * @author James Ahlborn
+ */
+public class HandlerCache
+{
+  /**
+   * Creates a new CodecHandler using the given password callback.
+   */
+  public interface HandlerFactory
+  {
+    public CodecHandler create(Supplier<String> callback) throws IOException;
+  }
+
+  /** default max number of cached handlers */
+  public static final int DEFAULT_MAX_HANDLERS = 64;
+
+  private final int _maxHandlers;
+  private final ConcurrentMap<HeaderKey,CompletableFuture<CachedHandler>>
+    _handlers =
+    new ConcurrentHashMap<HeaderKey,CompletableFuture<CachedHandler>>();
+  /** cached handlers in the order they were added */
+  private final Queue<Map.Entry<HeaderKey,CompletableFuture<CachedHandler>>>
+    _order = new ConcurrentLinkedQueue<
+      Map.Entry<HeaderKey,CompletableFuture<CachedHandler>>>();
+
+  public HandlerCache() {
+    this(DEFAULT_MAX_HANDLERS);
+  }
+
+  /**
+   * @param maxHandlers the max number of cached handlers
+   */
+  public HandlerCache(int maxHandlers) {
+    if(maxHandlers < 1) {
+      throw new IllegalArgumentException(
+          "Invalid max handlers " + maxHandlers);
+    }
+    _maxHandlers = maxHandlers;
+  }
+
+  public int getMaxHandlers() {
+    return _maxHandlers;
+  }
+
+  /**
+   * @return the number of cached handlers
+   */
+  public int size() {
+    return _handlers.size();
+  }
+
+  /**
+   * Discards all cached handlers.
+   */
+  public void clear() {
+    _handlers.clear();
+    _order.clear();
+  }
+
+  /**
+   * Returns a cached handler for the database in the given channel if
+   * available, otherwise creates (and caches) a new handler using the given
+   * factory.
+   */
+  public CodecHandler getHandler(PageChannel channel, Charset charset,
+                                 Supplier<String> callback,
+                                 HandlerFactory factory)
+    throws IOException
+  {
+    ByteBuffer header = BaseCryptCodecHandler.readHeaderPage(channel);
+    HeaderKey key = new HeaderKey(channel.getFormat(), charset,
+                                  header.array());
+
+    CachedHandler cached = null;
+    while(cached == null) {
+      CompletableFuture<CachedHandler> newHandlerF =
+        new CompletableFuture<CachedHandler>();
+      CompletableFuture<CachedHandler> handlerF =
+        _handlers.putIfAbsent(key, newHandlerF);
+      if(handlerF == null) {
+        // we get to create the handler
+        return createHandler(key, newHandlerF, callback, factory);
+      }
+
+      try {
+        cached = handlerF.join();
+      } catch(CompletionException | CancellationException e) {
+        // creation failed for the other caller (e.g. wrong password), try
+        // again (the failed handler is no longer cached)
+      }
+    }
+
+    if(cached._pwdHash == null) {
+      // handler did not require a password
+      return cached._handler;
+    }
+
+    String pwd = callback.get();
+    if(Arrays.equals(cached._pwdHash, hashPassword(pwd))) {
+      return cached._handler;
+    }
+
+    // different password, create a new (unshared) handler
+    return factory.create(() -> pwd);
+  }
+
+  private CodecHandler createHandler(
+      HeaderKey key, CompletableFuture<CachedHandler> handlerF,
+      Supplier<String> callback, HandlerFactory factory)
+    throws IOException
+  {
+    Map.Entry<HeaderKey,CompletableFuture<CachedHandler>> entry =
+      new AbstractMap.SimpleImmutableEntry<
+        HeaderKey,CompletableFuture<CachedHandler>>(key, handlerF);
+    _order.add(entry);
+
+    boolean success = false;
+    try {
+      PasswordHolder pwdHolder = new PasswordHolder(callback);
+      CachedHandler cached = new CachedHandler(factory.create(pwdHolder),
+                                               pwdHolder);
+      handlerF.complete(cached);
+      success = true;
+      trim();
+      return cached._handler;
+    } finally {
+      if(!success) {
+        // don't cache the failure
+        _handlers.remove(key, handlerF);
+        _order.remove(entry);
+        handlerF.cancel(false);
+      }
+    }
+  }
+
+  private void trim() {
+    Map.Entry<HeaderKey,CompletableFuture<CachedHandler>> entry = null;
+    while((_handlers.size() > _maxHandlers) &&
+          ((entry = _order.poll()) != null)) {
+      _handlers.remove(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private static byte[] hashPassword(String pwd) {
+    byte[] pwdBytes = ((pwd != null) ? pwd.getBytes(StandardCharsets.UTF_8) :
+                       new byte[0]);
+    // distinguish a null password from an empty one
+    return BaseCryptCodecHandler.hash(
+        new SHA256Digest(), pwdBytes,
+        new byte[]{(byte)((pwd != null) ? 1 : 0)});
+  }
+
+  /**
+   * Password callback which remembers (a hash of) the password it returned.
+   */
+  private static final class PasswordHolder implements Supplier<String>
+  {
+    private final Supplier<String> _callback;
+    private byte[] _pwdHash;
+
+    private PasswordHolder(Supplier<String> callback) {
+      _callback = callback;
+    }
+
+    @Override
+    public String get() {
+      String pwd = _callback.get();
+      _pwdHash = hashPassword(pwd);
+      return pwd;
+    }
+  }
+
+  private static final class CachedHandler
+  {
+    private final CodecHandler _handler;
+    private final byte[] _pwdHash;
+
+    private CachedHandler(CodecHandler handler, PasswordHolder creator) {
+      _handler = handler;
+      _pwdHash = creator._pwdHash;
+    }
+  }
+
+  private static final class HeaderKey
+  {
+    private final JetFormat _format;
+    private final Charset _charset;
+    private final byte[] _header;
+    private final int _hashCode;
+
+    private HeaderKey(JetFormat format, Charset charset, byte[] header) {
+      _format = format;
+      _charset = charset;
+      _header = header;
+      _hashCode = Arrays.hashCode(header);
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if(!(o instanceof HeaderKey)) {
+        return false;
+      }
+      HeaderKey other = (HeaderKey)o;
+      return ((_format == other._format) &&
+              Objects.equals(_charset, other._charset) &&
+              Arrays.equals(_header, other._header));
+    }
+  }
+}
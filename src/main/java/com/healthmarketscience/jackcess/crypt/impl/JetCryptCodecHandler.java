@@ -52,6 +52,24 @@ public class JetCryptCodecHandler extends BaseJetCryptCodecHandler
             new JetCryptCodecHandler(channel, encodingKey));
   }
 
+  /**
+   * @return {@code true} if the given (unmasked) header page has an encoding
+   *         key (i.e. the database is encoded), {@code false} otherwise
+   */
+  public static boolean hasEncodingKey(ByteBuffer header, JetFormat format) {
+    return !isBlankKey(ByteUtil.getBytes(header, format.OFFSET_ENCODING_KEY,
+                                         ENCODING_KEY_LENGTH));
+  }
+
+  /**
+   * Clears the encoding key in the given (unmasked) header page, so that the
+   * database is no longer considered encrypted.
+   */
+  public static void clearEncodingKey(ByteBuffer header, JetFormat format) {
+    ByteUtil.clearRange(header, format.OFFSET_ENCODING_KEY,
+                        format.OFFSET_ENCODING_KEY + ENCODING_KEY_LENGTH);
+  }
+
   @Override
   protected KeyParameter computeCipherParams(int pageNumber) {
     return new KeyParameter(getEncodingKey(pageNumber));
@@ -20,25 +20,44 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
+ * Small LRU cache of per-page keys.  Each thread maintains its own cache, so
+ * lookups never contend with concurrent page decoding on other threads.
  *
  * @author James Ahlborn
  */
 public abstract class KeyCache<K>
 {
-  private static final int MAX_KEY_CACHE_SIZE = 5;
+  public static final int MAX_KEY_CACHE_SIZE = 5;
 
-  private final KeyMap<K> _map = new KeyMap<K>();
+  private final ThreadLocal<KeyMap> _map =
+    ThreadLocal.withInitial(KeyMap::new);
+  private volatile int _maxSize = MAX_KEY_CACHE_SIZE;
 
   protected KeyCache()
   {
   }
 
+  public int getMaxSize() {
+    return _maxSize;
+  }
+
+  /**
+   * Sets the max number of keys cached (per thread).
+   */
+  public void setMaxSize(int maxSize) {
+    if(maxSize < 1) {
+      throw new IllegalArgumentException("Invalid key cache size " + maxSize);
+    }
+    _maxSize = maxSize;
+  }
+
   public K get(int pageNumber) {
+    KeyMap map = _map.get();
     Integer pageNumKey = pageNumber;
-    K key = _map.get(pageNumKey);
+    K key = map.get(pageNumKey);
     if(key == null) {
       key = computeKey(pageNumber);
-      _map.put(pageNumKey, key);
+      map.put(pageNumKey, key);
     }
     return key;
   }
@@ -46,7 +65,7 @@ public abstract class KeyCache<K>
   protected abstract K computeKey(int pageNumber);
 
 
-  private static final class KeyMap<K> extends LinkedHashMap<Integer,K>
+  private final class KeyMap extends LinkedHashMap<Integer,K>
   {
     private static final long serialVersionUID = 0L;
 
@@ -56,7 +75,7 @@ public abstract class KeyCache<K>
 
     @Override
     protected boolean removeEldestEntry(Map.Entry<Integer,K> eldest) {
-      return size() > MAX_KEY_CACHE_SIZE;
+      return size() > _maxSize;
     }
   }
 
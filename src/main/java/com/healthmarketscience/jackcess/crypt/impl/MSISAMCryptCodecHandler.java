@@ -82,7 +82,7 @@ public class MSISAMCryptCodecHandler extends BaseJetCryptCodecHandler
   {
     ByteBuffer buffer = readHeaderPage(channel);
 
-    if ((buffer.get(ENCRYPTION_FLAGS_OFFSET) & NEW_ENCRYPTION) != 0) {
+    if (isNewEncryption(buffer)) {
       return new MSISAMCryptCodecHandler(channel, callback.get(), charset, buffer);
     }
 
@@ -96,6 +96,23 @@ public class MSISAMCryptCodecHandler extends BaseJetCryptCodecHandler
       };
   }
 
+  /**
+   * @return {@code true} if the given (unmasked) header page uses the newer,
+   *         password based encryption, {@code false} if it uses the older
+   *         jet-style encryption
+   */
+  public static boolean isNewEncryption(ByteBuffer header) {
+    return ((header.get(ENCRYPTION_FLAGS_OFFSET) & NEW_ENCRYPTION) != 0);
+  }
+
+  /**
+   * @return {@code true} if the given (unmasked) header page uses SHA-1 to
+   *         hash the password, {@code false} if it uses MD5
+   */
+  public static boolean isSha1Digest(ByteBuffer header) {
+    return ((header.get(ENCRYPTION_FLAGS_OFFSET) & USE_SHA1) != 0);
+  }
+
   @Override
   protected KeyParameter computeCipherParams(int pageNumber) {
     return new KeyParameter(
@@ -130,8 +147,7 @@ public class MSISAMCryptCodecHandler extends BaseJetCryptCodecHandler
       ByteBuffer buffer, String password, Charset charset)
   {
       Digest digest =
-        (((buffer.get(ENCRYPTION_FLAGS_OFFSET) & USE_SHA1) != 0) ?
-         new SHA1Digest() : new MD5Digest());
+        (isSha1Digest(buffer) ? new SHA1Digest() : new MD5Digest());
 
       byte[] passwordBytes = new byte[PASSWORD_LENGTH];
 
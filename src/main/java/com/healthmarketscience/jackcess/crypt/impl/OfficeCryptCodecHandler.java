@@ -19,13 +19,16 @@ package com.healthmarketscience.jackcess.crypt.impl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.security.SecureRandom;
 import java.util.function.Supplier;
 
+import com.healthmarketscience.jackcess.crypt.AgileEncryptionSettings;
 import com.healthmarketscience.jackcess.crypt.InvalidCredentialsException;
 import com.healthmarketscience.jackcess.crypt.InvalidCryptoConfigurationException;
 import com.healthmarketscience.jackcess.crypt.impl.office.AgileEncryptionProvider;
 import com.healthmarketscience.jackcess.crypt.impl.office.ECMAStandardEncryptionProvider;
 import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionHeader;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionInfoWriter;
 import com.healthmarketscience.jackcess.crypt.impl.office.NonStandardEncryptionProvider;
 import com.healthmarketscience.jackcess.crypt.impl.office.OfficeBinaryDocRC4Provider;
 import com.healthmarketscience.jackcess.crypt.impl.office.RC4CryptoAPIProvider;
@@ -45,12 +48,13 @@ import org.bouncycastle.crypto.Digest;
 public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
 {
   private static final int MAX_PASSWORD_LEN = 255;
-  private static final int CRYPT_STRUCTURE_OFFSET = 0x299;
+  public static final int CRYPT_STRUCTURE_OFFSET = 0x299;
+  /** end of the space available for the crypt structure */
+  private static final int CRYPT_STRUCTURE_END = 0xE00;
 
   protected enum Phase { PWD_VERIFY, CRYPT; }
 
-  private Digest _digest;
-  private ByteBuffer _tempIntBuf;
+  private ThreadLocal<Digest> _digest = newDigestHolder();
   private Phase _phase = Phase.PWD_VERIFY;
 
   protected OfficeCryptCodecHandler(PageChannel channel, byte[] encodingKey)
@@ -61,6 +65,30 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
   public static CodecHandler create(Supplier<String> callback, PageChannel channel,
                                     Charset charset)
     throws IOException
+  {
+    return create(callback, channel, charset, null);
+  }
+
+  /**
+   * Creates a handler for a database which was just written with the given
+   * (newly created) encryption info, re-using the iterated password hash
+   * derived while creating the info instead of deriving it from the password
+   * again.  Note that the hash replaces the password verification (the
+   * given password is not hashed), so this must only be used with the info
+   * created for that password.
+   */
+  public static CodecHandler createForEncryptionInfo(
+      Supplier<String> callback, PageChannel channel, Charset charset,
+      EncryptionInfoWriter.NewEncryptionInfo encInfo)
+    throws IOException
+  {
+    return create(callback, channel, charset, encInfo);
+  }
+
+  private static CodecHandler create(
+      Supplier<String> callback, PageChannel channel, Charset charset,
+      EncryptionInfoWriter.NewEncryptionInfo encInfo)
+    throws IOException
   {
     ByteBuffer buffer = readHeaderPage(channel);
     JetFormat format = channel.getFormat();
@@ -75,10 +103,7 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
       return DefaultCodecProvider.DUMMY_HANDLER;
     }
 
-    short infoLen = buffer.getShort(CRYPT_STRUCTURE_OFFSET);
-
-    ByteBuffer encProvBuf =
-      wrap(ByteUtil.getBytes(buffer, CRYPT_STRUCTURE_OFFSET + 2, infoLen));
+    ByteBuffer encProvBuf = readEncryptionInfo(buffer);
 
     // read encoding provider version
     // uint (2.1.4 Version)
@@ -89,7 +114,13 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
     byte[] pwdBytes = getPasswordBytes(callback.get());
 
     OfficeCryptCodecHandler handler = null;
-    if((vMajor == 4) && (vMinor == 4)) {
+    if(encInfo != null) {
+
+      // the provider of the new info
+      handler = encInfo.newProvider(channel, encodingKey, encProvBuf,
+                                    pwdBytes);
+
+    } else if((vMajor == 4) && (vMinor == 4)) {
 
       // OC: 2.3.4.10 - Agile Encryption: 4,4
       handler = new AgileEncryptionProvider(channel, encodingKey, encProvBuf,
@@ -158,6 +189,7 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
       throw new InvalidCredentialsException("Incorrect password provided");
     }
 
+    handler.clearVerifyState();
     handler.reset();
     handler._phase = Phase.CRYPT;
 
@@ -169,10 +201,7 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
   }
 
   protected Digest getDigest() {
-    if(_digest == null) {
-      _digest = initDigest();
-    }
-    return _digest;
+    return _digest.get();
   }
 
   protected Digest initDigest() {
@@ -195,15 +224,31 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
   }
 
   protected final byte[] int2bytes(int val) {
-    if(_tempIntBuf == null) {
-      _tempIntBuf = wrap(new byte[4]);
-    }
-    _tempIntBuf.putInt(0, val);
-    return _tempIntBuf.array();
+    return wrap(new byte[4]).putInt(0, val).array();
   }
 
+  /**
+   * Discards any cached cipher/digest state so that it will be re-initialized
+   * for the current phase.  Only called while the handler is being created
+   * (before it is visible to other threads).
+   */
   protected void reset() {
-    _digest = null;
+    // only the creating thread used the old state, so this discards it all
+    _digest.remove();
+    _digest = newDigestHolder();
+  }
+
+  /**
+   * Discards any state which is only needed to verify the password (called
+   * once the password has been verified, before the handler is visible to
+   * other threads).
+   */
+  protected void clearVerifyState() {
+    // base class has nothing to discard
+  }
+
+  private ThreadLocal<Digest> newDigestHolder() {
+    return ThreadLocal.withInitial(this::initDigest);
   }
 
   @Override
@@ -218,6 +263,20 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
     decodePageImpl(inPage, outPage, pageNumber);
   }
 
+  @Override
+  public void decodePageRange(ByteBuffer inPage, ByteBuffer outPage,
+                              int pageNumber, int from, int to)
+    throws IOException
+  {
+    checkPageRange(inPage, from, to);
+    if(!isEncryptedPage(pageNumber)) {
+      // not encoded
+      return;
+    }
+
+    decodePageRangeImpl(inPage, outPage, pageNumber, from, to);
+  }
+
   @Override
   public ByteBuffer encodePage(ByteBuffer buffer, int pageNumber,
                                int pageOffset)
@@ -232,15 +291,25 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
   }
 
   protected byte[] iterateHash(byte[] baseHash, int iterations) {
+    return iterateHash(getDigest(), baseHash, iterations);
+  }
+
+  /**
+   * Iteratively hashes the given base hash the given number of times using
+   * the given digest (OC: 2.3.4.7, 2.3.4.11).
+   */
+  public static byte[] iterateHash(Digest digest, byte[] baseHash,
+                                   int iterations) {
 
     if(iterations == 0) {
       return baseHash;
     }
 
-    Digest digest = getDigest();
+    ByteBuffer iterBuf = wrap(new byte[4]);
     byte[] iterHash = baseHash;
     for(int i = 0; i < iterations; ++i) {
-      iterHash = hash(digest, int2bytes(i), iterHash);
+      iterBuf.putInt(0, i);
+      iterHash = hash(digest, iterBuf.array(), iterHash);
     }
     return iterHash;
   }
@@ -249,7 +318,80 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
     return (pageNumber > 0);
   }
 
-  private static byte[] getPasswordBytes(String password) {
+  /**
+   * Clears the encoding key and the encryption provider info from the given
+   * (unmasked) header page, so that the database is no longer considered
+   * encrypted.
+   */
+  public static void clearEncryptionInfo(ByteBuffer header, JetFormat format)
+  {
+    JetCryptCodecHandler.clearEncodingKey(header, format);
+
+    int infoEnd = Math.min(
+        header.limit(),
+        CRYPT_STRUCTURE_OFFSET + 2 +
+        ByteUtil.getUnsignedShort(header, CRYPT_STRUCTURE_OFFSET));
+    ByteUtil.clearRange(header, CRYPT_STRUCTURE_OFFSET, infoEnd);
+  }
+
+  /**
+   * Generates a random encoding key in the given (unmasked) header page if
+   * it does not already have one (a blank key indicates an unencrypted
+   * database).
+   */
+  public static void initEncodingKey(ByteBuffer header, JetFormat format,
+                                     SecureRandom random)
+  {
+    byte[] encodingKey = ByteUtil.getBytes(
+        header, format.OFFSET_ENCODING_KEY,
+        JetCryptCodecHandler.ENCODING_KEY_LENGTH);
+    if(!isBlankKey(encodingKey)) {
+      return;
+    }
+
+    do {
+      random.nextBytes(encodingKey);
+    } while(isBlankKey(encodingKey));
+
+    ByteBuffer keyBuf = header.duplicate();
+    keyBuf.position(format.OFFSET_ENCODING_KEY);
+    keyBuf.put(encodingKey);
+  }
+
+  /**
+   * Returns the encryption provider info (starting with the version info)
+   * from the given (unmasked) header page.
+   */
+  public static ByteBuffer readEncryptionInfo(ByteBuffer header)
+  {
+    short infoLen = header.getShort(CRYPT_STRUCTURE_OFFSET);
+    return wrap(ByteUtil.getBytes(header, CRYPT_STRUCTURE_OFFSET + 2, infoLen));
+  }
+
+  /**
+   * Replaces the encryption provider info in the given (unmasked) header
+   * page with the given info (starting with the version info).
+   */
+  public static void writeEncryptionInfo(ByteBuffer header, byte[] encInfo)
+  {
+    int infoEnd = CRYPT_STRUCTURE_OFFSET + 2 + encInfo.length;
+    if(infoEnd > CRYPT_STRUCTURE_END) {
+      throw new InvalidCryptoConfigurationException(
+          "Encryption info length " + encInfo.length + " is too large");
+    }
+
+    ByteUtil.clearRange(header, CRYPT_STRUCTURE_OFFSET, CRYPT_STRUCTURE_END);
+    header.putShort(CRYPT_STRUCTURE_OFFSET, (short)encInfo.length);
+    ByteBuffer infoBuf = header.duplicate();
+    infoBuf.position(CRYPT_STRUCTURE_OFFSET + 2);
+    infoBuf.put(encInfo);
+  }
+
+  /**
+   * @return the bytes of the given password as used by the office encryption
+   *         providers
+   */
+  public static byte[] getPasswordBytes(String password) {
     if(password == null) {
       return new byte[0];
     }
@@ -260,6 +402,22 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
     return password.getBytes(EncryptionHeader.UNICODE_CHARSET);
   }
 
+  /**
+   * Creates new encryption provider info (starting with the version info)
+   * for the given password which uses the same algorithms as this handler,
+   * but new salts and keys.  The optional settings replace the key
+   * derivation parameters (where supported by the type of encryption).
+   *
+   * @throws UnsupportedCodecException if this type of encryption info cannot
+   *         be created
+   */
+  public EncryptionInfoWriter.NewEncryptionInfo createEncryptionInfo(
+      String password, AgileEncryptionSettings settings, SecureRandom random)
+  {
+    throw new UnsupportedCodecException(
+        "Cannot create encryption info for " + getClass().getSimpleName());
+  }
+
   protected static int bits2bytes(int bits) {
     return bits/8;
   }
@@ -268,6 +426,17 @@ public abstract class OfficeCryptCodecHandler extends BaseCryptCodecHandler
                                          int pageNumber)
     throws IOException;
 
+  /**
+   * Decodes (at least) the given range of the given page.  By default, the
+   * entire page is decoded.
+   */
+  protected void decodePageRangeImpl(ByteBuffer inPage, ByteBuffer outPage,
+                                     int pageNumber, int from, int to)
+    throws IOException
+  {
+    decodePageImpl(inPage, outPage, pageNumber);
+  }
+
   protected abstract ByteBuffer encodePageImpl(
       ByteBuffer buffer, int pageNumber, int pageOffset)
     throws IOException;
@@ -0,0 +1,222 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.healthmarketscience.jackcess.crypt.CryptMemoryBudget;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+
+/**
+ * CodecHandler which serves the first pages of a database (which are read
+ * while the database is being opened, e.g. the system catalog) from pages
+ * decoded in parallel when the handler was created.  The pages are read
+ * while the key derivation/password verification is in progress (see
+ * {@link #readPages}), and decoded as soon as the handler is available.
+ * <p>
+ * Each prefetched page is used at most once, and only if its encoded bytes
+ * match the page passed to {@link #decodePage}.  The prefetched pages are
+ * only intended to speed up opening the database, so any which have not been
+ * used are discarded once the database has decoded a few times as many pages
+ * as were prefetched (or when evicted by the memory budget, if any).
+ *
+ * @author James Ahlborn
+ */
+public class OpenPrefetchCodecHandler extends DelegatingCodecHandler
+{
+  /** prefetched pages are discarded after this many decodes per page */
+  private static final int DECODES_PER_PAGE = 4;
+  /** relative cost of a prefetched page (which is likely used at most
+      once) */
+  private static final int PREFETCHED_PAGE_COST = 1;
+
+  private final Map<Integer,PrefetchedPage> _prefetched =
+    new ConcurrentHashMap<Integer,PrefetchedPage>();
+  private final int _maxDecodes;
+  private final AtomicInteger _numDecodes = new AtomicInteger();
+
+  private OpenPrefetchCodecHandler(CodecHandler delegate,
+                                   List<PrefetchedPage> pages) {
+    super(delegate);
+    for(PrefetchedPage page : pages) {
+      _prefetched.put(page._pageNumber, page);
+    }
+    _maxDecodes = pages.size() * DECODES_PER_PAGE;
+  }
+
+  /**
+   * Starts reading (without decoding) the given number of pages following
+   * the header page of the given (uninitialized) channel using the given
+   * executor.
+   */
+  public static CompletableFuture<List<ByteBuffer>> readPages(
+      PageChannel channel, int numPages, Executor executor)
+  {
+    return CompletableFuture.supplyAsync(() -> {
+        List<ByteBuffer> pages = new ArrayList<ByteBuffer>(numPages);
+        try {
+          for(int i = 1; i <= numPages; ++i) {
+            ByteBuffer page = channel.createPageBuffer();
+            channel.readPage(page, i);
+            pages.add(page);
+          }
+        } catch(IllegalStateException e) {
+          // end of file
+        } catch(IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return pages;
+      }, executor);
+  }
+
+  /**
+   * Decodes the given pages (read by {@link #readPages}) in parallel and
+   * returns a handler which serves them.  If the pages could not be read,
+   * the given handler is returned as is.  The prefetched pages are charged
+   * to the given budget (if not {@code null}).
+   */
+  public static CodecHandler create(
+      CodecHandler handler, CompletableFuture<List<ByteBuffer>> rawPagesF,
+      ForkJoinPool pool, CryptMemoryBudget budget)
+    throws IOException
+  {
+    List<ByteBuffer> rawPages = null;
+    try {
+      rawPages = rawPagesF.join();
+    } catch(RuntimeException e) {
+      // the pages will just be read normally (which will surface any real
+      // problem)
+      return handler;
+    }
+    if(rawPages.isEmpty()) {
+      return handler;
+    }
+
+    int numPages = rawPages.size();
+    ByteBuffer[] pages = new ByteBuffer[numPages];
+    int[] pageNumbers = new int[numPages];
+    for(int i = 0; i < numPages; ++i) {
+      pages[i] = PageChannel.wrap(rawPages.get(i).array().clone());
+      pageNumbers[i] = i + 1;
+    }
+    PageDecodeTask.decodePages(handler, pages, pageNumbers, pool);
+
+    List<PrefetchedPage> prefetched = new ArrayList<PrefetchedPage>(numPages);
+    for(int i = 0; i < numPages; ++i) {
+      prefetched.add(new PrefetchedPage(pageNumbers[i],
+                                        rawPages.get(i).array(),
+                                        pages[i].array()));
+    }
+    OpenPrefetchCodecHandler prefetchHandler =
+      new OpenPrefetchCodecHandler(handler, prefetched);
+    if(budget != null) {
+      for(PrefetchedPage page : prefetched) {
+        page._charge = budget.charge(
+            page._cipherText.length + page._plainText.length,
+            PREFETCHED_PAGE_COST,
+            () -> prefetchHandler._prefetched.remove(page._pageNumber, page));
+      }
+    }
+    return prefetchHandler;
+  }
+
+  @Override
+  public void decodePage(ByteBuffer inPage, ByteBuffer outPage,
+                         int pageNumber)
+    throws IOException
+  {
+    if(!_prefetched.isEmpty()) {
+      PrefetchedPage page = _prefetched.remove(pageNumber);
+      if(page != null) {
+        page.release();
+      }
+      if(_numDecodes.incrementAndGet() >= _maxDecodes) {
+        // database is open, no need to hang on to the remaining pages
+        for(PrefetchedPage unusedPage : _prefetched.values()) {
+          unusedPage.release();
+        }
+        _prefetched.clear();
+      }
+      if((page != null) && page.matches(inPage)) {
+        byte[] plainText = page._plainText;
+        ByteBuffer decodedPage = (canDecodeInline() ? inPage : outPage);
+        System.arraycopy(plainText, 0, decodedPage.array(), 0,
+                         plainText.length);
+        return;
+      }
+    }
+
+    super.decodePage(inPage, outPage, pageNumber);
+  }
+
+  @Override
+  public ByteBuffer encodePage(ByteBuffer buffer, int pageNumber,
+                               int pageOffset)
+    throws IOException
+  {
+    // any prefetched version of this page is about to be obsolete
+    PrefetchedPage page = _prefetched.remove(pageNumber);
+    if(page != null) {
+      page.release();
+    }
+    return super.encodePage(buffer, pageNumber, pageOffset);
+  }
+
+  /**
+   * @return the number of prefetched pages which have not been used (yet)
+   */
+  public int getPrefetchedPageCount() {
+    return _prefetched.size();
+  }
+
+  private static final class PrefetchedPage
+  {
+    private final int _pageNumber;
+    private final byte[] _cipherText;
+    private final byte[] _plainText;
+    private volatile CryptMemoryBudget.Charge _charge;
+
+    private PrefetchedPage(int pageNumber, byte[] cipherText,
+                           byte[] plainText) {
+      _pageNumber = pageNumber;
+      _cipherText = cipherText;
+      _plainText = plainText;
+    }
+
+    private boolean matches(ByteBuffer inPage) {
+      return Arrays.equals(inPage.array(), _cipherText);
+    }
+
+    private void release() {
+      if(_charge != null) {
+        _charge.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+
+/**
+ * Fork/join task which decodes a batch of pages in parallel.  Every page is
+ * encoded independently (using keys/IVs derived from the page number), so the
+ * batch is simply split into runs of pages which are decoded by separate
+ * workers.  The given handler must be safe for concurrent use (as all the
+ * handlers in this library are).
+ * <p>
+ * Pages are decoded in place.  The header page (page 0) is never encoded and
+ * is therefore left untouched.
+ *
+ * @author James Ahlborn
+ */
+public class PageDecodeTask extends RecursiveAction
+{
+  private static final long serialVersionUID = 20261019L;
+
+  /** runs of pages at or below this size are decoded by a single worker */
+  private static final int MAX_PAGES_PER_WORKER = 16;
+
+  private final CodecHandler _handler;
+  private final ByteBuffer[] _pages;
+  private final int[] _pageNumbers;
+  private final int _start;
+  private final int _end;
+
+  private PageDecodeTask(CodecHandler handler, ByteBuffer[] pages,
+                         int[] pageNumbers, int start, int end)
+  {
+    _handler = handler;
+    _pages = pages;
+    _pageNumbers = pageNumbers;
+    _start = start;
+    _end = end;
+  }
+
+  /**
+   * Decodes the given pages (in place) in parallel using the given pool.
+   *
+   * @param handler the handler with which to decode the pages
+   * @param pages the encoded pages, will contain the decoded pages on return
+   * @param pageNumbers the page number of the corresponding page
+   * @param pool the pool in which to decode the pages
+   */
+  public static void decodePages(CodecHandler handler, ByteBuffer[] pages,
+                                 int[] pageNumbers, ForkJoinPool pool)
+    throws IOException
+  {
+    if(pages.length != pageNumbers.length) {
+      throw new IllegalArgumentException(
+          "Mismatched pages " + pages.length + " and page numbers " +
+          pageNumbers.length);
+    }
+
+    try {
+      pool.invoke(new PageDecodeTask(handler, pages, pageNumbers, 0,
+                                     pages.length));
+    } catch(UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Decodes the given page in place.
+   *
+   * @param handler the handler with which to decode the page
+   * @param page the encoded page, will contain the decoded page on return
+   * @param pageNumber the number of the given page
+   * @param tmpPage scratch buffer for handlers which cannot decode inline,
+   *                may be {@code null} (in which case a new buffer will be
+   *                allocated if necessary)
+   * @return the scratch buffer (if one was necessary) for re-use in
+   *         subsequent calls
+   */
+  public static ByteBuffer decodePage(CodecHandler handler, ByteBuffer page,
+                                      int pageNumber, ByteBuffer tmpPage)
+    throws IOException
+  {
+    if(pageNumber == 0) {
+      // header page is never encoded
+      return tmpPage;
+    }
+
+    if(handler.canDecodeInline()) {
+      handler.decodePage(page, page, pageNumber);
+      return tmpPage;
+    }
+
+    if((tmpPage == null) || (tmpPage.capacity() != page.capacity())) {
+      tmpPage = PageChannel.createBuffer(page.capacity());
+    }
+    tmpPage.clear();
+    handler.decodePage(page, tmpPage, pageNumber);
+    System.arraycopy(tmpPage.array(), 0, page.array(), 0, page.capacity());
+    return tmpPage;
+  }
+
+  /**
+   * Decodes (at least) the given range of the given page in place, decoding
+   * only the necessary part of the page if the handler supports it (see
+   * {@link BaseCryptCodecHandler#decodePageRange}).  The contents of the
+   * rest of the page are undefined on return.
+   *
+   * @param handler the handler with which to decode the page
+   * @param page the encoded page, will contain the decoded range on return
+   * @param pageNumber the number of the given page
+   * @param from the start of the range to decode (inclusive)
+   * @param to the end of the range to decode (exclusive)
+   * @param tmpPage scratch buffer for handlers which cannot decode inline,
+   *                may be {@code null} (in which case a new buffer will be
+   *                allocated if necessary)
+   * @return the scratch buffer (if one was necessary) for re-use in
+   *         subsequent calls
+   */
+  public static ByteBuffer decodePageRange(CodecHandler handler,
+                                           ByteBuffer page, int pageNumber,
+                                           int from, int to,
+                                           ByteBuffer tmpPage)
+    throws IOException
+  {
+    // wrapping handlers (caches, etc.) do not change the decoded bytes, so
+    // we can go straight to the underlying handler
+    CodecHandler rangeHandler = handler;
+    while(rangeHandler instanceof DelegatingCodecHandler) {
+      rangeHandler = ((DelegatingCodecHandler)rangeHandler).getDelegate();
+    }
+    if(!(rangeHandler instanceof BaseCryptCodecHandler)) {
+      return decodePage(handler, page, pageNumber, tmpPage);
+    }
+    BaseCryptCodecHandler cryptHandler = (BaseCryptCodecHandler)rangeHandler;
+
+    if((pageNumber == 0) || cryptHandler.canDecodeInline()) {
+      cryptHandler.decodePageRange(page, page, pageNumber, from, to);
+      return tmpPage;
+    }
+
+    if((tmpPage == null) || (tmpPage.capacity() != page.capacity())) {
+      tmpPage = PageChannel.createBuffer(page.capacity());
+    }
+    tmpPage.clear();
+    cryptHandler.decodePageRange(page, tmpPage, pageNumber, from, to);
+    System.arraycopy(tmpPage.array(), from, page.array(), from, to - from);
+    return tmpPage;
+  }
+
+  @Override
+  protected void compute() {
+    int numPages = _end - _start;
+    if(numPages <= MAX_PAGES_PER_WORKER) {
+      decodeRun();
+      return;
+    }
+
+    int mid = _start + (numPages / 2);
+    invokeAll(new PageDecodeTask(_handler, _pages, _pageNumbers, _start, mid),
+              new PageDecodeTask(_handler, _pages, _pageNumbers, mid, _end));
+  }
+
+  private void decodeRun() {
+    ByteBuffer tmpPage = null;
+    try {
+      for(int i = _start; i < _end; ++i) {
+        tmpPage = decodePage(_handler, _pages[i], _pageNumbers[i], tmpPage);
+      }
+    } catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
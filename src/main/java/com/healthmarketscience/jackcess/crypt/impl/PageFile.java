@@ -0,0 +1,262 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.CodecProvider;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+
+/**
+ * Provides raw (undecoded) page level access to a database file, for
+ * utilities which process every page in a file without opening it as a
+ * Database.
+ * <p>
+ * Apart from the header page, pages are read and written exactly as stored.
+ * The header page is read/written via a PageChannel, so the header mask is
+ * handled correctly.  A read-only file may optionally be memory-mapped.
+ *
+ * @author James Ahlborn
+ */
+public class PageFile implements Closeable
+{
+  /** max size of a single mapped segment (must be a multiple of all page
+      sizes) */
+  private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+  private final FileChannel _channel;
+  private final JetFormat _format;
+  private final PageChannel _pageChannel;
+  private final int _pageSize;
+  private MappedByteBuffer[] _segments;
+
+  private PageFile(FileChannel channel, JetFormat format) throws IOException
+  {
+    _channel = channel;
+    _format = format;
+    _pageChannel = new PageChannel(channel, false, format, false);
+    _pageSize = format.PAGE_SIZE;
+  }
+
+  /**
+   * Opens an existing database file for reading.
+   *
+   * @param path the database file
+   * @param mapped whether or not the file should be memory-mapped
+   */
+  public static PageFile open(Path path, boolean mapped) throws IOException
+  {
+    return open(path, mapped, true);
+  }
+
+  /**
+   * Opens an existing database file.
+   *
+   * @param path the database file
+   * @param mapped whether or not the file should be memory-mapped (only
+   *               allowed for read-only files)
+   * @param readOnly whether or not the file should be opened read-only
+   */
+  public static PageFile open(Path path, boolean mapped, boolean readOnly)
+    throws IOException
+  {
+    FileChannel channel = (readOnly ?
+                           FileChannel.open(path, StandardOpenOption.READ) :
+                           FileChannel.open(path, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE));
+    try {
+      PageFile pageFile = new PageFile(channel, JetFormat.getFormat(channel));
+      if(mapped) {
+        pageFile.map();
+      }
+      return pageFile;
+    } catch(IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an existing database in the given channel (which will be closed
+   * when this PageFile is closed).
+   */
+  public static PageFile open(FileChannel channel) throws IOException
+  {
+    try {
+      return new PageFile(channel, JetFormat.getFormat(channel));
+    } catch(IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a new, empty database file (replacing any existing file) with
+   * the given format.
+   */
+  public static PageFile create(Path path, JetFormat format)
+    throws IOException
+  {
+    FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return new PageFile(channel, format);
+    } catch(IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public JetFormat getFormat() {
+    return _format;
+  }
+
+  public int getPageSize() {
+    return _pageSize;
+  }
+
+  public FileChannel getChannel() {
+    return _channel;
+  }
+
+  public PageChannel getPageChannel() {
+    return _pageChannel;
+  }
+
+  /**
+   * @return the number of (complete) pages in the file
+   */
+  public int getPageCount() throws IOException {
+    return (int)(_channel.size() / _pageSize);
+  }
+
+  /**
+   * @return a new page sized buffer
+   */
+  public ByteBuffer createPageBuffer() {
+    return _pageChannel.createPageBuffer();
+  }
+
+  /**
+   * Creates a CodecHandler for this file using the given provider.
+   */
+  public CodecHandler createHandler(CodecProvider provider) throws IOException
+  {
+    return provider.createHandler(_pageChannel, _format.CHARSET);
+  }
+
+  /**
+   * Reads the (unmasked) header page.
+   */
+  public ByteBuffer readHeaderPage() throws IOException
+  {
+    return BaseCryptCodecHandler.readHeaderPage(_pageChannel);
+  }
+
+  /**
+   * Writes the given (unmasked) header page.  If the file is empty, a blank
+   * page is written first so that the header page may be written before the
+   * other pages of a new file.
+   */
+  public void writeHeaderPage(ByteBuffer header) throws IOException
+  {
+    if(_channel.size() < _pageSize) {
+      // the PageChannel will not write pages beyond the end of the file
+      writePage(createPageBuffer(), 0);
+    }
+    _pageChannel.startWrite();
+    try {
+      header.rewind();
+      _pageChannel.writePage(header, 0);
+    } finally {
+      _pageChannel.finishWrite();
+    }
+  }
+
+  /**
+   * Reads the given page exactly as stored into the given buffer.
+   */
+  public void readPage(ByteBuffer page, int pageNumber) throws IOException
+  {
+    long pos = (long)pageNumber * _pageSize;
+    page.clear();
+    if(_segments != null) {
+      ByteBuffer segment = _segments[(int)(pos / MAX_SEGMENT_SIZE)].duplicate();
+      segment.position((int)(pos % MAX_SEGMENT_SIZE));
+      segment.limit(segment.position() + _pageSize);
+      page.put(segment);
+      page.flip();
+      return;
+    }
+
+    while(page.hasRemaining()) {
+      if(_channel.read(page, pos + page.position()) < 0) {
+        throw new IOException("Page " + pageNumber + " is past end of file");
+      }
+    }
+    page.flip();
+  }
+
+  /**
+   * Writes the given page exactly as given.
+   */
+  public void writePage(ByteBuffer page, int pageNumber) throws IOException
+  {
+    long pos = (long)pageNumber * _pageSize;
+    page.rewind();
+    while(page.hasRemaining()) {
+      _channel.write(page, pos + page.position());
+    }
+  }
+
+  /**
+   * Forces any changes to the underlying storage.
+   */
+  public void force() throws IOException
+  {
+    _channel.force(true);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    _segments = null;
+    _channel.close();
+  }
+
+  private void map() throws IOException
+  {
+    long size = (long)getPageCount() * _pageSize;
+    int numSegments = (int)((size + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+    MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+    for(int i = 0; i < numSegments; ++i) {
+      long pos = i * MAX_SEGMENT_SIZE;
+      segments[i] = _channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                 Math.min(MAX_SEGMENT_SIZE, size - pos));
+    }
+    _segments = segments;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copies a range of pages from one PageFile to another, transforming each
+ * page (e.g. decoding and/or encoding it) in parallel along the way.  This
+ * is the write-behind stage used by the bulk utilities (see {@link
+ * com.healthmarketscience.jackcess.crypt.CryptFileUtil}): the pages are
+ * encoded in parallel and written out in order.
+ * <p>
+ * Pages are processed in fixed size batches.  While one batch is being
+ * transformed by the workers in the pool, the previously transformed batch
+ * is written by the calling thread (thus overlapping the cipher work with
+ * the disk I/O), so memory usage is constant (two batches of pages)
+ * regardless of the size of the file.
+ * <p>
+ * Note, Jackcess does not allow the page writing done by a PageChannel to be
+ * intercepted, so this is intended for use by utilities which write pages
+ * directly.
+ *
+ * @author James Ahlborn
+ */
+public class PagePipeline
+{
+  /** default number of pages in a batch */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /** runs of pages at or below this size are transformed by a single
+      worker */
+  private static final int MAX_PAGES_PER_WORKER = 16;
+
+  /**
+   * Transformation applied to each page.  Implementations must be safe for
+   * concurrent use.
+   */
+  public interface PageTransform
+  {
+    /**
+     * Transforms the given page in place.
+     */
+    public void transform(ByteBuffer page, int pageNumber) throws IOException;
+  }
+
+  private final ForkJoinPool _pool;
+  private final int _batchSize;
+
+  public PagePipeline(ForkJoinPool pool) {
+    this(pool, DEFAULT_BATCH_SIZE);
+  }
+
+  public PagePipeline(ForkJoinPool pool, int batchSize) {
+    if(batchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size " + batchSize);
+    }
+    _pool = pool;
+    _batchSize = batchSize;
+  }
+
+  /**
+   * Copies the pages in the range [startPage, endPage) from the source file
+   * to the same page numbers in the destination file, applying the given
+   * transform to each page.
+   *
+   * @return the number of pages copied
+   */
+  public int copyPages(PageFile src, PageFile dest, int startPage,
+                       int endPage, PageTransform transform)
+    throws IOException
+  {
+    int batchSize = Math.max(1, Math.min(_batchSize, endPage - startPage));
+    Batch[] batches = {new Batch(src, batchSize), new Batch(src, batchSize)};
+    Batch pending = null;
+    ForkJoinTask<Void> pendingTask = null;
+    ForkJoinTask<Void> task = null;
+    int curBatch = 0;
+
+    try {
+      for(int pageNum = startPage; pageNum < endPage; pageNum += batchSize) {
+
+        Batch batch = batches[curBatch];
+        curBatch = (curBatch + 1) % batches.length;
+        batch.read(src, pageNum, Math.min(batchSize, endPage - pageNum));
+        task = _pool.submit(
+            new TransformTask(batch, 0, batch._numPages, transform));
+
+        // write the previous batch while the current batch is transformed
+        if(pending != null) {
+          pendingTask.join();
+          pending.write(dest);
+        }
+
+        pending = batch;
+        pendingTask = task;
+        task = null;
+      }
+
+      if(pending != null) {
+        pendingTask.join();
+        pending.write(dest);
+      }
+
+    } catch(UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      // don't leave workers writing into our buffers (the current task is
+      // only set if writing the previous batch failed).  note, cancelling a
+      // running task does not stop it, so the transform is stopped early and
+      // the tasks are waited for
+      for(Batch batch : batches) {
+        batch._aborted = true;
+      }
+      quietlyJoin(task);
+      quietlyJoin(pendingTask);
+    }
+
+    return Math.max(0, endPage - startPage);
+  }
+
+  private static void quietlyJoin(ForkJoinTask<Void> task) {
+    if(task != null) {
+      task.quietlyJoin();
+    }
+  }
+
+  /**
+   * Applies the given transform to the pages in the range [startPage,
+   * endPage) of the given file, without writing them anywhere.
+   *
+   * @return the number of pages processed
+   */
+  public int processPages(PageFile src, int startPage, int endPage,
+                          PageTransform transform)
+    throws IOException
+  {
+    return copyPages(src, null, startPage, endPage, transform);
+  }
+
+  /**
+   * A batch of consecutive pages.
+   */
+  private static final class Batch
+  {
+    private final ByteBuffer[] _pages;
+    private int _startPage;
+    private int _numPages;
+    /** set once the pipeline is done with the batch, any remaining pages
+        are not transformed */
+    private volatile boolean _aborted;
+
+    private Batch(PageFile src, int batchSize) {
+      _pages = new ByteBuffer[batchSize];
+      for(int i = 0; i < batchSize; ++i) {
+        _pages[i] = src.createPageBuffer();
+      }
+    }
+
+    private void read(PageFile src, int startPage, int numPages)
+      throws IOException
+    {
+      _startPage = startPage;
+      _numPages = numPages;
+      for(int i = 0; i < numPages; ++i) {
+        src.readPage(_pages[i], startPage + i);
+      }
+    }
+
+    private void write(PageFile dest) throws IOException
+    {
+      if(dest == null) {
+        // transform only
+        return;
+      }
+      for(int i = 0; i < _numPages; ++i) {
+        dest.writePage(_pages[i], _startPage + i);
+      }
+    }
+  }
+
+  private static final class TransformTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 0L;
+
+    private final Batch _batch;
+    private final int _start;
+    private final int _end;
+    private final PageTransform _transform;
+
+    private TransformTask(Batch batch, int start, int end,
+                          PageTransform transform) {
+      _batch = batch;
+      _start = start;
+      _end = end;
+      _transform = transform;
+    }
+
+    @Override
+    protected void compute() {
+      int numPages = _end - _start;
+      if(numPages > MAX_PAGES_PER_WORKER) {
+        int mid = _start + (numPages / 2);
+        invokeAll(new TransformTask(_batch, _start, mid, _transform),
+                  new TransformTask(_batch, mid, _end, _transform));
+        return;
+      }
+
+      try {
+        for(int i = _start; (i < _end) && !_batch._aborted; ++i) {
+          _transform.transform(_batch._pages[i], _batch._startPage + i);
+        }
+      } catch(IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,382 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.healthmarketscience.jackcess.impl.ByteUtil;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import com.healthmarketscience.jackcess.impl.PageTypes;
+
+/**
+ * Checks the basic structure of decoded database pages, without opening the
+ * database.  This is not a full consistency check (rows and indexes are not
+ * parsed), but is enough to detect pages which were damaged or which did not
+ * decrypt correctly.
+ * <p>
+ * Checking is done in two passes.  First, {@link #checkPage} is called
+ * (possibly concurrently) for every page in the file, which checks the page
+ * type and the page header fields.  Then {@link #checkUsageMaps} checks the
+ * table definitions referenced by the data pages and the owned pages usage
+ * maps of those tables.
+ *
+ * @author James Ahlborn
+ */
+public class PageStructureChecker
+{
+  /** all the pages start with this byte after the page type */
+  private static final byte PAGE_SIGNATURE = (byte)0x01;
+  /** mask for the offset of a row in the row offset table of a data page */
+  private static final int ROW_OFFSET_MASK = 0x1FFF;
+  /** usage map stored in the row */
+  private static final byte MAP_TYPE_INLINE = 0x0;
+  /** usage map stored in separate usage map pages */
+  private static final byte MAP_TYPE_REFERENCE = 0x1;
+  /** the global usage map (of free pages) is in the first row of page 1 */
+  private static final int GLOBAL_USAGE_MAP_PAGE = 1;
+  private static final int GLOBAL_USAGE_MAP_ROW = 0;
+  /** "LVAL" in place of the owning table of a long value data page */
+  private static final int LONG_VALUE_PAGE_MARKER = 0x4C41564C;
+  /** marks pages which are not (valid) data pages owned by a table */
+  private static final int NO_OWNER = -1;
+
+  /**
+   * Provides decoded pages for the second checking pass.
+   */
+  public interface PageSource
+  {
+    /**
+     * @return the given page, decoded
+     */
+    public ByteBuffer readPage(int pageNumber) throws IOException;
+  }
+
+  private final JetFormat _format;
+  private final int _pageSize;
+  private final int _pageCount;
+  private final byte[] _pageTypes;
+  private final int[] _dataPageOwners;
+  private final SortedMap<Integer,String> _problems =
+    new ConcurrentSkipListMap<Integer,String>();
+
+  public PageStructureChecker(JetFormat format, int pageCount) {
+    _format = format;
+    _pageSize = format.PAGE_SIZE;
+    _pageCount = pageCount;
+    _pageTypes = new byte[pageCount];
+    _dataPageOwners = new int[pageCount];
+  }
+
+  /**
+   * @return the problems found so far, by page number (only the first
+   *         problem for each page is kept)
+   */
+  public SortedMap<Integer,String> getProblems() {
+    return Collections.unmodifiableSortedMap(
+        new TreeMap<Integer,String>(_problems));
+  }
+
+  /**
+   * Checks the structure of the given decoded page.  May be called
+   * concurrently for different pages.
+   */
+  public void checkPage(ByteBuffer page, int pageNumber)
+  {
+    _dataPageOwners[pageNumber] = NO_OWNER;
+    if(pageNumber == 0) {
+      // header page has its own format
+      return;
+    }
+
+    byte pageType = page.get(0);
+    _pageTypes[pageNumber] = pageType;
+    switch(pageType) {
+    case PageTypes.INVALID:
+      // unused page
+      return;
+    case PageTypes.DATA:
+      if(checkSignature(page, pageNumber)) {
+        checkDataPage(page, pageNumber);
+      }
+      return;
+    case PageTypes.TABLE_DEF:
+    case PageTypes.INDEX_NODE:
+    case PageTypes.INDEX_LEAF:
+    case PageTypes.USAGE_MAP:
+      checkSignature(page, pageNumber);
+      return;
+    default:
+      addProblem(pageNumber, "Invalid page type " + pageType);
+    }
+  }
+
+  /**
+   * Checks the global usage map (problems with free pages are discarded),
+   * that the owning table definition of every data page is a table
+   * definition page and that the owned pages usage maps of those tables are
+   * valid and consistent with the global usage map.  Must be called after
+   * all pages have been checked by {@link #checkPage}.
+   */
+  public void checkUsageMaps(PageSource pageSource) throws IOException
+  {
+    // the contents of free pages are irrelevant
+    BitSet freePages = readUsageMap(pageSource, GLOBAL_USAGE_MAP_PAGE,
+                                    GLOBAL_USAGE_MAP_ROW, GLOBAL_USAGE_MAP_PAGE,
+                                    "global");
+    if(freePages != null) {
+      for(int pageNumber = freePages.nextSetBit(0); pageNumber >= 0;
+          pageNumber = freePages.nextSetBit(pageNumber + 1)) {
+        _problems.remove(pageNumber);
+        _dataPageOwners[pageNumber] = NO_OWNER;
+      }
+    }
+
+    Map<Integer,BitSet> ownedPages = new HashMap<Integer,BitSet>();
+    for(int pageNumber = 1; pageNumber < _pageCount; ++pageNumber) {
+      int tdefPageNumber = _dataPageOwners[pageNumber];
+      if((tdefPageNumber == NO_OWNER) ||
+         _problems.containsKey(tdefPageNumber)) {
+        // don't cascade problems from a damaged table definition
+        continue;
+      }
+
+      if((_pageTypes[tdefPageNumber] != PageTypes.TABLE_DEF) ||
+         ((freePages != null) && freePages.get(tdefPageNumber))) {
+        addProblem(pageNumber, "Owning table definition page " +
+                   tdefPageNumber + " is not a table definition");
+        continue;
+      }
+
+      if(!ownedPages.containsKey(tdefPageNumber)) {
+        // the row pointer is the row number (low byte) and page number (high
+        // 3 bytes) of the usage map row.  note, the free space pages usage map
+        // is not reliably maintained, so it is not checked
+        int rowPointer = pageSource.readPage(tdefPageNumber).getInt(
+            _format.OFFSET_OWNED_PAGES);
+        ownedPages.put(tdefPageNumber,
+                       readUsageMap(pageSource, (rowPointer >>> 8),
+                                    (rowPointer & 0xFF), tdefPageNumber,
+                                    "owned pages"));
+      }
+
+      BitSet pages = ownedPages.get(tdefPageNumber);
+      if((pages != null) && (freePages != null) &&
+         pages.intersects(freePages)) {
+        addProblem(tdefPageNumber,
+                   "The owned pages usage map includes free pages");
+      }
+    }
+  }
+
+  private boolean checkSignature(ByteBuffer page, int pageNumber)
+  {
+    if(page.get(1) != PAGE_SIGNATURE) {
+      addProblem(pageNumber, "Invalid signature for page type " + page.get(0));
+      return false;
+    }
+    return true;
+  }
+
+  private void checkDataPage(ByteBuffer page, int pageNumber)
+  {
+    // system pages (e.g. usage map rows) are not owned by a table and long
+    // value pages are marked instead of having an owner
+    int tdefPageNumber = page.getInt(_format.OFFSET_TABLE_DEF_LOCATION);
+    if((tdefPageNumber == 0) || (tdefPageNumber == pageNumber) ||
+       (tdefPageNumber == LONG_VALUE_PAGE_MARKER)) {
+      tdefPageNumber = NO_OWNER;
+    } else if((tdefPageNumber < 0) || (tdefPageNumber >= _pageCount)) {
+      addProblem(pageNumber, "Invalid owning table definition page " +
+                 tdefPageNumber);
+      return;
+    }
+
+    int numRows = ByteUtil.getUnsignedShort(
+        page, _format.OFFSET_NUM_ROWS_ON_DATA_PAGE);
+    if(numRows > _format.MAX_NUM_ROWS_ON_DATA_PAGE) {
+      addProblem(pageNumber, "Invalid number of rows " + numRows);
+      return;
+    }
+
+    int rowDataStart = _format.OFFSET_ROW_START +
+      (numRows * _format.SIZE_ROW_LOCATION);
+    int freeSpace = ByteUtil.getUnsignedShort(page, _format.OFFSET_FREE_SPACE);
+    if(freeSpace > (_pageSize - rowDataStart)) {
+      addProblem(pageNumber, "Invalid free space " + freeSpace + " for " +
+                 numRows + " rows");
+      return;
+    }
+
+    // rows are stored from the end of the page towards the row offset table
+    int rowEnd = _pageSize;
+    for(int i = 0; i < numRows; ++i) {
+      int rowStart = getRowOffset(page, i);
+      if((rowStart < rowDataStart) || (rowStart > rowEnd)) {
+        addProblem(pageNumber, "Invalid offset " + rowStart + " for row " + i);
+        return;
+      }
+      rowEnd = rowStart;
+    }
+
+    _dataPageOwners[pageNumber] = tdefPageNumber;
+  }
+
+  /**
+   * Reads the usage map in the given row.  If the usage map is invalid, a
+   * problem is added for the given owner page.
+   *
+   * @return the pages included in the usage map, {@code null} if the usage
+   *         map is invalid
+   */
+  private BitSet readUsageMap(PageSource pageSource, int pageNumber,
+                              int rowNumber, int ownerPageNumber,
+                              String mapName)
+    throws IOException
+  {
+    if((pageNumber <= 0) || (pageNumber >= _pageCount) ||
+       (_pageTypes[pageNumber] != PageTypes.DATA) ||
+       _problems.containsKey(pageNumber)) {
+      addProblem(ownerPageNumber, "Invalid " + mapName + " usage map page " +
+                 pageNumber);
+      return null;
+    }
+
+    ByteBuffer page = pageSource.readPage(pageNumber);
+    int numRows = ByteUtil.getUnsignedShort(
+        page, _format.OFFSET_NUM_ROWS_ON_DATA_PAGE);
+    if(rowNumber >= numRows) {
+      addProblem(ownerPageNumber, "Invalid " + mapName + " usage map row " +
+                 rowNumber + " on page " + pageNumber);
+      return null;
+    }
+
+    int rowStart = getRowOffset(page, rowNumber);
+    int rowEnd = ((rowNumber == 0) ? _pageSize :
+                  getRowOffset(page, rowNumber - 1));
+    if((rowEnd - rowStart) < 1) {
+      addProblem(ownerPageNumber, "Empty " + mapName + " usage map");
+      return null;
+    }
+
+    // the global usage map includes (free) pages past the end of the file
+    boolean isGlobal = (pageNumber == GLOBAL_USAGE_MAP_PAGE) &&
+      (rowNumber == GLOBAL_USAGE_MAP_ROW);
+    BitSet pages = new BitSet();
+    byte mapType = page.get(rowStart);
+    if(mapType == MAP_TYPE_INLINE) {
+
+      int dataStart = rowStart + _format.OFFSET_USAGE_MAP_START;
+      if(dataStart > rowEnd) {
+        addProblem(ownerPageNumber, "Truncated " + mapName + " usage map");
+        return null;
+      }
+      int startPage = page.getInt(rowStart + 1);
+      if(!addMapPages(pages, page, dataStart, rowEnd, startPage) &&
+         !isGlobal) {
+        addProblem(ownerPageNumber, "The " + mapName +
+                   " usage map includes pages past the end of the file");
+        return null;
+      }
+
+    } else if(mapType == MAP_TYPE_REFERENCE) {
+
+      // grab the usage map page numbers before the page buffer is re-used
+      int[] mapPageNumbers = new int[(rowEnd - rowStart - 1) / 4];
+      for(int i = 0; i < mapPageNumbers.length; ++i) {
+        mapPageNumbers[i] = page.getInt(
+            rowStart + _format.OFFSET_REFERENCE_MAP_PAGE_NUMBERS + (i * 4));
+      }
+
+      int pagesPerMapPage =
+        (_pageSize - _format.OFFSET_USAGE_MAP_PAGE_DATA) * 8;
+      for(int i = 0; i < mapPageNumbers.length; ++i) {
+        int mapPageNumber = mapPageNumbers[i];
+        if(mapPageNumber == 0) {
+          continue;
+        }
+        if((mapPageNumber < 0) || (mapPageNumber >= _pageCount) ||
+           (_pageTypes[mapPageNumber] != PageTypes.USAGE_MAP)) {
+          addProblem(ownerPageNumber, "Invalid " + mapName +
+                     " usage map page " + mapPageNumber);
+          return null;
+        }
+        ByteBuffer mapPage = pageSource.readPage(mapPageNumber);
+        if(!addMapPages(pages, mapPage, _format.OFFSET_USAGE_MAP_PAGE_DATA,
+                        _pageSize, i * pagesPerMapPage) && !isGlobal) {
+          addProblem(ownerPageNumber, "The " + mapName +
+                     " usage map includes pages past the end of the file");
+          return null;
+        }
+      }
+
+    } else {
+      addProblem(ownerPageNumber, "Invalid " + mapName + " usage map type " +
+                 mapType);
+      return null;
+    }
+
+    return pages;
+  }
+
+  /**
+   * Adds the pages in the given usage map bitmap to the given set.
+   *
+   * @return {@code false} if the bitmap includes pages past the end of the
+   *         file, {@code true} otherwise
+   */
+  private boolean addMapPages(BitSet pages, ByteBuffer buffer, int start,
+                              int end, int startPage)
+  {
+    if(startPage < 0) {
+      return false;
+    }
+    boolean valid = true;
+    for(int pos = start; pos < end; ++pos) {
+      int bits = (buffer.get(pos) & 0xFF);
+      for(int bit = 0; bits != 0; ++bit, bits >>>= 1) {
+        if((bits & 0x1) == 0) {
+          continue;
+        }
+        long pageNumber = startPage + ((pos - start) * 8L) + bit;
+        if(pageNumber >= _pageCount) {
+          valid = false;
+          continue;
+        }
+        pages.set((int)pageNumber);
+      }
+    }
+    return valid;
+  }
+
+  private int getRowOffset(ByteBuffer page, int rowNumber) {
+    return (ByteUtil.getUnsignedShort(
+                page, _format.OFFSET_ROW_START +
+                (rowNumber * _format.SIZE_ROW_LOCATION)) & ROW_OFFSET_MASK);
+  }
+
+  private void addProblem(int pageNumber, String problem) {
+    _problems.putIfAbsent(pageNumber, problem);
+  }
+}
@@ -0,0 +1,293 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import com.healthmarketscience.jackcess.crypt.CryptMemoryBudget;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+
+/**
+ * CodecHandler which detects sequential page access and decodes the
+ * following pages in the background, so that subsequent calls to {@link
+ * #decodePage} can be served from the already decoded pages.
+ * <p>
+ * The prefetched pages are read directly from the underlying FileChannel.  A
+ * prefetched page is only used if its encoded bytes match the page passed to
+ * {@link #decodePage}, so pages which are (re)written after they were
+ * prefetched can never be served stale.  The number of prefetched pages held
+ * at any given time is bounded by the configured read-ahead size (and the
+ * prefetched pages are charged to the memory budget, if any).
+ *
+ * @author James Ahlborn
+ */
+public class ReadAheadCodecHandler extends DelegatingCodecHandler
+{
+  /** relative cost of a prefetched page (which is speculative) */
+  private static final int PREFETCHED_PAGE_COST = 1;
+
+  private final FileChannel _channel;
+  private final int _pageSize;
+  private final int _numPages;
+  private final Executor _executor;
+  private final CryptMemoryBudget _budget;
+  private final Map<Integer,FutureTask<PrefetchedPage>> _prefetched;
+  private int _lastPageNumber = -1;
+  /** number of pages in the file when last checked (the file may grow) */
+  private volatile long _numFilePages = -1L;
+
+  public ReadAheadCodecHandler(CodecHandler delegate, FileChannel channel,
+                               int pageSize, int numPages, Executor executor)
+  {
+    this(delegate, channel, pageSize, numPages, executor, null);
+  }
+
+  public ReadAheadCodecHandler(CodecHandler delegate, FileChannel channel,
+                               int pageSize, int numPages, Executor executor,
+                               CryptMemoryBudget budget)
+  {
+    super(delegate);
+    if(numPages < 1) {
+      throw new IllegalArgumentException(
+          "Invalid read-ahead page count " + numPages);
+    }
+    _channel = channel;
+    _pageSize = pageSize;
+    _numPages = numPages;
+    _executor = executor;
+    _budget = budget;
+    _prefetched = new LinkedHashMap<Integer,FutureTask<PrefetchedPage>>() {
+      private static final long serialVersionUID = 0L;
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<Integer,FutureTask<PrefetchedPage>> e) {
+        if(size() > _numPages) {
+          discard(e.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public void decodePage(ByteBuffer inPage, ByteBuffer outPage,
+                         int pageNumber)
+    throws IOException
+  {
+    FutureTask<PrefetchedPage> task = null;
+    boolean sequential = false;
+    synchronized(_prefetched) {
+      task = _prefetched.remove(pageNumber);
+      sequential = ((task != null) || (pageNumber == (_lastPageNumber + 1)));
+      _lastPageNumber = pageNumber;
+    }
+    if(sequential) {
+      prefetch(pageNumber + 1);
+    }
+
+    if(task != null) {
+      // if the task has not been started yet (e.g. the executor is busy),
+      // decode the page inline instead of waiting behind other work (noop if
+      // the task was already started)
+      task.run();
+    }
+    PrefetchedPage page = getPrefetched(task);
+    if(page != null) {
+      page.release();
+    }
+    if((page != null) && page.matches(inPage)) {
+      byte[] plainText = page._plainText;
+      ByteBuffer decodedPage = (canDecodeInline() ? inPage : outPage);
+      System.arraycopy(plainText, 0, decodedPage.array(), 0,
+                       plainText.length);
+      return;
+    }
+
+    super.decodePage(inPage, outPage, pageNumber);
+  }
+
+  @Override
+  public ByteBuffer encodePage(ByteBuffer buffer, int pageNumber,
+                               int pageOffset)
+    throws IOException
+  {
+    // any prefetched version of this page is about to be obsolete
+    synchronized(_prefetched) {
+      FutureTask<PrefetchedPage> task = _prefetched.remove(pageNumber);
+      if(task != null) {
+        discard(task);
+      }
+    }
+    return super.encodePage(buffer, pageNumber, pageOffset);
+  }
+
+  /**
+   * @return the number of pages currently prefetched (or being prefetched)
+   */
+  public int getPrefetchedPageCount() {
+    synchronized(_prefetched) {
+      return _prefetched.size();
+    }
+  }
+
+  private void prefetch(int startPageNumber) throws IOException
+  {
+    long endPageNumber = (long)startPageNumber + _numPages;
+    long numFilePages = _numFilePages;
+    if(endPageNumber > numFilePages) {
+      // only re-check the file size when the prefetch reaches the known end
+      // of the file (note, without holding the prefetched lock)
+      numFilePages = _channel.size() / _pageSize;
+      _numFilePages = numFilePages;
+    }
+    endPageNumber = Math.min(endPageNumber, numFilePages);
+
+    List<PrefetchTask> tasks = new ArrayList<PrefetchTask>();
+    synchronized(_prefetched) {
+      for(int i = startPageNumber; i < endPageNumber; ++i) {
+        if(_prefetched.containsKey(i)) {
+          continue;
+        }
+        PrefetchTask task = new PrefetchTask(i);
+        _prefetched.put(i, task);
+        tasks.add(task);
+      }
+    }
+    for(PrefetchTask task : tasks) {
+      _executor.execute(task);
+    }
+  }
+
+  private PrefetchedPage readAndDecode(int pageNumber) throws IOException
+  {
+    byte[] cipherText = new byte[_pageSize];
+    ByteBuffer buffer = ByteBuffer.wrap(cipherText);
+    long pos = (long)pageNumber * _pageSize;
+    while(buffer.hasRemaining()) {
+      int numRead = _channel.read(buffer, pos + buffer.position());
+      if(numRead < 0) {
+        // page is no longer available
+        return null;
+      }
+    }
+
+    ByteBuffer page = BaseCryptCodecHandler.wrap(cipherText.clone());
+    PageDecodeTask.decodePage(getDelegate(), page, pageNumber, null);
+    return new PrefetchedPage(cipherText, page.array());
+  }
+
+  private void charge(PrefetchTask task, PrefetchedPage page) {
+    // note, must be charged outside of the prefetched lock
+    page._charge = _budget.charge(
+        2L * _pageSize, PREFETCHED_PAGE_COST,
+        () -> {
+          synchronized(_prefetched) {
+            _prefetched.remove(task._pageNumber, task);
+          }
+        });
+    // the page may have been consumed or discarded before the charge was
+    // assigned (in which case the charge was not released)
+    boolean retained = false;
+    synchronized(_prefetched) {
+      retained = (_prefetched.get(task._pageNumber) == task);
+    }
+    if(!retained) {
+      page.release();
+    }
+  }
+
+  private static void discard(FutureTask<PrefetchedPage> task) {
+    task.cancel(false);
+    if(task.isDone()) {
+      PrefetchedPage page = getPrefetched(task);
+      if(page != null) {
+        page.release();
+      }
+    }
+  }
+
+  private static PrefetchedPage getPrefetched(FutureTask<PrefetchedPage> task)
+  {
+    if((task == null) || task.isCancelled()) {
+      return null;
+    }
+    try {
+      return task.get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch(Exception e) {
+      // ignore, page will be decoded directly (which will surface any real
+      // problem)
+    }
+    return null;
+  }
+
+  /**
+   * Task which prefetches a page, charging the page to the memory budget (if
+   * any) once it is available.
+   */
+  private final class PrefetchTask extends FutureTask<PrefetchedPage>
+  {
+    private final int _pageNumber;
+
+    private PrefetchTask(int pageNumber) {
+      super(() -> readAndDecode(pageNumber));
+      _pageNumber = pageNumber;
+    }
+
+    @Override
+    protected void set(PrefetchedPage page) {
+      super.set(page);
+      if((page != null) && (_budget != null)) {
+        charge(this, page);
+      }
+    }
+  }
+
+  private static final class PrefetchedPage
+  {
+    private final byte[] _cipherText;
+    private final byte[] _plainText;
+    private volatile CryptMemoryBudget.Charge _charge;
+
+    private PrefetchedPage(byte[] cipherText, byte[] plainText) {
+      _cipherText = cipherText;
+      _plainText = plainText;
+    }
+
+    private void release() {
+      CryptMemoryBudget.Charge charge = _charge;
+      if(charge != null) {
+        charge.release();
+      }
+    }
+
+    private boolean matches(ByteBuffer inPage) {
+      return Arrays.equals(inPage.array(), _cipherText);
+    }
+  }
+}
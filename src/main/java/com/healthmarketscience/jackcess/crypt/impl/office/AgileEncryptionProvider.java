@@ -18,8 +18,12 @@ package com.healthmarketscience.jackcess.crypt.impl.office;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import com.healthmarketscience.jackcess.crypt.AgileEncryptionSettings;
 import com.healthmarketscience.jackcess.crypt.InvalidCryptoConfigurationException;
 import com.healthmarketscience.jackcess.crypt.model.CTEncryption;
 import com.healthmarketscience.jackcess.crypt.model.CTKeyData;
@@ -38,24 +42,50 @@ import org.bouncycastle.crypto.params.ParametersWithIV;
  */
 public class AgileEncryptionProvider extends BlockCipherProvider
 {
-  private static final int RESERVED_VAL = 0x40;
-  private static final byte[] ENC_VERIFIER_INPUT_BLOCK = {
+  static final int RESERVED_VAL = 0x40;
+  static final byte[] ENC_VERIFIER_INPUT_BLOCK = {
     (byte)0xfe, (byte)0xa7, (byte)0xd2, (byte)0x76,
     (byte)0x3b, (byte)0x4b, (byte)0x9e, (byte)0x79};
-  private static final byte[] ENC_VERIFIER_VALUE_BLOCK = {
+  static final byte[] ENC_VERIFIER_VALUE_BLOCK = {
     (byte)0xd7, (byte)0xaa, (byte)0x0f, (byte)0x6d,
     (byte)0x30, (byte)0x61, (byte)0x34, (byte)0x4e};
-  private static final byte[] ENC_VALUE_BLOCK = {
+  static final byte[] ENC_VALUE_BLOCK = {
     (byte)0x14, (byte)0x6e, (byte)0x0b, (byte)0xe7,
     (byte)0xab, (byte)0xac, (byte)0xd0, (byte)0xd6};
 
-  private final CTEncryption _encryptDesc;
-  private final CTPasswordKeyEncryptor _pwdKeyEnc;
+  /** max number of distinct shared descriptor templates */
+  private static final int MAX_TEMPLATES = 64;
+  private static final ConcurrentMap<String,CTEncryption> TEMPLATES =
+    new ConcurrentHashMap<String,CTEncryption>();
+
+  // note, once the password is verified, these are replaced with a (shared)
+  // template which has just the algorithm parameters
+  private CTEncryption _encryptDesc;
+  private CTPasswordKeyEncryptor _pwdKeyEnc;
+  private final byte[] _keySalt;
   private final byte[] _keyValue;
+  private final BlockMode _blockMode;
+  // the iterated password hash is the same for all of the password key
+  // derivations, so it is only computed once while the handler is created
+  private byte[] _pwdBytes;
+  private byte[] _pwdIterHash;
 
   public AgileEncryptionProvider(PageChannel channel, byte[] encodingKey,
                                  ByteBuffer encProvBuf, byte[] pwdBytes)
     throws IOException
+  {
+    this(channel, encodingKey, encProvBuf, pwdBytes, null);
+  }
+
+  /**
+   * @param pwdIterHash the iterated password hash derived when the
+   *                    encryption info was created (replaces the hash of the
+   *                    given password), {@code null} if unknown
+   */
+  AgileEncryptionProvider(PageChannel channel, byte[] encodingKey,
+                          ByteBuffer encProvBuf, byte[] pwdBytes,
+                          byte[] pwdIterHash)
+    throws IOException
   {
     super(channel, encodingKey);
 
@@ -85,7 +115,17 @@ public class AgileEncryptionProvider extends BlockCipherProvider
     }
     _pwdKeyEnc = pwdKeyEnc;
 
+    if(pwdIterHash != null) {
+      // (only the given hash is verified, the password is not hashed)
+      _pwdBytes = pwdBytes;
+      _pwdIterHash = pwdIterHash;
+    }
     _keyValue = decryptKeyValue(pwdBytes);
+
+    CTKeyData keyData = _encryptDesc.getKeyData();
+    _keySalt = keyData.getSaltValue();
+    _blockMode = XmlEncryptionDescriptor.getBlockMode(
+        keyData.getCipherAlgorithm(), keyData.getCipherChaining());
   }
 
   @Override
@@ -112,6 +152,11 @@ public class AgileEncryptionProvider extends BlockCipherProvider
         keyData.getCipherAlgorithm(), keyData.getCipherChaining());
   }
 
+  @Override
+  protected BlockMode getBlockMode() {
+    return _blockMode;
+  }
+
   @Override
   protected boolean verifyPassword(byte[] pwdBytes) {
 
@@ -130,23 +175,28 @@ public class AgileEncryptionProvider extends BlockCipherProvider
     return Arrays.equals(verifierHash, testHash);
   }
 
+  @Override
+  public EncryptionInfoWriter.NewEncryptionInfo createEncryptionInfo(
+      String password, AgileEncryptionSettings settings, SecureRandom random)
+  {
+    return EncryptionInfoWriter.writeAgile(getPasswordBytes(password),
+                                           _encryptDesc, settings, random);
+  }
+
   @Override
   protected ParametersWithIV computeCipherParams(int pageNumber) {
     // when actually decrypting pages, we incorporate the "encoding key"
     byte[] blockBytes = getEncodingKey(pageNumber);
 
     CTKeyData keyData = _encryptDesc.getKeyData();
-    byte[] iv = cryptDeriveIV(blockBytes, keyData.getSaltValue(),
+    byte[] iv = cryptDeriveIV(blockBytes, _keySalt,
                               (int)keyData.getBlockSize());
     return new ParametersWithIV(new KeyParameter(_keyValue), iv);
   }
 
   private byte[] decryptVerifierHashInput(byte[] pwdBytes) {
     // OC: 2.3.4.13 (part 1)
-    byte[] key = cryptDeriveKey(pwdBytes, ENC_VERIFIER_INPUT_BLOCK,
-                                _pwdKeyEnc.getSaltValue(),
-                                (int)_pwdKeyEnc.getSpinCount(),
-                                bits2bytes((int)_pwdKeyEnc.getKeyBits()));
+    byte[] key = cryptDeriveKey(pwdBytes, ENC_VERIFIER_INPUT_BLOCK);
 
     return blockDecryptBytes(key, _pwdKeyEnc.getSaltValue(),
                              _pwdKeyEnc.getEncryptedVerifierHashInput());
@@ -154,10 +204,7 @@ public class AgileEncryptionProvider extends BlockCipherProvider
 
   private byte[] decryptVerifierHashValue(byte[] pwdBytes) {
     // OC: 2.3.4.13 (part 2)
-    byte[] key = cryptDeriveKey(pwdBytes, ENC_VERIFIER_VALUE_BLOCK,
-                                _pwdKeyEnc.getSaltValue(),
-                                (int)_pwdKeyEnc.getSpinCount(),
-                                bits2bytes((int)_pwdKeyEnc.getKeyBits()));
+    byte[] key = cryptDeriveKey(pwdBytes, ENC_VERIFIER_VALUE_BLOCK);
 
     return blockDecryptBytes(key, _pwdKeyEnc.getSaltValue(),
                              _pwdKeyEnc.getEncryptedVerifierHashValue());
@@ -165,30 +212,87 @@ public class AgileEncryptionProvider extends BlockCipherProvider
 
   private byte[] decryptKeyValue(byte[] pwdBytes) {
     // OC: 2.3.4.13 (part 3)
-    byte[] key = cryptDeriveKey(pwdBytes, ENC_VALUE_BLOCK,
-                                _pwdKeyEnc.getSaltValue(),
-                                (int)_pwdKeyEnc.getSpinCount(),
-                                bits2bytes((int)_pwdKeyEnc.getKeyBits()));
+    byte[] key = cryptDeriveKey(pwdBytes, ENC_VALUE_BLOCK);
 
     return blockDecryptBytes(key, _pwdKeyEnc.getSaltValue(),
                              _pwdKeyEnc.getEncryptedKeyValue());
   }
 
-  private byte[] cryptDeriveKey(byte[] pwdBytes, byte[] blockBytes,
-                                byte[] salt, int iterations, int keyByteLen)
+  private byte[] cryptDeriveKey(byte[] pwdBytes, byte[] blockBytes)
   {
-    Digest digest = getDigest();
+    if(pwdBytes != _pwdBytes) {
+      _pwdIterHash = iteratePwdHash(getDigest(), pwdBytes,
+                                    _pwdKeyEnc.getSaltValue(),
+                                    (int)_pwdKeyEnc.getSpinCount());
+      _pwdBytes = pwdBytes;
+    }
+    return cryptDeriveKey(getDigest(), _pwdIterHash, blockBytes,
+                          bits2bytes((int)_pwdKeyEnc.getKeyBits()));
+  }
 
-    // OC: 2.3.4.11
+  static byte[] iteratePwdHash(Digest digest, byte[] pwdBytes, byte[] salt,
+                               int iterations)
+  {
+    // OC: 2.3.4.11 (part 1)
     byte[] baseHash = hash(digest, salt, pwdBytes);
 
-    byte[] iterHash = iterateHash(baseHash, iterations);
+    return iterateHash(digest, baseHash, iterations);
+  }
 
+  static byte[] cryptDeriveKey(Digest digest, byte[] iterHash,
+                               byte[] blockBytes, int keyByteLen)
+  {
+    // OC: 2.3.4.11 (part 2)
     byte[] finalHash = hash(digest, iterHash, blockBytes);
 
     return fixToLength(finalHash, keyByteLen, 0x36);
   }
 
+  @Override
+  protected void clearVerifyState() {
+    // the full descriptor (including the encrypted verifier and key blobs)
+    // is not needed once the password is verified
+    _encryptDesc = getTemplate(_encryptDesc.getKeyData(), _pwdKeyEnc);
+    _pwdKeyEnc = (CTPasswordKeyEncryptor)_encryptDesc.getKeyEncryptors()
+      .getKeyEncryptor().get(0).getAny();
+  }
+
+  /**
+   * Returns a descriptor with just the algorithm parameters of the given key
+   * data and password key encryptor, shared by all handlers which use the
+   * same parameters.  The templates are never modified.
+   */
+  private static CTEncryption getTemplate(CTKeyData keyData,
+                                          CTPasswordKeyEncryptor pwdKeyEnc)
+  {
+    String key = keyData.getSaltSize() + "," + keyData.getBlockSize() + "," +
+      keyData.getKeyBits() + "," + keyData.getCipherAlgorithm() + "," +
+      keyData.getCipherChaining() + "," + keyData.getHashAlgorithm() + ";" +
+      pwdKeyEnc.getSpinCount() + "," + pwdKeyEnc.getSaltSize() + "," +
+      pwdKeyEnc.getBlockSize() + "," + pwdKeyEnc.getKeyBits() + "," +
+      pwdKeyEnc.getCipherAlgorithm() + "," + pwdKeyEnc.getCipherChaining() +
+      "," + pwdKeyEnc.getHashAlgorithm();
+    CTEncryption template = TEMPLATES.get(key);
+    if(template == null) {
+      template = EncryptionInfoWriter.createAgileTemplate(keyData, pwdKeyEnc);
+      if(TEMPLATES.size() < MAX_TEMPLATES) {
+        CTEncryption existing = TEMPLATES.putIfAbsent(key, template);
+        if(existing != null) {
+          template = existing;
+        }
+      }
+    }
+    return template;
+  }
+
+  @Override
+  protected void reset() {
+    super.reset();
+    // don't hold on to the password
+    _pwdBytes = null;
+    _pwdIterHash = null;
+  }
+
   private byte[] cryptDeriveIV(byte[] blockBytes, byte[] salt, int keyByteLen)
   {
     // OC: 2.3.4.12
@@ -18,7 +18,11 @@ package com.healthmarketscience.jackcess.crypt.impl.office;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import com.healthmarketscience.jackcess.crypt.CryptMemoryBudget;
 import com.healthmarketscience.jackcess.crypt.impl.OfficeCryptCodecHandler;
 import com.healthmarketscience.jackcess.impl.PageChannel;
 import org.bouncycastle.crypto.BlockCipher;
@@ -30,7 +34,43 @@ import org.bouncycastle.crypto.BufferedBlockCipher;
  */
 public abstract class BlockCipherProvider extends OfficeCryptCodecHandler
 {
-  private BufferedBlockCipher _cipher;
+  /** how the blocks of a page depend on each other */
+  public enum BlockMode {
+    /** each block is encrypted independently (ECB) */
+    INDEPENDENT,
+    /** each block depends on the previous ciphertext block (CBC, CFB) */
+    CHAINED,
+    /** blocks cannot be decrypted individually */
+    UNSUPPORTED;
+  }
+
+  /** max number of recently encoded pages retained for incremental
+      re-encoding */
+  private static final int MAX_ENCODED_PAGES = 16;
+  /** max number of recently encoded pages retained when the pages are
+      charged to a memory budget (which bounds the total) */
+  private static final int MAX_BUDGETED_ENCODED_PAGES = 256;
+  /** approximate memory overhead of each retained page */
+  private static final int ENCODED_PAGE_OVERHEAD = 64;
+  /** relative cost of a retained page (saves re-encrypting part of a
+      page) */
+  private static final int ENCODED_PAGE_COST = 1;
+
+  private ThreadLocal<BufferedBlockCipher> _cipher = newCipherHolder();
+  private final Map<Integer,EncodedPage> _encodedPages =
+    new LinkedHashMap<Integer,EncodedPage>(16, 0.75f, true) {
+      private static final long serialVersionUID = 0L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer,EncodedPage> e) {
+        int maxPages = ((getMemoryBudget() != null) ?
+                        MAX_BUDGETED_ENCODED_PAGES : MAX_ENCODED_PAGES);
+        if(size() > maxPages) {
+          e.getValue().release();
+          return true;
+        }
+        return false;
+      }
+    };
 
   public BlockCipherProvider(PageChannel channel, byte[] encodingKey)
   {
@@ -38,18 +78,19 @@ public abstract class BlockCipherProvider extends OfficeCryptCodecHandler
   }
 
   @Override
-  @SuppressWarnings("deprecation")
   protected BufferedBlockCipher getBlockCipher() {
-    if(_cipher == null) {
-      _cipher = new BufferedBlockCipher(initCipher());
-    }
-    return _cipher;
+    return _cipher.get();
   }
 
   @Override
   public final boolean canEncodePartialPage() {
     // for a variety of reasons, it's difficult (or impossible if chaining
-    // modes are in use) for block ciphers to encode partial pages.
+    // modes are in use) for block ciphers to encode partial pages.  a
+    // partial page write only writes the bytes after the page offset, but
+    // changing any byte changes the whole cipher block (and, if chained, all
+    // the following blocks).  instead, when a recently encoded page is
+    // re-encoded, only the changed blocks are re-encrypted (see
+    // encodePageImpl).
     return false;
   }
 
@@ -70,6 +111,14 @@ public abstract class BlockCipherProvider extends OfficeCryptCodecHandler
     }
   }
 
+  /**
+   * @return how the blocks of a page depend on each other when encrypted
+   *         with the page cipher
+   */
+  protected BlockMode getBlockMode() {
+    return BlockMode.UNSUPPORTED;
+  }
+
   protected BlockCipher initPwdCipher() {
     throw new UnsupportedOperationException();
   }
@@ -85,17 +134,167 @@ public abstract class BlockCipherProvider extends OfficeCryptCodecHandler
     blockDecrypt(inPage, outPage, pageNumber);
   }
 
+  @Override
+  public void setLean(boolean lean) {
+    super.setLean(lean);
+    if(lean) {
+      clearEncodedPages();
+    }
+  }
+
+  @Override
+  public void setIncrementalEncode(boolean incrementalEncode) {
+    super.setIncrementalEncode(incrementalEncode);
+    if(!incrementalEncode) {
+      clearEncodedPages();
+    }
+  }
+
+  private void clearEncodedPages() {
+    synchronized(_encodedPages) {
+      for(EncodedPage encPage : _encodedPages.values()) {
+        encPage.release();
+      }
+      _encodedPages.clear();
+    }
+  }
+
+  @Override
+  protected void decodePageRangeImpl(ByteBuffer inPage, ByteBuffer outPage,
+                                     int pageNumber, int from, int to)
+  {
+    switch(getBlockMode()) {
+    case INDEPENDENT:
+      blockDecryptRange(inPage, outPage, pageNumber, from, to, false);
+      break;
+    case CHAINED:
+      blockDecryptRange(inPage, outPage, pageNumber, from, to, true);
+      break;
+    default:
+      blockDecrypt(inPage, outPage, pageNumber);
+    }
+  }
+
   @Override
   public ByteBuffer encodePageImpl(ByteBuffer buffer, int pageNumber,
                                    int pageOffset)
     throws IOException
   {
-    return blockEncrypt(buffer, pageNumber);
+    BlockMode blockMode = getBlockMode();
+    byte[] inArray = buffer.array();
+    int len = buffer.limit();
+    if((blockMode == BlockMode.UNSUPPORTED) || (len != inArray.length) ||
+       !isIncrementalEncode() || isLean()) {
+      return blockEncrypt(buffer, pageNumber);
+    }
+
+    EncodedPage prevPage = null;
+    synchronized(_encodedPages) {
+      prevPage = _encodedPages.get(pageNumber);
+      if(prevPage != null) {
+        prevPage.touch();
+      }
+    }
+
+    ByteBuffer encodeBuf = null;
+    if((prevPage != null) && (prevPage._decPage.length == len)) {
+      // only re-encrypt the blocks which changed since the page was last
+      // encoded
+      encodeBuf = getTempBuffer();
+      byte[] outArray = encodeBuf.array();
+      System.arraycopy(prevPage._encPage, 0, outArray, 0, len);
+      int blockSize = getBlockCipher().getBlockSize();
+      int start = 0;
+      while((start < len) && (inArray[start] == prevPage._decPage[start])) {
+        ++start;
+      }
+      if(start < len) {
+        start = (start / blockSize) * blockSize;
+        int end = len;
+        if(blockMode == BlockMode.INDEPENDENT) {
+          while(inArray[end - 1] == prevPage._decPage[end - 1]) {
+            --end;
+          }
+          end = Math.min(len, ((end + blockSize - 1) / blockSize) * blockSize);
+        }
+        blockEncryptRange(inArray, outArray, pageNumber, start, end,
+                          (blockMode == BlockMode.CHAINED));
+      }
+    } else {
+      encodeBuf = blockEncrypt(buffer, pageNumber);
+    }
+
+    EncodedPage encPage = new EncodedPage(
+        Arrays.copyOf(inArray, len), Arrays.copyOf(encodeBuf.array(), len));
+    synchronized(_encodedPages) {
+      EncodedPage oldPage = _encodedPages.put(pageNumber, encPage);
+      if(oldPage != null) {
+        oldPage.release();
+      }
+    }
+
+    CryptMemoryBudget budget = getMemoryBudget();
+    if(budget != null) {
+      // note, must be charged outside of the cache lock
+      encPage._charge = budget.charge(
+          (2L * len) + ENCODED_PAGE_OVERHEAD, ENCODED_PAGE_COST,
+          () -> {
+            synchronized(_encodedPages) {
+              _encodedPages.remove(pageNumber, encPage);
+            }
+          });
+      // the page may have been discarded before the charge was assigned (in
+      // which case the charge was not released)
+      boolean retained = false;
+      synchronized(_encodedPages) {
+        retained = (_encodedPages.get(pageNumber) == encPage);
+      }
+      if(!retained) {
+        encPage.release();
+      }
+    }
+    return encodeBuf;
   }
 
   @Override
   protected void reset() {
     super.reset();
-    _cipher = null;
+    _cipher.remove();
+    _cipher = newCipherHolder();
+  }
+
+  @SuppressWarnings("deprecation")
+  private ThreadLocal<BufferedBlockCipher> newCipherHolder() {
+    return ThreadLocal.withInitial(
+        () -> new BufferedBlockCipher(initCipher()));
+  }
+
+  /**
+   * A recently encoded page, both plaintext and ciphertext.
+   */
+  private static final class EncodedPage
+  {
+    private final byte[] _decPage;
+    private final byte[] _encPage;
+    private volatile CryptMemoryBudget.Charge _charge;
+
+    private EncodedPage(byte[] decPage, byte[] encPage) {
+      _decPage = decPage;
+      _encPage = encPage;
+    }
+
+    private void touch() {
+      CryptMemoryBudget.Charge charge = _charge;
+      if(charge != null) {
+        charge.touch();
+      }
+    }
+
+    private void release() {
+      CryptMemoryBudget.Charge charge = _charge;
+      if(charge != null) {
+        charge.release();
+      }
+    }
   }
 }
@@ -18,10 +18,12 @@ package com.healthmarketscience.jackcess.crypt.impl.office;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Set;
 
+import com.healthmarketscience.jackcess.crypt.AgileEncryptionSettings;
 import com.healthmarketscience.jackcess.impl.ByteUtil;
 import com.healthmarketscience.jackcess.impl.PageChannel;
 import org.bouncycastle.crypto.BlockCipher;
@@ -45,10 +47,9 @@ public class ECMAStandardEncryptionProvider extends BlockCipherProvider
     EnumSet.of(EncryptionHeader.HashAlgorithm.SHA1);
   private static final int HASH_ITERATIONS = 50000;
 
-  private final int _hashIterations;
-  private final EncryptionHeader _header;
-  private final EncryptionVerifier _verifier;
-  private final byte[] _baseHash;
+  private final EncryptionHeader.CryptoAlgorithm _cryptoAlgorithm;
+  private EncryptionVerifier _verifier;
+  private final byte[] _iterHash;
   private final int _encKeyByteSize;
 
   public ECMAStandardEncryptionProvider(PageChannel channel, byte[] encodingKey,
@@ -58,24 +59,54 @@ public class ECMAStandardEncryptionProvider extends BlockCipherProvider
     this(channel, encodingKey, encProvBuf, pwdBytes, HASH_ITERATIONS);
   }
 
+  /**
+   * @param pwdIterHash the iterated password hash derived when the
+   *                    encryption info was created (replaces the hash of the
+   *                    given password), {@code null} if unknown
+   */
+  ECMAStandardEncryptionProvider(PageChannel channel, byte[] encodingKey,
+                                 ByteBuffer encProvBuf, byte[] pwdBytes,
+                                 byte[] pwdIterHash)
+    throws IOException
+  {
+    this(channel, encodingKey, encProvBuf, pwdBytes, HASH_ITERATIONS,
+         pwdIterHash);
+  }
+
   protected ECMAStandardEncryptionProvider(PageChannel channel, byte[] encodingKey,
                                            ByteBuffer encProvBuf, byte[] pwdBytes,
                                            int hashIterations)
     throws IOException
   {
-    super(channel, encodingKey);
+    this(channel, encodingKey, encProvBuf, pwdBytes, hashIterations, null);
+  }
 
-    _hashIterations = hashIterations;
+  private ECMAStandardEncryptionProvider(PageChannel channel,
+                                         byte[] encodingKey,
+                                         ByteBuffer encProvBuf,
+                                         byte[] pwdBytes, int hashIterations,
+                                         byte[] pwdIterHash)
+    throws IOException
+  {
+    super(channel, encodingKey);
 
     // OC: 2.3.4.6
-    _header = EncryptionHeader.read(encProvBuf, VALID_CRYPTO_ALGOS,
-                                    VALID_HASH_ALGOS);
-
-    _verifier = new EncryptionVerifier(encProvBuf, _header.getCryptoAlgorithm());
-
-    // OC: 2.3.4.7 (part 1)
-    _baseHash = hash(getDigest(), _verifier.getSalt(), pwdBytes);
-    _encKeyByteSize =  bits2bytes(_header.getKeySize());
+    EncryptionHeader header = EncryptionHeader.read(
+        encProvBuf, VALID_CRYPTO_ALGOS, VALID_HASH_ALGOS);
+    _cryptoAlgorithm = header.getCryptoAlgorithm();
+
+    _verifier = new EncryptionVerifier(encProvBuf, _cryptoAlgorithm);
+
+    // OC: 2.3.4.7 (part 1).  the iterated hash does not depend on the page,
+    // so compute it once up front (unless already known, in which case only
+    // the given hash is verified, the password is not hashed)
+    if(pwdIterHash != null) {
+      _iterHash = pwdIterHash;
+    } else {
+      byte[] baseHash = hash(getDigest(), _verifier.getSalt(), pwdBytes);
+      _iterHash = iterateHash(baseHash, hashIterations);
+    }
+    _encKeyByteSize =  bits2bytes(header.getKeySize());
   }
 
   @Override
@@ -89,6 +120,12 @@ public class ECMAStandardEncryptionProvider extends BlockCipherProvider
     return new AESEngine();
   }
 
+  @Override
+  protected BlockMode getBlockMode() {
+    // plain AES
+    return BlockMode.INDEPENDENT;
+  }
+
   @Override
   protected KeyParameter computeCipherParams(int pageNumber) {
     // when actually decrypting pages, we incorporate the "encoding key"
@@ -113,18 +150,31 @@ public class ECMAStandardEncryptionProvider extends BlockCipherProvider
     return Arrays.equals(verifierHash, testHash);
   }
 
+  @Override
+  protected void clearVerifyState() {
+    _verifier = null;
+  }
+
+  @Override
+  public EncryptionInfoWriter.NewEncryptionInfo createEncryptionInfo(
+      String password, AgileEncryptionSettings settings, SecureRandom random)
+  {
+    // always writes standard info (the key derivation is fixed by the spec)
+    return EncryptionInfoWriter.writeStandard(getPasswordBytes(password),
+                                              _cryptoAlgorithm,
+                                              random);
+  }
+
   private KeyParameter computeEncryptionKey(byte[] blockBytes) {
-    byte[] encKey = cryptDeriveKey(_baseHash, blockBytes, _encKeyByteSize);
+    byte[] encKey = cryptDeriveKey(getDigest(), _iterHash, blockBytes,
+                                   _encKeyByteSize);
     return new KeyParameter(encKey);
   }
 
-  private byte[] cryptDeriveKey(byte[] baseHash, byte[] blockBytes, int keyByteLen)
+  static byte[] cryptDeriveKey(Digest digest, byte[] iterHash,
+                               byte[] blockBytes, int keyByteLen)
   {
-    Digest digest = getDigest();
-
     // OC: 2.3.4.7 (after part 1)
-    byte[] iterHash = iterateHash(baseHash, _hashIterations);
-
     byte[] finalHash = hash(digest, iterHash, blockBytes);
 
     byte[] x1 = hash(digest, genXBytes(finalHash, 0x36));
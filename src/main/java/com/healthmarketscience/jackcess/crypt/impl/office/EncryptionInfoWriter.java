@@ -0,0 +1,433 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl.office;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import com.healthmarketscience.jackcess.crypt.AgileEncryptionSettings;
+import com.healthmarketscience.jackcess.crypt.InvalidCryptoConfigurationException;
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.OfficeCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.model.CTEncryption;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyData;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyEncryptor;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyEncryptors;
+import com.healthmarketscience.jackcess.crypt.model.password.CTPasswordKeyEncryptor;
+import com.healthmarketscience.jackcess.crypt.model.password.STPasswordKeyEncryptorUri;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * Generates new encryption provider info (the structure stored in the
+ * header page at {@link OfficeCryptCodecHandler#CRYPT_STRUCTURE_OFFSET}) for
+ * a given password, using fresh salts and keys.
+ *
+ * @author James Ahlborn
+ */
+public class EncryptionInfoWriter
+{
+  private static final int AGILE_VERSION_MAJOR = 4;
+  private static final int AGILE_VERSION_MINOR = 4;
+  private static final int STANDARD_VERSION_MAJOR = 4;
+  private static final int STANDARD_VERSION_MINOR = 2;
+  private static final int STANDARD_FLAGS =
+    EncryptionHeader.FCRYPTO_API_FLAG | EncryptionHeader.FAES_FLAG;
+  private static final int STANDARD_SALT_SIZE = 16;
+  private static final int STANDARD_VERIFIER_SIZE = 16;
+  private static final int STANDARD_HASH_ITERATIONS = 50000;
+  // PROV_RSA_AES
+  private static final int AES_PROVIDER_TYPE = 0x18;
+  private static final String AES_CSP_NAME =
+    "Microsoft Enhanced RSA and AES Cryptographic Provider";
+
+  // defaults used by Access 2013+
+  private static final String DEFAULT_CIPHER_ALGORITHM = "AES";
+  private static final String DEFAULT_CIPHER_CHAINING = "ChainingModeCBC";
+  private static final int DEFAULT_KEY_BITS = 256;
+  private static final int DEFAULT_BLOCK_SIZE = 16;
+  private static final int DEFAULT_SALT_SIZE = 16;
+
+  private EncryptionInfoWriter() {}
+
+  /**
+   * Creates new Agile encryption info for the given password using the
+   * default cipher (AES-256, CBC) and the given key derivation settings.
+   */
+  public static NewEncryptionInfo writeAgile(byte[] pwdBytes,
+                                  AgileEncryptionSettings settings,
+                                  SecureRandom random)
+  {
+    CTKeyData keyData = new CTKeyData();
+    keyData.setSaltSize(DEFAULT_SALT_SIZE);
+    keyData.setBlockSize(DEFAULT_BLOCK_SIZE);
+    keyData.setKeyBits(DEFAULT_KEY_BITS);
+    keyData.setCipherAlgorithm(DEFAULT_CIPHER_ALGORITHM);
+    keyData.setCipherChaining(DEFAULT_CIPHER_CHAINING);
+    keyData.setHashAlgorithm(AgileEncryptionSettings.DEFAULT_HASH_ALGORITHM);
+
+    CTPasswordKeyEncryptor pwdKeyEnc = new CTPasswordKeyEncryptor();
+    pwdKeyEnc.setSpinCount(settings.getSpinCount());
+    pwdKeyEnc.setSaltSize(DEFAULT_SALT_SIZE);
+    pwdKeyEnc.setBlockSize(DEFAULT_BLOCK_SIZE);
+    pwdKeyEnc.setKeyBits(DEFAULT_KEY_BITS);
+    pwdKeyEnc.setCipherAlgorithm(DEFAULT_CIPHER_ALGORITHM);
+    pwdKeyEnc.setCipherChaining(DEFAULT_CIPHER_CHAINING);
+    pwdKeyEnc.setHashAlgorithm(settings.getHashAlgorithm());
+
+    return writeAgile(pwdBytes, newAgileDescriptor(keyData, pwdKeyEnc), null,
+                      random);
+  }
+
+  /**
+   * Creates a descriptor with just the algorithm parameters (no salts or
+   * keys) of the given key data and password key encryptor, suitable for use
+   * as the template for {@link
+   * #writeAgile(byte[],CTEncryption,AgileEncryptionSettings,SecureRandom)}.
+   */
+  static CTEncryption createAgileTemplate(CTKeyData tmplKeyData,
+                                          CTPasswordKeyEncryptor tmplPwdKeyEnc)
+  {
+    CTKeyData keyData = new CTKeyData();
+    keyData.setSaltSize(tmplKeyData.getSaltSize());
+    keyData.setBlockSize(tmplKeyData.getBlockSize());
+    keyData.setKeyBits(tmplKeyData.getKeyBits());
+    keyData.setCipherAlgorithm(tmplKeyData.getCipherAlgorithm());
+    keyData.setCipherChaining(tmplKeyData.getCipherChaining());
+    keyData.setHashAlgorithm(tmplKeyData.getHashAlgorithm());
+
+    CTPasswordKeyEncryptor pwdKeyEnc = new CTPasswordKeyEncryptor();
+    pwdKeyEnc.setSpinCount(tmplPwdKeyEnc.getSpinCount());
+    pwdKeyEnc.setSaltSize(tmplPwdKeyEnc.getSaltSize());
+    pwdKeyEnc.setBlockSize(tmplPwdKeyEnc.getBlockSize());
+    pwdKeyEnc.setKeyBits(tmplPwdKeyEnc.getKeyBits());
+    pwdKeyEnc.setCipherAlgorithm(tmplPwdKeyEnc.getCipherAlgorithm());
+    pwdKeyEnc.setCipherChaining(tmplPwdKeyEnc.getCipherChaining());
+    pwdKeyEnc.setHashAlgorithm(tmplPwdKeyEnc.getHashAlgorithm());
+
+    return newAgileDescriptor(keyData, pwdKeyEnc);
+  }
+
+  /**
+   * Creates new Agile encryption info for the given password using the
+   * algorithm parameters of the given descriptor (the salts and keys in the
+   * given descriptor are ignored).  If settings are given, they replace the
+   * key derivation parameters of the descriptor.
+   */
+  public static NewEncryptionInfo writeAgile(
+      byte[] pwdBytes, CTEncryption template,
+      AgileEncryptionSettings settings, SecureRandom random)
+  {
+    CTKeyData tmplKeyData = template.getKeyData();
+    CTPasswordKeyEncryptor tmplPwdKeyEnc = getPasswordKeyEncryptor(template);
+
+    // OC: 2.3.4.10
+    CTKeyData keyData = new CTKeyData();
+    keyData.setSaltSize(tmplKeyData.getSaltSize());
+    keyData.setBlockSize(tmplKeyData.getBlockSize());
+    keyData.setKeyBits(tmplKeyData.getKeyBits());
+    keyData.setCipherAlgorithm(tmplKeyData.getCipherAlgorithm());
+    keyData.setCipherChaining(tmplKeyData.getCipherChaining());
+    keyData.setHashAlgorithm(tmplKeyData.getHashAlgorithm());
+    keyData.setHashSize(XmlEncryptionDescriptor.initDigest(
+                            keyData.getHashAlgorithm()).getDigestSize());
+    keyData.setSaltValue(randomBytes(random, (int)keyData.getSaltSize()));
+
+    CTPasswordKeyEncryptor pwdKeyEnc = new CTPasswordKeyEncryptor();
+    pwdKeyEnc.setSpinCount((settings != null) ? settings.getSpinCount() :
+                           tmplPwdKeyEnc.getSpinCount());
+    pwdKeyEnc.setSaltSize(tmplPwdKeyEnc.getSaltSize());
+    pwdKeyEnc.setBlockSize(tmplPwdKeyEnc.getBlockSize());
+    pwdKeyEnc.setKeyBits(tmplPwdKeyEnc.getKeyBits());
+    pwdKeyEnc.setCipherAlgorithm(tmplPwdKeyEnc.getCipherAlgorithm());
+    pwdKeyEnc.setCipherChaining(tmplPwdKeyEnc.getCipherChaining());
+    pwdKeyEnc.setHashAlgorithm((settings != null) ?
+                               settings.getHashAlgorithm() :
+                               tmplPwdKeyEnc.getHashAlgorithm());
+    Digest pwdDigest = XmlEncryptionDescriptor.initDigest(
+        pwdKeyEnc.getHashAlgorithm());
+    pwdKeyEnc.setHashSize(pwdDigest.getDigestSize());
+    byte[] pwdSalt = randomBytes(random, (int)pwdKeyEnc.getSaltSize());
+    pwdKeyEnc.setSaltValue(pwdSalt);
+
+    int blockSize = (int)pwdKeyEnc.getBlockSize();
+    int pwdKeyByteLen = (int)(pwdKeyEnc.getKeyBits() / 8);
+    byte[] pwdIterHash = AgileEncryptionProvider.iteratePwdHash(
+        pwdDigest, pwdBytes, pwdSalt, (int)pwdKeyEnc.getSpinCount());
+
+    // OC: 2.3.4.13
+    byte[] verifierInput = randomBytes(random, (int)pwdKeyEnc.getSaltSize());
+    byte[] verifierHash = BaseCryptCodecHandler.hash(pwdDigest, verifierInput);
+    byte[] keyValue = randomBytes(random, (int)(keyData.getKeyBits() / 8));
+    if((keyValue.length % blockSize) != 0) {
+      throw new InvalidCryptoConfigurationException(
+          "Key size " + keyData.getKeyBits() + " must be a multiple of the " +
+          "block size " + blockSize);
+    }
+
+    pwdKeyEnc.setEncryptedVerifierHashInput(
+        encryptPwdBytes(pwdKeyEnc, pwdDigest, pwdIterHash,
+                        AgileEncryptionProvider.ENC_VERIFIER_INPUT_BLOCK,
+                        pwdKeyByteLen,
+                        padToBlockSize(verifierInput, blockSize)));
+    pwdKeyEnc.setEncryptedVerifierHashValue(
+        encryptPwdBytes(pwdKeyEnc, pwdDigest, pwdIterHash,
+                        AgileEncryptionProvider.ENC_VERIFIER_VALUE_BLOCK,
+                        pwdKeyByteLen,
+                        padToBlockSize(verifierHash, blockSize)));
+    pwdKeyEnc.setEncryptedKeyValue(
+        encryptPwdBytes(pwdKeyEnc, pwdDigest, pwdIterHash,
+                        AgileEncryptionProvider.ENC_VALUE_BLOCK,
+                        pwdKeyByteLen, keyValue));
+
+    CTEncryption encryption = newAgileDescriptor(keyData, pwdKeyEnc);
+
+    byte[] xmlBytes = XmlEncryptionWriter.writeEncryptionDescriptor(encryption);
+
+    ByteBuffer bb = BaseCryptCodecHandler.wrap(new byte[8 + xmlBytes.length]);
+    bb.putShort((short)AGILE_VERSION_MAJOR);
+    bb.putShort((short)AGILE_VERSION_MINOR);
+    bb.putInt(AgileEncryptionProvider.RESERVED_VAL);
+    bb.put(xmlBytes);
+    return new NewEncryptionInfo(bb.array(), pwdIterHash, true);
+  }
+
+  /**
+   * Parses the Agile encryption descriptor from the given encryption info
+   * (as returned by {@link OfficeCryptCodecHandler#readEncryptionInfo}).
+   */
+  public static CTEncryption readAgile(ByteBuffer encInfo)
+  {
+    ByteBuffer bb = encInfo.duplicate();
+    bb.order(encInfo.order());
+    bb.position(0);
+    int vMajor = bb.getShort() & 0xFFFF;
+    int vMinor = bb.getShort() & 0xFFFF;
+    if((vMajor != AGILE_VERSION_MAJOR) || (vMinor != AGILE_VERSION_MINOR) ||
+       (bb.getInt() != AgileEncryptionProvider.RESERVED_VAL)) {
+      throw new InvalidCryptoConfigurationException(
+          "Not agile encryption info: vMajor " + vMajor + ", vMinor " + vMinor);
+    }
+    byte[] xmlBytes = new byte[bb.remaining()];
+    bb.get(xmlBytes);
+    return XmlEncryptionDescriptor.parseEncryptionDescriptor(xmlBytes);
+  }
+
+  /**
+   * Creates new Standard (AES) encryption info for the given password and
+   * AES algorithm.
+   */
+  @SuppressWarnings("deprecation")
+  public static NewEncryptionInfo writeStandard(
+      byte[] pwdBytes, EncryptionHeader.CryptoAlgorithm cryptoAlg,
+      SecureRandom random)
+  {
+    if(!cryptoAlg.name().startsWith("AES")) {
+      throw new InvalidCryptoConfigurationException(
+          "Unsupported standard encryption algorithm " + cryptoAlg);
+    }
+
+    int keySize = cryptoAlg.getKeySizeMin();
+    Digest digest = new SHA1Digest();
+
+    // OC: 2.3.4.7
+    byte[] salt = randomBytes(random, STANDARD_SALT_SIZE);
+    byte[] iterHash = OfficeCryptCodecHandler.iterateHash(
+        digest, BaseCryptCodecHandler.hash(digest, salt, pwdBytes),
+        STANDARD_HASH_ITERATIONS);
+    byte[] key = ECMAStandardEncryptionProvider.cryptDeriveKey(
+        digest, iterHash, new byte[4], keySize / 8);
+
+    // OC: 2.3.4.8
+    byte[] verifier = randomBytes(random, STANDARD_VERIFIER_SIZE);
+    byte[] verifierHash = BaseCryptCodecHandler.hash(digest, verifier);
+    byte[] encVerifier = encryptBytes(new AESEngine(), new KeyParameter(key),
+                                      verifier);
+    byte[] encVerifierHash = encryptBytes(
+        new AESEngine(), new KeyParameter(key),
+        BaseCryptCodecHandler.fixToLength(
+            verifierHash, cryptoAlg.getEncryptedVerifierHashLen()));
+
+    byte[] cspName = (AES_CSP_NAME + '\0').getBytes(
+        EncryptionHeader.UNICODE_CHARSET);
+    int headerLen = (8 * 4) + cspName.length;
+
+    ByteBuffer bb = BaseCryptCodecHandler.wrap(
+        new byte[4 + 4 + 4 + headerLen + 4 + salt.length + encVerifier.length +
+                 4 + encVerifierHash.length]);
+    bb.putShort((short)STANDARD_VERSION_MAJOR);
+    bb.putShort((short)STANDARD_VERSION_MINOR);
+    bb.putInt(STANDARD_FLAGS);
+
+    // OC: 2.3.2 EncryptionHeader Structure
+    bb.putInt(headerLen);
+    bb.putInt(STANDARD_FLAGS);
+    // sizeExtra
+    bb.putInt(0);
+    bb.putInt(cryptoAlg.getAlgId());
+    bb.putInt(EncryptionHeader.HashAlgorithm.SHA1.getAlgId());
+    bb.putInt(keySize);
+    bb.putInt(AES_PROVIDER_TYPE);
+    // reserved
+    bb.putInt(0);
+    bb.putInt(0);
+    bb.put(cspName);
+
+    // OC: 2.3.3 EncryptionVerifier Structure
+    bb.putInt(salt.length);
+    bb.put(salt);
+    bb.put(encVerifier);
+    bb.putInt(verifierHash.length);
+    bb.put(encVerifierHash);
+
+    return new NewEncryptionInfo(bb.array(), iterHash, false);
+  }
+
+  private static CTEncryption newAgileDescriptor(
+      CTKeyData keyData, CTPasswordKeyEncryptor pwdKeyEnc)
+  {
+    CTKeyEncryptor keyEnc = new CTKeyEncryptor();
+    keyEnc.setUri(STPasswordKeyEncryptorUri.HTTP_SCHEMAS_MICROSOFT_COM_OFFICE_2006_KEY_ENCRYPTOR_PASSWORD.value());
+    keyEnc.setAny(pwdKeyEnc);
+
+    CTEncryption encryption = new CTEncryption();
+    encryption.setKeyData(keyData);
+    encryption.setKeyEncryptors(new CTKeyEncryptors());
+    encryption.getKeyEncryptors().getKeyEncryptor().add(keyEnc);
+    return encryption;
+  }
+
+  private static CTPasswordKeyEncryptor getPasswordKeyEncryptor(
+      CTEncryption encryption)
+  {
+    if(encryption.getKeyEncryptors() != null) {
+      for(CTKeyEncryptor keyEnc :
+            encryption.getKeyEncryptors().getKeyEncryptor()) {
+        if(keyEnc.getAny() instanceof CTPasswordKeyEncryptor) {
+          return (CTPasswordKeyEncryptor)keyEnc.getAny();
+        }
+      }
+    }
+    throw new InvalidCryptoConfigurationException(
+        "Missing password key encryptor");
+  }
+
+  private static byte[] encryptPwdBytes(CTPasswordKeyEncryptor pwdKeyEnc,
+                                        Digest digest, byte[] pwdIterHash,
+                                        byte[] blockBytes, int keyByteLen,
+                                        byte[] bytes)
+  {
+    byte[] salt = pwdKeyEnc.getSaltValue();
+    byte[] key = AgileEncryptionProvider.cryptDeriveKey(
+        digest, pwdIterHash, blockBytes, keyByteLen);
+    BlockCipher cipher = XmlEncryptionDescriptor.initCipher(
+        pwdKeyEnc.getCipherAlgorithm(), pwdKeyEnc.getCipherChaining());
+    return encryptBytes(cipher, new ParametersWithIV(new KeyParameter(key),
+                                                     salt), bytes);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static byte[] encryptBytes(BlockCipher blockCipher,
+                                     CipherParameters params, byte[] bytes)
+  {
+    BufferedBlockCipher cipher = new BufferedBlockCipher(blockCipher);
+    cipher.init(BaseCryptCodecHandler.CIPHER_ENCRYPT_MODE, params);
+    try {
+      byte[] encBytes = new byte[bytes.length];
+      int outLen = cipher.processBytes(bytes, 0, bytes.length, encBytes, 0);
+      cipher.doFinal(encBytes, outLen);
+      return encBytes;
+    } catch(InvalidCipherTextException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] padToBlockSize(byte[] bytes, int blockSize) {
+    int len = ((bytes.length + blockSize - 1) / blockSize) * blockSize;
+    return BaseCryptCodecHandler.fixToLength(bytes, len);
+  }
+
+  private static byte[] randomBytes(SecureRandom random, int len) {
+    byte[] bytes = new byte[len];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Newly created encryption provider info, along with the iterated password
+   * hash which was derived while creating it.  The info may be given to
+   * {@link OfficeCryptCodecHandler#createForEncryptionInfo} so that the
+   * (expensive) password key derivation is not repeated when a handler for
+   * the new info is created.  The hash itself is not accessible outside of
+   * this package.
+   */
+  public static final class NewEncryptionInfo
+  {
+    private final byte[] _bytes;
+    private final byte[] _pwdIterHash;
+    private final boolean _agile;
+
+    private NewEncryptionInfo(byte[] bytes, byte[] pwdIterHash,
+                              boolean agile) {
+      _bytes = bytes;
+      _pwdIterHash = pwdIterHash;
+      _agile = agile;
+    }
+
+    /**
+     * @return the encryption provider info (starting with the version info)
+     */
+    public byte[] getBytes() {
+      return _bytes;
+    }
+
+    byte[] getPwdIterHash() {
+      return _pwdIterHash;
+    }
+
+    /**
+     * Creates the provider for this info as read back from a database (the
+     * given buffer is positioned after the version info).  The iterated
+     * password hash of this info replaces the password verification, the
+     * given password bytes are not hashed again.
+     */
+    public OfficeCryptCodecHandler newProvider(
+        PageChannel channel, byte[] encodingKey, ByteBuffer encProvBuf,
+        byte[] pwdBytes)
+      throws IOException
+    {
+      if(_agile) {
+        return new AgileEncryptionProvider(channel, encodingKey, encProvBuf,
+                                           pwdBytes, _pwdIterHash);
+      }
+      // skip the copy of the header flags
+      encProvBuf.getInt();
+      return new ECMAStandardEncryptionProvider(channel, encodingKey,
+                                                encProvBuf, pwdBytes,
+                                                _pwdIterHash);
+    }
+  }
+}
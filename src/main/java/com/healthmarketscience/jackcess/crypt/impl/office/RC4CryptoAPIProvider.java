@@ -40,23 +40,24 @@ public class RC4CryptoAPIProvider extends StreamCipherProvider
   private static final Set<EncryptionHeader.HashAlgorithm> VALID_HASH_ALGOS =
     EnumSet.of(EncryptionHeader.HashAlgorithm.SHA1);
 
-  private final EncryptionHeader _header;
-  private final EncryptionVerifier _verifier;
+  private EncryptionVerifier _verifier;
   private final byte[] _baseHash;
+  private final int _keySize;
   private final int _encKeyByteSize;
 
   public RC4CryptoAPIProvider(PageChannel channel, byte[] encodingKey,
                               ByteBuffer encProvBuf, byte[] pwdBytes)
   {
     super(channel, encodingKey);
-    _header = EncryptionHeader.read(encProvBuf, VALID_CRYPTO_ALGOS,
-                                    VALID_HASH_ALGOS);
+    EncryptionHeader header = EncryptionHeader.read(
+        encProvBuf, VALID_CRYPTO_ALGOS, VALID_HASH_ALGOS);
 
-    _verifier = new EncryptionVerifier(encProvBuf, _header.getCryptoAlgorithm());
+    _verifier = new EncryptionVerifier(encProvBuf, header.getCryptoAlgorithm());
 
     // OC: 2.3.5.2 (part 1)
     _baseHash = hash(getDigest(), _verifier.getSalt(), pwdBytes);
-    _encKeyByteSize =  bits2bytes(_header.getKeySize());
+    _keySize = header.getKeySize();
+    _encKeyByteSize =  bits2bytes(_keySize);
   }
 
   @Override
@@ -86,12 +87,17 @@ public class RC4CryptoAPIProvider extends StreamCipherProvider
 
     // OC: 2.3.5.2 (part 2)
     byte[] encKey = hash(getDigest(), _baseHash, blockBytes, _encKeyByteSize);
-    if(_header.getKeySize() == 40) {
+    if(_keySize == 40) {
       encKey = ByteUtil.copyOf(encKey, bits2bytes(128));
     }
     return new KeyParameter(encKey);
   }
 
+  @Override
+  protected void clearVerifyState() {
+    _verifier = null;
+  }
+
   @Override
   protected boolean verifyPassword(byte[] pwdBytes) {
 
@@ -28,7 +28,7 @@ import com.healthmarketscience.jackcess.impl.PageChannel;
  */
 public abstract class StreamCipherProvider extends OfficeCryptCodecHandler
 {
-  private StreamCipherCompat _cipher;
+  private ThreadLocal<StreamCipherCompat> _cipher = newCipherHolder();
 
   protected StreamCipherProvider(PageChannel channel, byte[] encodingKey)
   {
@@ -43,10 +43,7 @@ public abstract class StreamCipherProvider extends OfficeCryptCodecHandler
 
   @Override
   protected StreamCipherCompat getStreamCipher() {
-    if(_cipher == null) {
-      _cipher = initCipher();
-    }
-    return _cipher;
+    return _cipher.get();
   }
 
   protected StreamCipherCompat initCipher() {
@@ -60,6 +57,13 @@ public abstract class StreamCipherProvider extends OfficeCryptCodecHandler
     streamDecrypt(inPage, pageNumber);
   }
 
+  @Override
+  protected void decodePageRangeImpl(ByteBuffer inPage, ByteBuffer outPage,
+                                     int pageNumber, int from, int to)
+  {
+    streamDecryptRange(inPage, pageNumber, to);
+  }
+
   @Override
   public ByteBuffer encodePageImpl(ByteBuffer buffer, int pageNumber,
                                    int pageOffset)
@@ -70,6 +74,11 @@ public abstract class StreamCipherProvider extends OfficeCryptCodecHandler
   @Override
   protected void reset() {
     super.reset();
-    _cipher = null;
+    _cipher.remove();
+    _cipher = newCipherHolder();
+  }
+
+  private ThreadLocal<StreamCipherCompat> newCipherHolder() {
+    return ThreadLocal.withInitial(this::initCipher);
   }
 }
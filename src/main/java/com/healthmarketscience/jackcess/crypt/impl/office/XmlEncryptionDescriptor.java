@@ -157,6 +157,26 @@ public class XmlEncryptionDescriptor
         getAlgorithm(cipherStr).initBlockCipher());
   }
 
+  /**
+   * @return how the blocks of a page depend on each other when encrypted
+   *         with the given cipher and chaining mode
+   */
+  public static final BlockCipherProvider.BlockMode getBlockMode(
+      String cipherStr, String chainStr) {
+    if(getAlgorithm(cipherStr) == CipherAlgorithm.RC4) {
+      return BlockCipherProvider.BlockMode.UNSUPPORTED;
+    }
+    switch(getChaining(chainStr)) {
+    case CHAININGMODECBC:
+    case CHAININGMODECFB:
+      return BlockCipherProvider.BlockMode.CHAINED;
+    case CHAININGMODEECB:
+      return BlockCipherProvider.BlockMode.INDEPENDENT;
+    default:
+      return BlockCipherProvider.BlockMode.UNSUPPORTED;
+    }
+  }
+
   private static <E extends Enum<E>> E parseEnum(String str, Class<E> enumClazz) {
     String origStr = str;
     // massage the enum str a bit to be a valid enum
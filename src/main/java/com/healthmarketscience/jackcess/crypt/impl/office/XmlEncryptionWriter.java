@@ -0,0 +1,189 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt.impl.office;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import com.healthmarketscience.jackcess.crypt.InvalidCryptoConfigurationException;
+import com.healthmarketscience.jackcess.crypt.model.CTDataIntegrity;
+import com.healthmarketscience.jackcess.crypt.model.CTEncryption;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyData;
+import com.healthmarketscience.jackcess.crypt.model.CTKeyEncryptor;
+import com.healthmarketscience.jackcess.crypt.model.password.CTPasswordKeyEncryptor;
+import com.healthmarketscience.jackcess.crypt.model.password.STPasswordKeyEncryptorUri;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Writes the xml encryption descriptor used by Agile encryption (the inverse
+ * of {@link XmlEncryptionParser}).  Only password key encryptors are
+ * supported.
+ *
+ * @author James Ahlborn
+ */
+public class XmlEncryptionWriter
+{
+  private static final String ENC_NS = "http://schemas.microsoft.com/office/2006/encryption";
+  private static final String PWD_NS = "http://schemas.microsoft.com/office/2006/keyEncryptor/password";
+  private static final String PWD_PREFIX = "p";
+
+  private static final Base64.Encoder B64_ENC = Base64.getEncoder();
+
+  private XmlEncryptionWriter() {}
+
+  public static final byte[] writeEncryptionDescriptor(
+      CTEncryption encryption) {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setNamespaceAware(true);
+      Document doc = factory.newDocumentBuilder().newDocument();
+      doc.setXmlStandalone(true);
+
+      Element encryptionEl = doc.createElementNS(ENC_NS, "encryption");
+      encryptionEl.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                                  "xmlns", ENC_NS);
+      encryptionEl.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                                  "xmlns:" + PWD_PREFIX, PWD_NS);
+      doc.appendChild(encryptionEl);
+
+      writeKeyData(encryptionEl, encryption.getKeyData());
+      writeDataIntegrity(encryptionEl, encryption.getDataIntegrity());
+      writeKeyEncryptors(encryptionEl, encryption);
+
+      Transformer transformer = TransformerFactory.newInstance()
+        .newTransformer();
+      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      transformer.setOutputProperty(OutputKeys.INDENT, "no");
+
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      transformer.transform(new DOMSource(doc), new StreamResult(bout));
+      return bout.toByteArray();
+
+    } catch(InvalidCryptoConfigurationException ie) {
+      throw ie;
+    } catch(Exception e) {
+      throw new InvalidCryptoConfigurationException(
+          "Failed writing encryption descriptor", e);
+    }
+  }
+
+  private static void writeKeyData(Element parentEl, CTKeyData keyData) {
+    Element keyDataEl = addElement(parentEl, "keyData", ENC_NS, null);
+
+    setAttribute(keyDataEl, "saltSize", keyData.getSaltSize());
+    setAttribute(keyDataEl, "blockSize", keyData.getBlockSize());
+    setAttribute(keyDataEl, "keyBits", keyData.getKeyBits());
+    setAttribute(keyDataEl, "hashSize", keyData.getHashSize());
+    setAttribute(keyDataEl, "cipherAlgorithm", keyData.getCipherAlgorithm());
+    setAttribute(keyDataEl, "cipherChaining", keyData.getCipherChaining());
+    setAttribute(keyDataEl, "hashAlgorithm", keyData.getHashAlgorithm());
+    setAttribute(keyDataEl, "saltValue", keyData.getSaltValue());
+  }
+
+  private static void writeDataIntegrity(Element parentEl,
+                                         CTDataIntegrity dataIntegrity) {
+    if(dataIntegrity == null) {
+      return;
+    }
+
+    Element dataIntegrityEl = addElement(parentEl, "dataIntegrity", ENC_NS,
+                                         null);
+
+    setAttribute(dataIntegrityEl, "encryptedHmacKey",
+                 dataIntegrity.getEncryptedHmacKey());
+    setAttribute(dataIntegrityEl, "encryptedHmacValue",
+                 dataIntegrity.getEncryptedHmacValue());
+  }
+
+  private static void writeKeyEncryptors(Element parentEl,
+                                         CTEncryption encryption) {
+    Element keyEncryptorsEl = addElement(parentEl, "keyEncryptors", ENC_NS,
+                                         null);
+
+    for(CTKeyEncryptor keyEncryptor :
+          encryption.getKeyEncryptors().getKeyEncryptor()) {
+
+      if(!STPasswordKeyEncryptorUri.HTTP_SCHEMAS_MICROSOFT_COM_OFFICE_2006_KEY_ENCRYPTOR_PASSWORD.value().equals(keyEncryptor.getUri())) {
+        throw new InvalidCryptoConfigurationException(
+            "Unsupported key encryptor " + keyEncryptor.getUri());
+      }
+
+      Element keyEncryptorEl = addElement(keyEncryptorsEl, "keyEncryptor",
+                                          ENC_NS, null);
+      setAttribute(keyEncryptorEl, "uri", keyEncryptor.getUri());
+
+      writePasswordKeyEncryptor(
+          keyEncryptorEl, (CTPasswordKeyEncryptor)keyEncryptor.getAny());
+    }
+  }
+
+  private static void writePasswordKeyEncryptor(
+      Element parentEl, CTPasswordKeyEncryptor pwdEncryptor) {
+    Element pwdEncryptorEl = addElement(parentEl, "encryptedKey", PWD_NS,
+                                        PWD_PREFIX);
+
+    setAttribute(pwdEncryptorEl, "spinCount", pwdEncryptor.getSpinCount());
+    setAttribute(pwdEncryptorEl, "saltSize", pwdEncryptor.getSaltSize());
+    setAttribute(pwdEncryptorEl, "blockSize", pwdEncryptor.getBlockSize());
+    setAttribute(pwdEncryptorEl, "keyBits", pwdEncryptor.getKeyBits());
+    setAttribute(pwdEncryptorEl, "hashSize", pwdEncryptor.getHashSize());
+    setAttribute(pwdEncryptorEl, "cipherAlgorithm",
+                 pwdEncryptor.getCipherAlgorithm());
+    setAttribute(pwdEncryptorEl, "cipherChaining",
+                 pwdEncryptor.getCipherChaining());
+    setAttribute(pwdEncryptorEl, "hashAlgorithm",
+                 pwdEncryptor.getHashAlgorithm());
+    setAttribute(pwdEncryptorEl, "saltValue", pwdEncryptor.getSaltValue());
+    setAttribute(pwdEncryptorEl, "encryptedVerifierHashInput",
+                 pwdEncryptor.getEncryptedVerifierHashInput());
+    setAttribute(pwdEncryptorEl, "encryptedVerifierHashValue",
+                 pwdEncryptor.getEncryptedVerifierHashValue());
+    setAttribute(pwdEncryptorEl, "encryptedKeyValue",
+                 pwdEncryptor.getEncryptedKeyValue());
+  }
+
+  private static Element addElement(Element parentEl, String localName,
+                                    String ns, String prefix) {
+    Element el = parentEl.getOwnerDocument().createElementNS(
+        ns, ((prefix != null) ? (prefix + ":" + localName) : localName));
+    parentEl.appendChild(el);
+    return el;
+  }
+
+  private static void setAttribute(Element el, String localName, long value) {
+    el.setAttribute(localName, String.valueOf(value));
+  }
+
+  private static void setAttribute(Element el, String localName,
+                                   String value) {
+    el.setAttribute(localName, value);
+  }
+
+  private static void setAttribute(Element el, String localName,
+                                   byte[] value) {
+    el.setAttribute(localName, B64_ENC.encodeToString(value));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import static com.healthmarketscience.jackcess.crypt.DecryptedPageCacheTest.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class CredentialCacheTest
+{
+
+  @Test
+  public void testCredentialRouting() throws Exception
+  {
+    List<String> candidates = Arrays.asList(
+        "wrong", "Test123", "password", "1234", "Test12345");
+    CredentialCache cache = new CredentialCache();
+    AtomicInteger numCallbacks = new AtomicInteger();
+
+    String[] dbs = {"src/test/data/db2013-enc.accdb",
+                    "src/test/data/db2007-enc.accdb",
+                    "src/test/data/money2008-pwd.mny"};
+
+    // first open of each file needs the callback (possibly for several
+    // candidates)
+    for(String dbName : dbs) {
+      numCallbacks.set(0);
+      assertTrue(open(copy(dbName), candidates, cache, numCallbacks));
+      assertTrue(numCallbacks.get() > 1);
+    }
+    assertEquals(dbs.length, cache.size());
+    assertEquals(0L, cache.getHitCount());
+
+    // re-opening any copy of a file uses the remembered password
+    for(String dbName : dbs) {
+      numCallbacks.set(0);
+      assertTrue(open(copy(dbName), candidates, cache, numCallbacks));
+      assertEquals(0, numCallbacks.get());
+    }
+    assertEquals(dbs.length, cache.getHitCount());
+
+    // other providers sharing the cache benefit as well
+    numCallbacks.set(0);
+    assertTrue(open(copy(dbs[0]), Arrays.asList("wrong"), cache,
+                    numCallbacks));
+    assertEquals(0, numCallbacks.get());
+
+    // without the remembered password, the callback is needed again
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertFalse(open(copy(dbs[0]), Arrays.asList("wrong"), cache,
+                     numCallbacks));
+    assertEquals(1, numCallbacks.get());
+    assertEquals(0, cache.size());
+
+    // bounded size
+    CredentialCache smallCache = new CredentialCache(1);
+    for(String dbName : dbs) {
+      assertTrue(open(copy(dbName), candidates, smallCache, numCallbacks));
+    }
+    assertEquals(1, smallCache.size());
+
+    try {
+      new CredentialCache(0);
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException e) {
+      // success
+    }
+  }
+
+  /**
+   * Opens the given file, trying each of the candidate passwords in turn.
+   */
+  private static boolean open(File file, List<String> candidates,
+                              CredentialCache cache,
+                              AtomicInteger numCallbacks)
+    throws Exception
+  {
+    Iterator<String> iter = candidates.iterator();
+    Supplier<String> callback = () -> {
+      numCallbacks.incrementAndGet();
+      return iter.next();
+    };
+    CryptCodecProvider provider = new CryptCodecProvider(callback)
+      .setCredentialCache(cache);
+    while(true) {
+      try(Database db = new DatabaseBuilder(file).setReadOnly(true)
+            .setCodecProvider(provider).open()) {
+        assertFalse(db.getTableNames().isEmpty());
+        return true;
+      } catch(InvalidCredentialsException e) {
+        if(!iter.hasNext()) {
+          return false;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,432 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.healthmarketscience.jackcess.TestUtil;
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.PageDecodeTask;
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.crypt.impl.PagePipeline;
+import com.healthmarketscience.jackcess.crypt.impl.ReadAheadCodecHandler;
+
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests which exercise the CodecHandler implementations directly (outside of
+ * a Database).
+ *
+ * @author James Ahlborn
+ */
+public class CryptCodecHandlerTest
+{
+  static final String[][] ENCRYPTED_DBS = {
+    {"src/test/data/db-enc.mdb", null},
+    {"src/test/data/db97-enc.mdb", null},
+    {"src/test/data/money2001.mny", null},
+    {"src/test/data/money2008-pwd.mny", "Test12345"},
+    {"src/test/data/db2007-oldenc.accdb", "Test123"},
+    {"src/test/data/db2007-enc.accdb", "Test123"},
+    {"src/test/data/db2013-enc.accdb", "1234"},
+    {"src/test/data/db-nonstandard.accdb", "password"},
+  };
+
+  @Test
+  public void testConcurrentDecode() throws Exception
+  {
+    ExecutorService exec = Executors.newFixedThreadPool(8);
+    try {
+      for(String[] dbInfo : ENCRYPTED_DBS) {
+        PageChannel channel = openChannel(dbInfo[0]);
+        try {
+          final CodecHandler handler = createHandler(channel, dbInfo[1]);
+          final List<ByteBuffer> rawPages = readRawPages(channel);
+          final List<ByteBuffer> expected = new ArrayList<ByteBuffer>();
+          for(int i = 0; i < rawPages.size(); ++i) {
+            expected.add(decodePage(handler, rawPages.get(i), i));
+          }
+
+          List<Future<Void>> results = new ArrayList<Future<Void>>();
+          for(int t = 0; t < 8; ++t) {
+            final long seed = t;
+            results.add(exec.submit(new Callable<Void>() {
+              @Override public Void call() throws Exception {
+                List<Integer> pageNums = new ArrayList<Integer>();
+                for(int i = 0; i < rawPages.size(); ++i) {
+                  pageNums.add(i);
+                }
+                for(int r = 0; r < 3; ++r) {
+                  Collections.shuffle(pageNums, new Random(seed + r));
+                  for(int pageNum : pageNums) {
+                    assertEquals(expected.get(pageNum),
+                                 decodePage(handler, rawPages.get(pageNum),
+                                            pageNum));
+                  }
+                }
+                return null;
+              }
+            }));
+          }
+
+          for(Future<Void> f : results) {
+            f.get();
+          }
+        } finally {
+          channel.close();
+        }
+      }
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelDecodePages() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for(String[] dbInfo : ENCRYPTED_DBS) {
+        PageChannel channel = openChannel(dbInfo[0]);
+        try {
+          CodecHandler handler = createHandler(channel, dbInfo[1]);
+          List<ByteBuffer> rawPages = readRawPages(channel);
+
+          // skip the (unencoded) header page
+          int numPages = rawPages.size() - 1;
+          ByteBuffer[] pages = new ByteBuffer[numPages];
+          ByteBuffer[] rangePages = new ByteBuffer[numPages];
+          int[] pageNumbers = new int[numPages];
+          for(int i = 0; i < numPages; ++i) {
+            byte[] bytes = rawPages.get(i + 1).array();
+            // decode in reverse order
+            pageNumbers[i] = numPages - i;
+            pages[i] = PageChannel.wrap(
+                rawPages.get(pageNumbers[i]).array().clone());
+            rangePages[i] = PageChannel.wrap(bytes.clone());
+          }
+
+          PageDecodeTask.decodePages(handler, pages, pageNumbers, pool);
+          ((BaseCryptCodecHandler)handler).decodePages(rangePages, 1);
+
+          for(int i = 0; i < numPages; ++i) {
+            assertEquals(decodePage(handler, rawPages.get(pageNumbers[i]),
+                                    pageNumbers[i]), pages[i]);
+            assertEquals(decodePage(handler, rawPages.get(i + 1), i + 1),
+                         rangePages[i]);
+          }
+        } finally {
+          channel.close();
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPagePipeline() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for(String[] dbInfo : ENCRYPTED_DBS) {
+        File destFile = TestUtil.createTempFile(false);
+        try(PageFile src = PageFile.open(new File(dbInfo[0]).toPath(), false);
+            PageFile dest = PageFile.create(destFile.toPath(),
+                                            src.getFormat())) {
+          CodecHandler handler = createHandler(src.getPageChannel(),
+                                               dbInfo[1]);
+          ThreadLocal<ByteBuffer> tmpPage =
+            ThreadLocal.withInitial(src::createPageBuffer);
+          int numPages = src.getPageCount();
+
+          // decode and re-encode every page (in small batches), the pages
+          // are written behind the encoding in order
+          assertEquals(numPages - 1, new PagePipeline(pool, 5).copyPages(
+              src, dest, 1, numPages, (page, pageNumber) -> {
+                PageDecodeTask.decodePage(handler, page, pageNumber,
+                                          tmpPage.get());
+                ByteBuffer encPage = handler.encodePage(page, pageNumber, 0);
+                if(encPage != page) {
+                  System.arraycopy(encPage.array(), 0, page.array(), 0,
+                                   page.limit());
+                }
+              }));
+
+          assertEquals(numPages, dest.getPageCount());
+          ByteBuffer srcPage = src.createPageBuffer();
+          ByteBuffer destPage = dest.createPageBuffer();
+          for(int i = 1; i < numPages; ++i) {
+            src.readPage(srcPage, i);
+            dest.readPage(destPage, i);
+            assertEquals(srcPage, destPage);
+          }
+        }
+      }
+
+      // a failed batch does not leave the next batch being transformed after
+      // the copy returns
+      File destFile = TestUtil.createTempFile(false);
+      AtomicInteger numActive = new AtomicInteger();
+      try(PageFile src = PageFile.open(
+              new File(ENCRYPTED_DBS[0][0]).toPath(), false);
+          PageFile dest = PageFile.create(destFile.toPath(),
+                                          src.getFormat())) {
+        new PagePipeline(pool, 5).copyPages(
+            src, dest, 1, src.getPageCount(), (page, pageNumber) -> {
+              numActive.incrementAndGet();
+              try {
+                if(pageNumber == 3) {
+                  throw new IOException("failed page " + pageNumber);
+                }
+                Thread.sleep(20L);
+              } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } finally {
+                numActive.decrementAndGet();
+              }
+            });
+        fail("IOException should have been thrown");
+      } catch(IOException e) {
+        assertEquals("failed page 3", e.getMessage());
+      }
+      assertEquals(0, numActive.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testReadAhead() throws Exception
+  {
+    ExecutorService exec = Executors.newFixedThreadPool(2);
+    try {
+      for(String[] dbInfo : ENCRYPTED_DBS) {
+        PageChannel channel = openChannel(dbInfo[0]);
+        FileChannel fc = FileChannel.open(new File(dbInfo[0]).toPath(),
+                                          StandardOpenOption.READ);
+        try {
+          CodecHandler handler = createHandler(channel, dbInfo[1]);
+          List<ByteBuffer> rawPages = readRawPages(channel);
+          ReadAheadCodecHandler raHandler = new ReadAheadCodecHandler(
+              handler, fc, channel.getFormat().PAGE_SIZE, 4, exec);
+
+          // sequential access
+          for(int i = 1; i < rawPages.size(); ++i) {
+            assertEquals(decodePage(handler, rawPages.get(i), i),
+                         decodePage(raHandler, rawPages.get(i), i));
+            assertTrue(raHandler.getPrefetchedPageCount() <= 4);
+          }
+
+          // random access
+          for(int i = rawPages.size() - 1; i > 0; i -= 2) {
+            assertEquals(decodePage(handler, rawPages.get(i), i),
+                         decodePage(raHandler, rawPages.get(i), i));
+          }
+
+          // prefetched pages which do not match are not used
+          assertTrue(rawPages.size() > 3);
+          decodePage(raHandler, rawPages.get(1), 1);
+          ByteBuffer modPage = PageChannel.wrap(
+              rawPages.get(2).array().clone());
+          modPage.put(100, (byte)(modPage.get(100) + 1));
+          assertEquals(decodePage(handler, modPage, 2),
+                       decodePage(raHandler, modPage, 2));
+
+          // reads do not wait on an executor which never gets to the queued
+          // pages (they are decoded inline)
+          ReadAheadCodecHandler stalledHandler = new ReadAheadCodecHandler(
+              handler, fc, channel.getFormat().PAGE_SIZE, 4, r -> {});
+          for(int i = 1; i < rawPages.size(); ++i) {
+            assertEquals(decodePage(handler, rawPages.get(i), i),
+                         decodePage(stalledHandler, rawPages.get(i), i));
+          }
+        } finally {
+          fc.close();
+          channel.close();
+        }
+      }
+    } finally {
+      exec.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDecodePageRange() throws Exception
+  {
+    for(String[] dbInfo : ENCRYPTED_DBS) {
+      PageChannel channel = openChannel(dbInfo[0]);
+      try {
+        CodecHandler handler = createHandler(channel, dbInfo[1]);
+        List<ByteBuffer> rawPages = readRawPages(channel);
+        int pageSize = channel.getFormat().PAGE_SIZE;
+        int[][] ranges = {{0, 16}, {0, 64}, {5, 5}, {17, 100},
+                          {1000, 1037}, {pageSize - 16, pageSize},
+                          {0, pageSize}};
+
+        // skip the (unencoded) header page
+        ByteBuffer tmpPage = null;
+        for(int i = 1; i < rawPages.size(); ++i) {
+          byte[] expected = decodePage(handler, rawPages.get(i), i).array();
+          for(int[] range : ranges) {
+            ByteBuffer page = PageChannel.wrap(
+                rawPages.get(i).array().clone());
+            tmpPage = PageDecodeTask.decodePageRange(
+                handler, page, i, range[0], range[1], tmpPage);
+            assertArrayEquals(
+                Arrays.copyOfRange(expected, range[0], range[1]),
+                Arrays.copyOfRange(page.array(), range[0], range[1]));
+          }
+        }
+
+        try {
+          ((BaseCryptCodecHandler)handler).decodePageRange(
+              rawPages.get(1), PageChannel.createBuffer(pageSize), 1, 10, 5);
+          fail("IllegalArgumentException should have been thrown");
+        } catch(IllegalArgumentException e) {
+          // success
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  @Test
+  public void testIncrementalEncode() throws Exception
+  {
+    for(String[] dbInfo : ENCRYPTED_DBS) {
+      PageChannel channel = openChannel(dbInfo[0]);
+      try {
+        CodecHandler handler = new CryptCodecProvider(dbInfo[1])
+          .setIncrementalEncode(true)
+          .createHandler(channel, channel.getFormat().CHARSET);
+        List<ByteBuffer> rawPages = readRawPages(channel);
+        int pageSize = channel.getFormat().PAGE_SIZE;
+        int pageNumber = rawPages.size() - 1;
+        byte[] page = decodePage(handler, rawPages.get(pageNumber),
+                                 pageNumber).array().clone();
+
+        // re-encode the page with a variety of changes (the page is
+        // deterministically encoded, so the encoded page must match the
+        // original page and decode to the modified page)
+        assertEncodeEquals(handler, page, pageNumber,
+                           rawPages.get(pageNumber).array());
+        int[][] changes = {{0}, {pageSize - 1}, {100, 101, 102},
+                           {17, pageSize - 17}, {2000}, {}};
+        Random rand = new Random(pageSize);
+        for(int[] change : changes) {
+          for(int offset : change) {
+            page[offset] = (byte)rand.nextInt();
+          }
+          ByteBuffer encPage = encodePage(handler, page, pageNumber);
+          assertArrayEquals(page, decodePage(handler, encPage,
+                                             pageNumber).array());
+          // unrelated pages are also encoded correctly
+          assertEncodeEquals(handler, decodePage(
+                                 handler, rawPages.get(1), 1).array(), 1,
+                             rawPages.get(1).array());
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  private static void assertEncodeEquals(CodecHandler handler, byte[] page,
+                                         int pageNumber, byte[] expected)
+    throws Exception
+  {
+    assertArrayEquals(expected,
+                      encodePage(handler, page, pageNumber).array());
+  }
+
+  private static ByteBuffer encodePage(CodecHandler handler, byte[] page,
+                                       int pageNumber)
+    throws Exception
+  {
+    ByteBuffer encPage = handler.encodePage(PageChannel.wrap(page.clone()),
+                                            pageNumber, 0);
+    return PageChannel.wrap(Arrays.copyOf(encPage.array(), page.length));
+  }
+
+  static PageChannel openChannel(String fileName) throws Exception
+  {
+    FileChannel fc = FileChannel.open(new File(fileName).toPath(),
+                                      StandardOpenOption.READ);
+    return new PageChannel(fc, true, JetFormat.getFormat(fc), false);
+  }
+
+  static CodecHandler createHandler(PageChannel channel, String pwd)
+    throws Exception
+  {
+    return new CryptCodecProvider(pwd).createHandler(
+        channel, channel.getFormat().CHARSET);
+  }
+
+  /**
+   * Reads all the pages of the given (uninitialized) channel without
+   * decoding them.
+   */
+  static List<ByteBuffer> readRawPages(PageChannel channel) throws Exception
+  {
+    List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+    try {
+      while(true) {
+        ByteBuffer page = channel.createPageBuffer();
+        channel.readPage(page, pages.size());
+        pages.add(page);
+      }
+    } catch(IllegalStateException e) {
+      // end of file (any other failure is a real problem)
+    }
+    return pages;
+  }
+
+  /**
+   * Decodes a copy of the given page and returns the result.
+   */
+  static ByteBuffer decodePage(CodecHandler handler, ByteBuffer rawPage,
+                               int pageNumber)
+    throws Exception
+  {
+    byte[] bytes = rawPage.array();
+    ByteBuffer inPage = PageChannel.wrap(Arrays.copyOf(bytes, bytes.length));
+    ByteBuffer outPage = PageChannel.createBuffer(bytes.length);
+    handler.decodePage(inPage, outPage, pageNumber);
+    return (handler.canDecodeInline() ? inPage : outPage);
+  }
+}
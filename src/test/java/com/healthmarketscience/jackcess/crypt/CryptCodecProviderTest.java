@@ -18,6 +18,9 @@ package com.healthmarketscience.jackcess.crypt;
 
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -30,7 +33,11 @@ import com.healthmarketscience.jackcess.Database;
 import com.healthmarketscience.jackcess.DatabaseBuilder;
 import com.healthmarketscience.jackcess.Table;
 import com.healthmarketscience.jackcess.TestUtil;
+import com.healthmarketscience.jackcess.crypt.impl.HandlerCache;
+import com.healthmarketscience.jackcess.crypt.impl.OpenPrefetchCodecHandler;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
 import com.healthmarketscience.jackcess.impl.DatabaseImpl;
+import com.healthmarketscience.jackcess.impl.PageChannel;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -294,7 +301,227 @@ public class CryptCodecProviderTest
     db.close();
   }
 
-  private static void doCheckJetDb(Database db, int addedRows) throws Exception
+  @Test
+  public void testReadAhead() throws Exception
+  {
+    for(String fname : Arrays.asList("src/test/data/db2007-oldenc.accdb",
+                                     "src/test/data/db2007-enc.accdb")) {
+      File copy = TestUtil.createTempFile(false);
+      TestUtil.copyFile(new File(fname), copy);
+
+      FileChannel fc = FileChannel.open(copy.toPath(), StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+      Database db = new DatabaseBuilder().setChannel(fc)
+        .setCodecProvider(new CryptCodecProvider("Test123").setReadAhead(fc, 8))
+        .open();
+
+      Table t = db.getTable("Table1");
+
+      ((DatabaseImpl)db).getPageChannel().startWrite();
+      try {
+        for(int i = 0; i < 1000; ++i) {
+          t.addRow(null, "this is the value of col1 " + i);
+        }
+      } finally {
+        ((DatabaseImpl)db).getPageChannel().finishWrite();
+      }
+
+      db.flush();
+
+      doCheckOfficeDb(db, 1000);
+
+      db.close();
+      fc.close();
+
+      db = open(copy.getPath(), true, "Test123");
+      doCheckOfficeDb(db, 1000);
+      db.close();
+    }
+
+    FileChannel fc = FileChannel.open(
+        new File("src/test/data/db2013-enc.accdb").toPath(),
+        StandardOpenOption.READ);
+    Database db = new DatabaseBuilder().setChannel(fc).setReadOnly(true)
+      .setCodecProvider(new CryptCodecProvider("1234").setReadAhead(fc, 4))
+      .open();
+    doCheckOffice2013Db(db, 0);
+    db.close();
+    fc.close();
+  }
+
+  @Test
+  public void testOpenPrefetch() throws Exception
+  {
+    for(String fname : Arrays.asList("src/test/data/db2007-oldenc.accdb",
+                                     "src/test/data/db2007-enc.accdb")) {
+      File copy = TestUtil.createTempFile(false);
+      TestUtil.copyFile(new File(fname), copy);
+
+      Database db = new DatabaseBuilder(copy)
+        .setCodecProvider(new CryptCodecProvider("Test123")
+                          .setOpenPrefetchPages(16))
+        .open();
+      Table t = db.getTable("Table1");
+      for(int i = 0; i < 100; ++i) {
+        t.addRow(null, "this is the value of col1 " + i);
+      }
+      doCheckOfficeDb(db, 100);
+      db.close();
+
+      db = open(copy.getPath(), true, "Test123");
+      doCheckOfficeDb(db, 100);
+      db.close();
+    }
+
+    Database db = new DatabaseBuilder(
+        new File("src/test/data/db2013-enc.accdb")).setReadOnly(true)
+      .setCodecProvider(new CryptCodecProvider("1234")
+                        .setOpenPrefetchPages(1000))
+      .open();
+    doCheckOffice2013Db(db, 0);
+    db.close();
+
+    db = new DatabaseBuilder(new File("src/test/data/db-enc.mdb"))
+      .setReadOnly(true)
+      .setCodecProvider(new CryptCodecProvider().setOpenPrefetchPages(8))
+      .open();
+    doCheckJetDb(db, 0);
+    db.close();
+
+    // the prefetched pages are served once
+    String fname = "src/test/data/db2013-enc.accdb";
+    PageChannel channel = CryptCodecHandlerTest.openChannel(fname);
+    try {
+      List<ByteBuffer> rawPages = CryptCodecHandlerTest.readRawPages(channel);
+      CodecHandler plainHandler = CryptCodecHandlerTest.createHandler(
+          channel, "1234");
+      OpenPrefetchCodecHandler handler = (OpenPrefetchCodecHandler)
+        new CryptCodecProvider("1234").setOpenPrefetchPages(4)
+        .createHandler(channel, channel.getFormat().CHARSET);
+      assertEquals(4, handler.getPrefetchedPageCount());
+      for(int i = 1; i < 4; ++i) {
+        assertEquals(
+            CryptCodecHandlerTest.decodePage(plainHandler, rawPages.get(i), i),
+            CryptCodecHandlerTest.decodePage(handler, rawPages.get(i), i));
+      }
+      assertEquals(1, handler.getPrefetchedPageCount());
+
+      // the prefetch is abandoned if the handler cannot be created
+      try {
+        new CryptCodecProvider("wrong").setOpenPrefetchPages(4)
+          .createHandler(channel, channel.getFormat().CHARSET);
+        fail("InvalidCredentialsException should have been thrown");
+      } catch(InvalidCredentialsException e) {
+        // success
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Test
+  public void testShareHandlers() throws Exception
+  {
+    final AtomicInteger count = new AtomicInteger();
+    final String[] pwd = {"Test123"};
+    CryptCodecProvider provider = new CryptCodecProvider(() -> {
+        count.incrementAndGet();
+        return pwd[0];
+      }).setShareHandlers(true);
+
+    String fname = "src/test/data/db2007-enc.accdb";
+    List<Database> dbs = new ArrayList<Database>();
+    for(int i = 0; i < 3; ++i) {
+      Database db = new DatabaseBuilder(new File(fname)).setReadOnly(true)
+        .setCodecProvider(provider).open();
+      doCheckOfficeDb(db, 0);
+      dbs.add(db);
+    }
+    assertEquals(3, count.get());
+    for(Database db : dbs) {
+      db.close();
+    }
+
+    PageChannel channel1 = CryptCodecHandlerTest.openChannel(fname);
+    PageChannel channel2 = CryptCodecHandlerTest.openChannel(fname);
+    try {
+      CodecHandler handler = provider.createHandler(
+          channel1, channel1.getFormat().CHARSET);
+      assertSame(handler, provider.createHandler(
+                     channel2, channel2.getFormat().CHARSET));
+
+      // a different password does not get the shared handler
+      pwd[0] = "WrongPassword";
+      try {
+        provider.createHandler(channel2, channel2.getFormat().CHARSET);
+        fail("InvalidCredentialsException should have been thrown");
+      } catch(InvalidCredentialsException e) {
+        // success
+      }
+
+      pwd[0] = "Test123";
+      assertSame(handler, provider.createHandler(
+                     channel2, channel2.getFormat().CHARSET));
+
+      // cleared handlers are no longer shared
+      provider.clearSharedHandlers();
+      CodecHandler newHandler = provider.createHandler(
+          channel1, channel1.getFormat().CHARSET);
+      assertNotSame(handler, newHandler);
+      assertSame(newHandler, provider.createHandler(
+                     channel2, channel2.getFormat().CHARSET));
+
+      // a failed creation (wrong password) is not cached
+      provider.clearSharedHandlers();
+      pwd[0] = "WrongPassword";
+      try {
+        provider.createHandler(channel1, channel1.getFormat().CHARSET);
+        fail("InvalidCredentialsException should have been thrown");
+      } catch(InvalidCredentialsException e) {
+        // success
+      }
+      pwd[0] = "Test123";
+      newHandler = provider.createHandler(
+          channel1, channel1.getFormat().CHARSET);
+      assertSame(newHandler, provider.createHandler(
+                     channel2, channel2.getFormat().CHARSET));
+
+      provider.setShareHandlers(false);
+      assertNotSame(handler, provider.createHandler(
+                        channel2, channel2.getFormat().CHARSET));
+    } finally {
+      channel1.close();
+      channel2.close();
+    }
+
+    // the number of cached handlers is bounded
+    HandlerCache handlerCache = new HandlerCache(1);
+    String[][] dbInfos = {{fname, "Test123"},
+                          {"src/test/data/db2013-enc.accdb", "1234"}};
+    for(String[] dbInfo : dbInfos) {
+      PageChannel channel = CryptCodecHandlerTest.openChannel(dbInfo[0]);
+      try {
+        assertNotNull(handlerCache.getHandler(
+            channel, channel.getFormat().CHARSET, () -> dbInfo[1],
+            cb -> new CryptCodecProvider(cb).createHandler(
+                channel, channel.getFormat().CHARSET)));
+      } finally {
+        channel.close();
+      }
+      assertEquals(1, handlerCache.size());
+    }
+
+    // jet handlers are never shared (and never need a password)
+    count.set(0);
+    provider.setShareHandlers(true);
+    Database db = new DatabaseBuilder(new File("src/test/data/db-enc.mdb"))
+      .setReadOnly(true).setCodecProvider(provider).open();
+    doCheckJetDb(db, 0);
+    db.close();
+    assertEquals(0, count.get());
+  }
+
+  static void doCheckJetDb(Database db, int addedRows) throws Exception
   {
     Table t = db.getTable("Table1");
 
@@ -323,7 +550,7 @@ public class CryptCodecProviderTest
     TestUtil.assertTable(expectedRows, t);
   }
 
-  private static void doCheckOfficeDb(Database db, int addedRows) throws Exception
+  static void doCheckOfficeDb(Database db, int addedRows) throws Exception
   {
     Table t = db.getTable("Table1");
 
@@ -346,7 +573,7 @@ public class CryptCodecProviderTest
     TestUtil.assertTable(expectedRows, t);
   }
 
-  private static void doCheckOffice2013Db(Database db, int addedRows) throws Exception
+  static void doCheckOffice2013Db(Database db, int addedRows) throws Exception
   {
     Table t = db.getTable("Customers");
 
@@ -387,7 +614,7 @@ public class CryptCodecProviderTest
     TestUtil.assertTable(expectedRows, t);
   }
 
-  private static void doCheckMSISAM2001Db(Database db) throws Exception
+  static void doCheckMSISAM2001Db(Database db) throws Exception
   {
     assertEquals(Database.FileFormat.MSISAM, db.getFileFormat());
 
@@ -420,7 +647,7 @@ public class CryptCodecProviderTest
                  t.getDefaultCursor().getNextRow(cols));
   }
 
-  private static void doCheckMSISAM2002Db(Database db) throws Exception
+  static void doCheckMSISAM2002Db(Database db) throws Exception
   {
     assertEquals(Database.FileFormat.MSISAM, db.getFileFormat());
 
@@ -453,7 +680,7 @@ public class CryptCodecProviderTest
                  t.getDefaultCursor().getNextRow(cols));
   }
 
-  private static void doCheckMSISAM2008Db(Database db) throws Exception
+  static void doCheckMSISAM2008Db(Database db) throws Exception
   {
     assertEquals(Database.FileFormat.MSISAM, db.getFileFormat());
 
@@ -0,0 +1,98 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class CryptFileScannerTest
+{
+
+  @Test
+  public void testScan() throws Exception
+  {
+    Results results = new Results();
+    long numFiles = CryptFileScanner.scan(Paths.get("src/test/data"), 3,
+                                          results);
+
+    assertEquals(11, numFiles);
+    assertEquals(11, results._probed.size());
+    assertTrue(results._failed.isEmpty());
+
+    EncryptionInfo info = results._probed.get("db2013-enc.accdb");
+    assertEquals(EncryptionInfo.Type.OFFICE_AGILE, info.getType());
+    assertEquals(100001L, info.getKeyDerivationCost());
+    assertEquals(EncryptionInfo.Type.JET,
+                 results._probed.get("db-enc.mdb").getType());
+    assertEquals(0L, results._probed.get("db-enc.mdb").getKeyDerivationCost());
+    assertEquals(EncryptionInfo.Type.MSISAM,
+                 results._probed.get("money2008-pwd.mny").getType());
+
+    // only the given extensions are scanned, bad files are reported
+    Path dir = Files.createTempDirectory("cryptscan");
+    Path badFile = Files.write(dir.resolve("bad.MDB"), new byte[100]);
+    Path otherFile = Files.write(dir.resolve("other.txt"), new byte[100]);
+    try {
+      results = new Results();
+      numFiles = new CryptFileScanner(Runnable::run, 1)
+        .scan(dir, results);
+      assertEquals(1, numFiles);
+      assertTrue(results._probed.isEmpty());
+      assertTrue(results._failed.containsKey("bad.MDB"));
+
+      results = new Results();
+      numFiles = new CryptFileScanner(Runnable::run, 1)
+        .setExtensions(Collections.singleton("TXT"))
+        .scan(dir, results);
+      assertEquals(1, numFiles);
+      assertTrue(results._failed.containsKey("other.txt"));
+    } finally {
+      Files.delete(badFile);
+      Files.delete(otherFile);
+      Files.delete(dir);
+    }
+  }
+
+  private static final class Results implements CryptFileScanner.Listener
+  {
+    private final Map<String,EncryptionInfo> _probed =
+      new ConcurrentHashMap<String,EncryptionInfo>();
+    private final Map<String,Exception> _failed =
+      new ConcurrentHashMap<String,Exception>();
+
+    @Override
+    public void fileProbed(Path file, EncryptionInfo info) {
+      _probed.put(file.getFileName().toString(), info);
+    }
+
+    @Override
+    public void fileFailed(Path file, Exception failure) {
+      _failed.put(file.getFileName().toString(), failure);
+    }
+  }
+}
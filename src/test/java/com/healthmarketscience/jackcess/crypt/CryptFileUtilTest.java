@@ -0,0 +1,570 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+import com.healthmarketscience.jackcess.TestUtil;
+import com.healthmarketscience.jackcess.crypt.impl.OfficeCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.PageFile;
+import com.healthmarketscience.jackcess.crypt.impl.office.EncryptionInfoWriter;
+import com.healthmarketscience.jackcess.crypt.model.CTEncryption;
+import com.healthmarketscience.jackcess.crypt.model.password.CTPasswordKeyEncryptor;
+import com.healthmarketscience.jackcess.impl.JetFormat;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+import static com.healthmarketscience.jackcess.crypt.CryptCodecProviderTest.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class CryptFileUtilTest
+{
+
+  @Test
+  public void testDecrypt() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Database db = decrypt("src/test/data/db-enc.mdb", null, pool);
+      assertEquals(Database.FileFormat.V2000, db.getFileFormat());
+      doCheckJetDb(db, 0);
+      db.close();
+
+      db = decrypt("src/test/data/db97-enc.mdb", null, pool);
+      assertEquals(Database.FileFormat.V1997, db.getFileFormat());
+      doCheckJetDb(db, 0);
+      db.close();
+
+      for(String fname : new String[]{"src/test/data/db2007-oldenc.accdb",
+                                      "src/test/data/db2007-enc.accdb"}) {
+        db = decrypt(fname, "Test123", pool);
+        doCheckOfficeDb(db, 0);
+        db.close();
+      }
+
+      db = decrypt("src/test/data/db2013-enc.accdb", "1234", pool);
+      doCheckOffice2013Db(db, 0);
+      db.close();
+
+      db = decrypt("src/test/data/db-nonstandard.accdb", "password", pool);
+      assertNotNull(db.getTable("Table_One").getColumn("ID"));
+      db.close();
+
+      try {
+        decrypt("src/test/data/db2007-enc.accdb", "WrongPassword", pool);
+        fail("InvalidCredentialsException should have been thrown");
+      } catch(InvalidCredentialsException e) {
+        // success
+      }
+
+      try {
+        decrypt("src/test/data/money2008-pwd.mny", "Test12345", pool);
+        fail("UnsupportedOperationException should have been thrown");
+      } catch(UnsupportedOperationException e) {
+        // success
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testChangePassword() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      File destFile = changePassword("src/test/data/db2007-enc.accdb",
+                                     "Test123", "N3wPassw0rd", pool);
+      Database db = open(destFile, "N3wPassw0rd");
+      doCheckOfficeDb(db, 0);
+      db.close();
+
+      checkInvalidPassword(destFile, "Test123");
+
+      destFile = changePassword("src/test/data/db2013-enc.accdb", "1234",
+                                "5678", pool);
+      db = open(destFile, "5678");
+      doCheckOffice2013Db(db, 0);
+      db.close();
+
+      // a (re-used) password hash from other encryption info is rejected
+      EncryptionInfoWriter.NewEncryptionInfo otherInfo =
+        EncryptionInfoWriter.writeAgile(
+            OfficeCryptCodecHandler.getPasswordBytes("5678"),
+            new AgileEncryptionSettings().setSpinCount(10),
+            new SecureRandom());
+      PageChannel channel = CryptCodecHandlerTest.openChannel(
+          destFile.getPath());
+      try {
+        OfficeCryptCodecHandler.createForEncryptionInfo(
+            () -> "5678", channel, channel.getFormat().CHARSET, otherInfo);
+        fail("InvalidCredentialsException should have been thrown");
+      } catch(InvalidCredentialsException e) {
+        // success
+      } finally {
+        channel.close();
+      }
+
+      // non-standard encryption is replaced by standard encryption
+      destFile = changePassword("src/test/data/db-nonstandard.accdb",
+                                "password", "otherPassword", pool);
+      db = open(destFile, "otherPassword");
+      assertNotNull(db.getTable("Table_One").getColumn("ID"));
+      db.close();
+
+      checkInvalidPassword(destFile, "password");
+
+      try {
+        changePassword("src/test/data/db2007-oldenc.accdb", "Test123",
+                       "N3wPassw0rd", pool);
+        fail("UnsupportedOperationException should have been thrown");
+      } catch(UnsupportedOperationException e) {
+        // success
+      }
+
+      try {
+        changePassword("src/test/data/db2007-enc.accdb", "WrongPassword",
+                       "N3wPassw0rd", pool);
+        fail("InvalidCredentialsException should have been thrown");
+      } catch(InvalidCredentialsException e) {
+        // success
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConvertToAgile() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      File destFile = convertToAgile("src/test/data/db2007-oldenc.accdb",
+                                     "Test123", "N3wPassw0rd", pool);
+      checkAgile(destFile);
+      Database db = open(destFile, "N3wPassw0rd");
+      doCheckOfficeDb(db, 0);
+      db.close();
+
+      checkInvalidPassword(destFile, "Test123");
+
+      destFile = convertToAgile("src/test/data/db-nonstandard.accdb",
+                                "password", "otherPassword", pool);
+      checkAgile(destFile);
+      db = open(destFile, "otherPassword");
+      assertNotNull(db.getTable("Table_One").getColumn("ID"));
+      db.close();
+
+      // unencrypted source
+      File plainFile = TestUtil.createTempFile(false);
+      CryptFileUtil.decrypt(new File("src/test/data/db2013-enc.accdb"),
+                            plainFile, new CryptCodecProvider("1234"), pool);
+      destFile = convertToAgile(plainFile.getPath(), null, "5678", pool);
+      checkAgile(destFile);
+      db = open(destFile, "5678");
+      doCheckOffice2013Db(db, 0);
+      db.close();
+
+      checkInvalidPassword(destFile, null);
+
+      try {
+        convertToAgile("src/test/data/db-enc.mdb", null, "N3wPassw0rd", pool);
+        fail("UnsupportedOperationException should have been thrown");
+      } catch(UnsupportedOperationException e) {
+        // success
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCreateAgile() throws Exception
+  {
+    for(Database.FileFormat fileFormat : new Database.FileFormat[]{
+          Database.FileFormat.V2007, Database.FileFormat.V2010,
+          Database.FileFormat.V2016}) {
+
+      File file = TestUtil.createTempFile(false);
+      Database db = CryptCodecUtil.createAgileDatabase(
+          file, fileFormat, "N3wPassw0rd");
+      Table t = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .toTable(db);
+      for(int i = 0; i < 100; ++i) {
+        t.addRow(i, "row " + i);
+      }
+      db.close();
+
+      checkAgile(file);
+      checkInvalidPassword(file, null);
+
+      db = open(file, "N3wPassw0rd");
+      assertEquals(fileFormat, db.getFileFormat());
+      int count = 0;
+      for(Row row : db.getTable("Test")) {
+        assertEquals("row " + row.getInt("id"), row.getString("data"));
+        ++count;
+      }
+      assertEquals(100, count);
+      db.close();
+    }
+
+    try {
+      CryptFileUtil.createAgile(TestUtil.createTempFile(false),
+                                Database.FileFormat.V2000, "N3wPassw0rd");
+      fail("UnsupportedOperationException should have been thrown");
+    } catch(UnsupportedOperationException e) {
+      // success
+    }
+  }
+
+  @Test
+  public void testAgileSettings() throws Exception
+  {
+    AgileEncryptionSettings settings = new AgileEncryptionSettings()
+      .setSpinCount(1000).setHashAlgorithm("SHA256");
+
+    File file = TestUtil.createTempFile(false);
+    Database db = CryptCodecUtil.createAgileDatabase(
+        file, Database.FileFormat.V2010, "N3wPassw0rd", settings);
+    db.close();
+    checkKeyDerivation(file, 1000, "SHA256");
+    db = open(file, "N3wPassw0rd");
+    assertNotNull(db.getSystemTable("MSysObjects"));
+    db.close();
+
+    // rotation uses the source settings unless overridden
+    File destFile = changePassword(file.getPath(), "N3wPassw0rd", "pwd2",
+                                   ForkJoinPool.commonPool());
+    checkKeyDerivation(destFile, 1000, "SHA256");
+
+    settings.setSpinCount(10).setHashAlgorithm("SHA1");
+    File srcFile = new File("src/test/data/db2007-enc.accdb");
+    destFile = TestUtil.createTempFile(false);
+    CryptFileUtil.changePassword(srcFile, destFile,
+                                 new CryptCodecProvider("Test123"), "pwd3",
+                                 settings, ForkJoinPool.commonPool());
+    checkKeyDerivation(destFile, 10, "SHA1");
+    db = open(destFile, "pwd3");
+    doCheckOfficeDb(db, 0);
+    db.close();
+
+    try {
+      settings.setSpinCount(-1);
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException e) {
+      // success
+    }
+
+    try {
+      settings.setHashAlgorithm("BOGUS");
+      fail("InvalidCryptoConfigurationException should have been thrown");
+    } catch(InvalidCryptoConfigurationException e) {
+      // success
+    }
+  }
+
+  @Test
+  public void testProbe() throws Exception
+  {
+    EncryptionInfo info = CryptFileUtil.probe(
+        new File("src/test/data/db97-enc.mdb"));
+    assertEquals(EncryptionInfo.Type.JET, info.getType());
+    assertEquals(JetFormat.CodecType.JET, info.getCodecType());
+    assertEquals(2048, info.getPageSize());
+    assertEquals(44, info.getPageCount());
+    assertTrue(info.isEncrypted());
+    assertFalse(info.isPasswordProtected());
+    assertEquals("RC4", info.getCipherAlgorithm());
+
+    info = CryptFileUtil.probe(new File("src/test/data/money2008-pwd.mny"));
+    assertEquals(EncryptionInfo.Type.MSISAM, info.getType());
+    assertEquals("SHA1", info.getHashAlgorithm());
+    assertTrue(info.isPasswordProtected());
+
+    info = CryptFileUtil.probe(new File("src/test/data/money2001.mny"));
+    assertEquals(EncryptionInfo.Type.MSISAM_JET, info.getType());
+
+    info = CryptFileUtil.probe(new File("src/test/data/db2013-enc.accdb"));
+    assertEquals(EncryptionInfo.Type.OFFICE_AGILE, info.getType());
+    assertEquals(JetFormat.CodecType.OFFICE, info.getCodecType());
+    assertEquals(4, info.getVersionMajor());
+    assertEquals(4, info.getVersionMinor());
+    assertEquals("AES", info.getCipherAlgorithm());
+    assertEquals("ChainingModeCBC", info.getCipherChaining());
+    assertEquals("SHA512", info.getHashAlgorithm());
+    assertEquals(256, info.getKeyBits());
+    assertEquals(100000, info.getSpinCount());
+    assertTrue(info.isPasswordProtected());
+
+    // rc4 cryptoapi and non-standard share the same version info
+    info = CryptFileUtil.probe(new File("src/test/data/db2007-oldenc.accdb"));
+    assertEquals(EncryptionInfo.Type.OFFICE_RC4_CRYPTO_API, info.getType());
+    assertEquals(4, info.getVersionMajor());
+    assertEquals(2, info.getVersionMinor());
+    assertEquals("RC4", info.getCipherAlgorithm());
+    assertEquals(40, info.getKeyBits());
+
+    info = CryptFileUtil.probe(new File("src/test/data/db-nonstandard.accdb"));
+    assertEquals(EncryptionInfo.Type.OFFICE_NON_STANDARD, info.getType());
+    assertEquals(4, info.getVersionMajor());
+    assertEquals(2, info.getVersionMinor());
+    assertEquals("AES", info.getCipherAlgorithm());
+    assertEquals(0, info.getSpinCount());
+
+    File destFile = changePassword("src/test/data/db-nonstandard.accdb",
+                                   "password", "otherPassword",
+                                   ForkJoinPool.commonPool());
+    info = CryptFileUtil.probe(destFile);
+    assertEquals(EncryptionInfo.Type.OFFICE_STANDARD, info.getType());
+    assertEquals(50000, info.getSpinCount());
+
+    destFile = TestUtil.createTempFile(false);
+    CryptFileUtil.decrypt(new File("src/test/data/db2007-enc.accdb"),
+                          destFile, new CryptCodecProvider("Test123"));
+    info = CryptFileUtil.probe(destFile);
+    assertEquals(EncryptionInfo.Type.NONE, info.getType());
+    assertFalse(info.isEncrypted());
+    assertEquals(-1, info.getVersionMajor());
+    assertNull(info.getCipherAlgorithm());
+  }
+
+  @Test
+  public void testVerify() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      String[][] files = {
+        {"src/test/data/db-enc.mdb", null},
+        {"src/test/data/db97-enc.mdb", null},
+        {"src/test/data/db2007-enc.accdb", "Test123"},
+        {"src/test/data/db2007-oldenc.accdb", "Test123"},
+        {"src/test/data/db2013-enc.accdb", "1234"},
+        {"src/test/data/db-nonstandard.accdb", "password"},
+        {"src/test/data/money2001.mny", null},
+        {"src/test/data/money2001-pwd.mny", null},
+        {"src/test/data/money2002.mny", null},
+        {"src/test/data/money2008.mny", null},
+        {"src/test/data/money2008-pwd.mny", "Test12345"}};
+
+      for(String[] file : files) {
+        File srcFile = new File(file[0]);
+        CryptFileUtil.IntegrityReport report = CryptFileUtil.verify(
+            srcFile, new CryptCodecProvider(file[1]), pool);
+        assertTrue(file[0] + ": " + report.getProblems(), report.isIntact());
+        assertEquals(0, report.getCorruptPages().length);
+        assertEquals(srcFile.length(), report.getStats().getByteCount());
+      }
+
+      // damage a couple of pages
+      File srcFile = new File("src/test/data/db2007-enc.accdb");
+      File destFile = TestUtil.createTempFile(false);
+      try(PageFile src = PageFile.open(srcFile.toPath(), false);
+          PageFile dest = PageFile.create(destFile.toPath(), src.getFormat())) {
+        ByteBuffer page = src.createPageBuffer();
+        for(int i = 0; i < src.getPageCount(); ++i) {
+          src.readPage(page, i);
+          if((i == 5) || (i == 37)) {
+            page.put(3, (byte)~page.get(3));
+          }
+          dest.writePage(page, i);
+        }
+      }
+
+      CryptFileUtil.IntegrityReport report = CryptFileUtil.verify(
+          destFile, new CryptCodecProvider("Test123"), pool);
+      assertFalse(report.isIntact());
+      assertArrayEquals(new int[]{5, 37}, report.getCorruptPages());
+
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDelta() throws Exception
+  {
+    File primary = TestUtil.createTempFile(false);
+    Database db = CryptCodecUtil.createAgileDatabase(
+        primary, Database.FileFormat.V2010, "Test123");
+    Table t = new TableBuilder("Test")
+      .addColumn(new ColumnBuilder("id", DataType.LONG))
+      .addColumn(new ColumnBuilder("data", DataType.TEXT))
+      .toTable(db);
+    for(int i = 0; i < 100; ++i) {
+      t.addRow(i, "row " + i);
+    }
+    db.close();
+
+    // initial, full delta
+    File replica = TestUtil.createTempFile(false);
+    File delta = TestUtil.createTempFile(false);
+    PageHashIndex index = CryptFileUtil.createDelta(primary, null, delta);
+    assertEquals(primary.length() / index.getPageSize(),
+                 index.getPageCount());
+    CryptFileUtil.Stats stats = CryptFileUtil.applyDelta(delta, replica);
+    assertEquals(index.getPageCount(), stats.getPageCount());
+    assertArrayEquals(Files.readAllBytes(primary.toPath()),
+                      Files.readAllBytes(replica.toPath()));
+
+    File sidecar = PageHashIndex.getSidecarFile(primary);
+    index.write(sidecar);
+    index = PageHashIndex.read(sidecar);
+    assertEquals(index.getPageCount(),
+                 PageHashIndex.build(replica).getPageCount());
+
+    // modify the primary, only the changed pages are shipped
+    db = new DatabaseBuilder(primary)
+      .setCodecProvider(new CryptCodecProvider("Test123")).open();
+    t = db.getTable("Test");
+    for(int i = 100; i < 110; ++i) {
+      t.addRow(i, "row " + i);
+    }
+    db.close();
+
+    PageHashIndex newIndex = CryptFileUtil.createDelta(primary, index, delta);
+    assertTrue(delta.length() < (primary.length() / 4));
+    stats = CryptFileUtil.applyDelta(delta, replica);
+    assertTrue(stats.getPageCount() < (newIndex.getPageCount() / 4));
+    assertArrayEquals(Files.readAllBytes(primary.toPath()),
+                      Files.readAllBytes(replica.toPath()));
+
+    db = open(replica, "Test123");
+    int count = 0;
+    for(Row row : db.getTable("Test")) {
+      assertEquals("row " + row.getInt("id"), row.getString("data"));
+      ++count;
+    }
+    assertEquals(110, count);
+    db.close();
+
+    // the delta does not apply to the new version of the replica
+    try {
+      CryptFileUtil.applyDelta(delta, replica);
+      fail("IOException should have been thrown");
+    } catch(IOException e) {
+      // success
+    }
+    assertArrayEquals(Files.readAllBytes(primary.toPath()),
+                      Files.readAllBytes(replica.toPath()));
+
+    sidecar.delete();
+  }
+
+  private static void checkKeyDerivation(File file, int spinCount,
+                                         String hashAlgorithm)
+    throws Exception
+  {
+    try(PageFile pageFile = PageFile.open(file.toPath(), false)) {
+      CTEncryption encryption = EncryptionInfoWriter.readAgile(
+          OfficeCryptCodecHandler.readEncryptionInfo(
+              pageFile.readHeaderPage()));
+      CTPasswordKeyEncryptor pwdKeyEnc = (CTPasswordKeyEncryptor)
+        encryption.getKeyEncryptors().getKeyEncryptor().get(0).getAny();
+      assertEquals(spinCount, pwdKeyEnc.getSpinCount());
+      assertEquals(hashAlgorithm, pwdKeyEnc.getHashAlgorithm());
+    }
+  }
+
+  private static File convertToAgile(String fileName, String pwd,
+                                     String newPwd, ForkJoinPool pool)
+    throws Exception
+  {
+    File srcFile = new File(fileName);
+    File destFile = TestUtil.createTempFile(false);
+
+    CryptFileUtil.Stats stats = CryptFileUtil.convertToAgile(
+        srcFile, destFile, new CryptCodecProvider(pwd), newPwd, pool);
+    assertEquals(srcFile.length(), stats.getByteCount());
+    assertEquals(srcFile.length(), destFile.length());
+    return destFile;
+  }
+
+  private static void checkAgile(File file) throws Exception
+  {
+    try(PageFile pageFile = PageFile.open(file.toPath(), false)) {
+      ByteBuffer encInfo = OfficeCryptCodecHandler.readEncryptionInfo(
+          pageFile.readHeaderPage());
+      assertEquals(4, encInfo.getShort());
+      assertEquals(4, encInfo.getShort());
+    }
+  }
+
+  private static File changePassword(String fileName, String pwd,
+                                     String newPwd, ForkJoinPool pool)
+    throws Exception
+  {
+    File srcFile = new File(fileName);
+    File destFile = TestUtil.createTempFile(false);
+
+    CryptFileUtil.Stats stats = CryptFileUtil.changePassword(
+        srcFile, destFile, new CryptCodecProvider(pwd), newPwd, pool);
+    assertEquals(srcFile.length(), stats.getByteCount());
+    assertEquals(srcFile.length(), destFile.length());
+    return destFile;
+  }
+
+  private static Database open(File file, String pwd) throws Exception
+  {
+    return new DatabaseBuilder(file).setReadOnly(true)
+      .setCodecProvider(new CryptCodecProvider(pwd)).open();
+  }
+
+  private static void checkInvalidPassword(File file, String pwd)
+    throws Exception
+  {
+    try {
+      open(file, pwd);
+      fail("InvalidCredentialsException should have been thrown");
+    } catch(InvalidCredentialsException e) {
+      // success
+    }
+  }
+
+  private static Database decrypt(String fileName, String pwd,
+                                  ForkJoinPool pool)
+    throws Exception
+  {
+    File srcFile = new File(fileName);
+    File destFile = TestUtil.createTempFile(false);
+
+    CryptFileUtil.Stats stats = CryptFileUtil.decrypt(
+        srcFile, destFile, new CryptCodecProvider(pwd), pool);
+    assertEquals(srcFile.length(), stats.getByteCount());
+    assertEquals(srcFile.length(), destFile.length());
+
+    // decrypted db does not need a codec provider
+    return new DatabaseBuilder(destFile).setReadOnly(true).open();
+  }
+}
@@ -0,0 +1,231 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.DelegatingCodecHandler;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+import static com.healthmarketscience.jackcess.crypt.CryptCodecHandlerTest.*;
+import static com.healthmarketscience.jackcess.crypt.DecryptedPageCacheTest.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class CryptMemoryBudgetTest
+{
+
+  @Test
+  public void testEviction() throws Exception
+  {
+    CryptMemoryBudget budget = new CryptMemoryBudget(100L);
+    List<String> evicted = new ArrayList<String>();
+
+    CryptMemoryBudget.Charge a = budget.charge(40L, 1, () -> evicted.add("a"));
+    CryptMemoryBudget.Charge b = budget.charge(40L, 1, () -> evicted.add("b"));
+    assertEquals(80L, budget.getSize());
+    assertEquals(2, budget.getChargeCount());
+
+    // least recently used entry is evicted (a used entry gets a second
+    // chance)
+    a.touch();
+    budget.charge(40L, 1, () -> evicted.add("c"));
+    assertEquals(80L, budget.getSize());
+    assertEquals(1L, budget.getEvictionCount());
+
+    // expensive entries outlive cheap ones
+    budget.charge(10L, 3, () -> evicted.add("d"));
+    budget.charge(40L, 1, () -> evicted.add("e"));
+    budget.charge(40L, 1, () -> evicted.add("f"));
+    assertTrue(budget.getSize() <= budget.getMaxBytes());
+
+    // released entries are not evicted
+    CryptMemoryBudget.Charge g = budget.charge(10L, 1, () -> evicted.add("g"));
+    g.release();
+    g.touch();
+    g.release();
+    budget.charge(90L, 1, () -> evicted.add("h"));
+
+    // entries larger than the budget are evicted immediately
+    budget.charge(200L, 5, () -> evicted.add("i"));
+    assertEquals(0L, budget.getSize());
+
+    budget.charge(10L, 1, () -> evicted.add("j"));
+    budget.clear();
+    assertEquals(0L, budget.getSize());
+    assertEquals(0, budget.getChargeCount());
+
+    assertEquals(Arrays.asList("b", "c", "a", "e", "f", "h", "d", "i", "j"),
+                 evicted);
+
+    try {
+      budget.charge(-1L, 1, () -> {});
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException e) {
+      // success
+    }
+    try {
+      budget.charge(1L, 0, () -> {});
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException e) {
+      // success
+    }
+  }
+
+  @Test
+  public void testSharedBudget() throws Exception
+  {
+    String[][] dbs = {
+      {"src/test/data/db2013-enc.accdb", "1234"},
+      {"src/test/data/db2007-enc.accdb", "Test123"},
+      {"src/test/data/db-nonstandard.accdb", "password"},
+    };
+
+    // the page cache is effectively unbounded, only the budget limits it
+    DecryptedPageCache cache = new DecryptedPageCache(Long.MAX_VALUE);
+    CryptMemoryBudget budget = new CryptMemoryBudget(64L << 10);
+
+    List<List<String>> expectedRows = new ArrayList<List<String>>();
+    for(String[] dbInfo : dbs) {
+      expectedRows.add(readAll(copy(dbInfo[0]),
+                              provider(dbInfo[1], null, null)));
+    }
+
+    for(int i = 0; i < dbs.length; ++i) {
+      assertEquals(expectedRows.get(i),
+                   readAll(copy(dbs[i][0]),
+                           provider(dbs[i][1], cache, budget)));
+      assertTrue(budget.getSize() <= budget.getMaxBytes());
+      assertTrue(cache.getSize() <= budget.getMaxBytes());
+    }
+    assertTrue(budget.getEvictionCount() > 0L);
+    assertTrue(cache.getEvictionCount() > 0L);
+    assertTrue(budget.getChargeCount() > 0);
+
+    // a single hot database may use the whole budget
+    budget.clear();
+    assertEquals(0, cache.getPageCount());
+    assertEquals(0L, cache.getSize());
+    readAll(copy(dbs[0][0]), provider(dbs[0][1], cache, budget));
+    long hits = cache.getHitCount();
+    assertEquals(expectedRows.get(0),
+                 readAll(copy(dbs[0][0]),
+                         provider(dbs[0][1], cache, budget)));
+    assertTrue(cache.getHitCount() > hits);
+
+    // recently encoded pages are charged to the budget as well
+    budget.clear();
+    for(String[] dbInfo : dbs) {
+      PageChannel channel = openChannel(dbInfo[0]);
+      try {
+        CodecHandler handler = new CryptCodecProvider(dbInfo[1])
+          .setMemoryBudget(budget).setIncrementalEncode(true)
+          .createHandler(channel, channel.getFormat().CHARSET);
+        List<ByteBuffer> rawPages = readRawPages(channel);
+        for(int i = 1; i < rawPages.size(); ++i) {
+          ByteBuffer page = decodePage(handler, rawPages.get(i), i);
+          handler.encodePage(page, i, 0);
+        }
+      } finally {
+        channel.close();
+      }
+      assertTrue(budget.getSize() <= budget.getMaxBytes());
+    }
+    assertTrue(budget.getChargeCount() > 0);
+  }
+
+  @Test
+  public void testChargeRace() throws Exception
+  {
+    String[] dbInfo = {"src/test/data/db2013-enc.accdb", "1234"};
+    ExecutorService exec = Executors.newFixedThreadPool(8);
+    PageChannel channel = openChannel(dbInfo[0]);
+    try {
+      List<ByteBuffer> rawPages = readRawPages(channel);
+
+      // the (tiny) cache and budget both evict pages while other threads are
+      // still charging them, every charge must end up either released or
+      // matched by a cached page
+      for(long budgetBytes : new long[]{1L << 20, 3L << 13}) {
+        DecryptedPageCache cache = new DecryptedPageCache(5L << 13);
+        CryptMemoryBudget budget = new CryptMemoryBudget(budgetBytes);
+        CodecHandler handler = new CryptCodecProvider(dbInfo[1])
+          .setPageCache(cache).setMemoryBudget(budget)
+          .setIncrementalEncode(true)
+          .createHandler(channel, channel.getFormat().CHARSET);
+
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for(int t = 0; t < 8; ++t) {
+          final long seed = t;
+          results.add(exec.submit(() -> {
+            List<Integer> pageNums = new ArrayList<Integer>();
+            for(int i = 1; i < rawPages.size(); ++i) {
+              pageNums.add(i);
+            }
+            for(int r = 0; r < 5; ++r) {
+              Collections.shuffle(pageNums, new Random(seed + r));
+              for(int pageNum : pageNums) {
+                ByteBuffer page = decodePage(handler, rawPages.get(pageNum),
+                                             pageNum);
+                handler.encodePage(page, pageNum, 0);
+              }
+            }
+            return null;
+          }));
+        }
+        for(Future<Void> f : results) {
+          f.get();
+        }
+
+        // discarding the encoded pages leaves only the cached pages
+        ((BaseCryptCodecHandler)((DelegatingCodecHandler)handler)
+         .getDelegate()).setIncrementalEncode(false);
+        assertEquals(cache.getSize(), budget.getSize());
+        assertEquals(cache.getPageCount(), budget.getChargeCount());
+        assertTrue(budget.getSize() <= budget.getMaxBytes());
+
+        cache.clear();
+        assertEquals(0L, budget.getSize());
+        assertEquals(0, budget.getChargeCount());
+      }
+    } finally {
+      channel.close();
+      exec.shutdownNow();
+    }
+  }
+
+  private static CryptCodecProvider provider(String pwd,
+                                             DecryptedPageCache cache,
+                                             CryptMemoryBudget budget) {
+    return new CryptCodecProvider(pwd).setPageCache(cache)
+      .setMemoryBudget(budget);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TestUtil;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class DecryptedPageCacheTest
+{
+
+  @Test
+  public void testSnapshots() throws Exception
+  {
+    File snapshot1 = copy("src/test/data/db2013-enc.accdb");
+    File snapshot2 = copy("src/test/data/db2013-enc.accdb");
+
+    DecryptedPageCache cache = new DecryptedPageCache(16L << 20);
+
+    List<String> rows1 = readAll(snapshot1, "1234", cache);
+    long misses = cache.getMissCount();
+    assertTrue(misses > 0L);
+    assertTrue(cache.getPageCount() > 0);
+    assertTrue(cache.getSize() <= cache.getMaxBytes());
+
+    // the second snapshot is served from the cache
+    List<String> rows2 = readAll(snapshot2, "1234", cache);
+    assertEquals(rows1, rows2);
+    assertEquals(misses, cache.getMissCount());
+    assertTrue(cache.getHitCount() >= misses);
+    assertTrue(cache.getHitRate() >= 0.5d);
+    assertEquals(0L, cache.getEvictionCount());
+
+    // a different database does not share cached pages (every miss adds a
+    // new page)
+    int numPages = cache.getPageCount();
+    readAll(copy("src/test/data/db2007-enc.accdb"), "Test123", cache);
+    assertTrue(cache.getMissCount() > misses);
+    assertEquals(cache.getMissCount() - misses,
+                 cache.getPageCount() - numPages);
+
+    // small cache stays within bounds
+    DecryptedPageCache smallCache = new DecryptedPageCache(64L << 10);
+    assertEquals(rows1, readAll(snapshot1, "1234", smallCache));
+    assertTrue(smallCache.getSize() <= smallCache.getMaxBytes());
+    assertTrue(smallCache.getEvictionCount() > 0L);
+
+    cache.clear();
+    assertEquals(0, cache.getPageCount());
+    assertEquals(0L, cache.getSize());
+  }
+
+  /**
+   * Copies the given database to a temp file.
+   */
+  static File copy(String fileName) throws Exception
+  {
+    File file = TestUtil.createTempFile(false);
+    Files.copy(new File(fileName).toPath(), file.toPath(),
+               StandardCopyOption.REPLACE_EXISTING);
+    return file;
+  }
+
+  private static List<String> readAll(File file, String pwd,
+                                      DecryptedPageCache cache)
+    throws Exception
+  {
+    return readAll(file, new CryptCodecProvider(pwd).setPageCache(cache));
+  }
+
+  /**
+   * Reads all the rows of all the tables of the given database (read-only)
+   * using the given provider.
+   */
+  static List<String> readAll(File file, CryptCodecProvider provider)
+    throws Exception
+  {
+    List<String> rows = new ArrayList<String>();
+    try(Database db = new DatabaseBuilder(file).setReadOnly(true)
+          .setCodecProvider(provider).open()) {
+      for(String tableName : db.getTableNames()) {
+        Table t = db.getTable(tableName);
+        for(Row row : t) {
+          rows.add(tableName + ": " + row.values());
+        }
+      }
+    }
+    return rows;
+  }
+}
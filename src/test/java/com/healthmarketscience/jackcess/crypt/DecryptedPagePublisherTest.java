@@ -0,0 +1,158 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.jackcess.TestUtil;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class DecryptedPagePublisherTest
+{
+
+  @Test
+  public void testPublish() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      File srcFile = new File("src/test/data/db2013-enc.accdb");
+      File decFile = TestUtil.createTempFile(false);
+      CryptFileUtil.decrypt(srcFile, decFile, new CryptCodecProvider("1234"));
+      byte[] expected = Files.readAllBytes(decFile.toPath());
+
+      DecryptedPagePublisher publisher = new DecryptedPagePublisher(
+          srcFile.toPath(), new CryptCodecProvider("1234"), pool)
+        .setMaxPagesInFlight(8);
+
+      // request a page at a time
+      TestSubscriber subscriber = new TestSubscriber(1L);
+      publisher.subscribe(subscriber);
+      subscriber.await();
+      assertNull(subscriber._error);
+      assertTrue(subscriber._completed);
+
+      int pageSize = subscriber._pages.get(0).getBuffer().capacity();
+      assertEquals(expected.length / pageSize, subscriber._pages.size());
+      for(int i = 0; i < subscriber._pages.size(); ++i) {
+        DecryptedPagePublisher.Page page = subscriber._pages.get(i);
+        assertEquals(i, page.getPageNumber());
+        if(i > 0) {
+          assertArrayEquals(
+              Arrays.copyOfRange(expected, i * pageSize, (i + 1) * pageSize),
+              page.getBuffer().array());
+        }
+      }
+
+      // subset of pages, unbounded demand
+      publisher.setPageRange(3, 7);
+      subscriber = new TestSubscriber(Long.MAX_VALUE);
+      publisher.subscribe(subscriber);
+      subscriber.await();
+      assertTrue(subscriber._completed);
+      assertEquals(4, subscriber._pages.size());
+      assertEquals(3, subscriber._pages.get(0).getPageNumber());
+      assertEquals(6, subscriber._pages.get(3).getPageNumber());
+
+      // only the requested pages are published
+      publisher.setPageRange(0, -1);
+      subscriber = new TestSubscriber(0L);
+      publisher.subscribe(subscriber);
+      subscriber._subscription.request(3L);
+      Thread.sleep(200L);
+      assertEquals(3, subscriber._pages.size());
+      assertFalse(subscriber._completed);
+      subscriber._subscription.cancel();
+      subscriber._subscription.request(3L);
+      Thread.sleep(200L);
+      assertEquals(3, subscriber._pages.size());
+      assertFalse(subscriber._completed);
+
+      // invalid password
+      subscriber = new TestSubscriber(1L);
+      new DecryptedPagePublisher(
+          srcFile.toPath(), new CryptCodecProvider("WrongPassword"), pool)
+        .subscribe(subscriber);
+      subscriber.await();
+      assertTrue(subscriber._error instanceof InvalidCredentialsException);
+      assertTrue(subscriber._pages.isEmpty());
+
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static final class TestSubscriber
+    implements DecryptedPagePublisher.Subscriber<DecryptedPagePublisher.Page>
+  {
+    private final long _batchSize;
+    private final List<DecryptedPagePublisher.Page> _pages =
+      new CopyOnWriteArrayList<DecryptedPagePublisher.Page>();
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private volatile DecryptedPagePublisher.Subscription _subscription;
+    private volatile Throwable _error;
+    private volatile boolean _completed;
+
+    private TestSubscriber(long batchSize) {
+      _batchSize = batchSize;
+    }
+
+    @Override
+    public void onSubscribe(DecryptedPagePublisher.Subscription subscription) {
+      _subscription = subscription;
+      if(_batchSize > 0L) {
+        subscription.request(_batchSize);
+      }
+    }
+
+    @Override
+    public void onNext(DecryptedPagePublisher.Page page) {
+      _pages.add(page);
+      if(_batchSize == 1L) {
+        _subscription.request(1L);
+      }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      _error = error;
+      _done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      _completed = true;
+      _done.countDown();
+    }
+
+    private void await() throws Exception {
+      assertTrue(_done.await(30L, TimeUnit.SECONDS));
+    }
+  }
+}
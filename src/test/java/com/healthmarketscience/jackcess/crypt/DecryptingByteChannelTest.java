@@ -0,0 +1,161 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.healthmarketscience.jackcess.TestUtil;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class DecryptingByteChannelTest
+{
+
+  @Test
+  public void testRead() throws Exception
+  {
+    checkRead("src/test/data/db2007-enc.accdb", "Test123");
+    checkRead("src/test/data/db2013-enc.accdb", "1234");
+    checkRead("src/test/data/db-enc.mdb", null);
+  }
+
+  private static void checkRead(String fileName, String pwd) throws Exception
+  {
+    File srcFile = new File(fileName);
+    File decFile = TestUtil.createTempFile(false);
+    CryptFileUtil.decrypt(srcFile, decFile, new CryptCodecProvider(pwd));
+    byte[] expected = Files.readAllBytes(decFile.toPath());
+
+    try(DecryptingByteChannel channel = DecryptingByteChannel.open(
+            srcFile.toPath(), new CryptCodecProvider(pwd), 2)) {
+
+      int pageSize = channel.getPageSize();
+      assertEquals(expected.length, channel.size());
+
+      // sequential read (header page differs, encryption info is cleared in
+      // the decrypted file)
+      byte[] actual = readFully(channel, 1000);
+      assertEquals(expected.length, actual.length);
+      assertArrayEquals(Arrays.copyOfRange(expected, pageSize, expected.length),
+                        Arrays.copyOfRange(actual, pageSize, actual.length));
+      assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+
+      // random reads spanning pages
+      ByteBuffer buf = ByteBuffer.allocate(pageSize + 100);
+      for(long pos : new long[]{(3L * pageSize) - 50, pageSize + 7,
+                                (2L * pageSize) - 1}) {
+        buf.clear();
+        assertEquals(buf.capacity(), channel.read(buf, pos));
+        assertArrayEquals(
+            Arrays.copyOfRange(expected, (int)pos, (int)pos + buf.capacity()),
+            buf.array());
+      }
+
+      // concurrent positional reads (with a tiny page cache)
+      ExecutorService exec = Executors.newFixedThreadPool(4);
+      try {
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for(int t = 0; t < 4; ++t) {
+          Random rand = new Random(t);
+          results.add(exec.submit(() -> {
+            ByteBuffer tBuf = ByteBuffer.allocate(pageSize / 2);
+            for(int i = 0; i < 200; ++i) {
+              int pos = pageSize + rand.nextInt(
+                  expected.length - pageSize - tBuf.capacity());
+              tBuf.clear();
+              assertEquals(tBuf.capacity(), channel.read(tBuf, pos));
+              assertArrayEquals(
+                  Arrays.copyOfRange(expected, pos, pos + tBuf.capacity()),
+                  tBuf.array());
+            }
+            return null;
+          }));
+        }
+        for(Future<Void> f : results) {
+          f.get();
+        }
+      } finally {
+        exec.shutdownNow();
+      }
+
+      channel.position(expected.length - 10);
+      buf.clear();
+      assertEquals(10, channel.read(buf));
+      assertEquals(expected.length, channel.position());
+
+      try {
+        channel.write(ByteBuffer.allocate(10));
+        fail("NonWritableChannelException should have been thrown");
+      } catch(NonWritableChannelException e) {
+        // success
+      }
+    }
+
+    try(InputStream in = DecryptingByteChannel.newInputStream(
+            srcFile.toPath(), new CryptCodecProvider(pwd))) {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      byte[] tmp = new byte[3000];
+      int len = 0;
+      while((len = in.read(tmp)) >= 0) {
+        bout.write(tmp, 0, len);
+      }
+      byte[] actual = bout.toByteArray();
+      assertEquals(expected.length, actual.length);
+      assertEquals(expected[expected.length - 1], actual[actual.length - 1]);
+    }
+
+    DecryptingByteChannel channel = DecryptingByteChannel.open(
+        srcFile.toPath(), new CryptCodecProvider(pwd));
+    channel.close();
+    assertFalse(channel.isOpen());
+    try {
+      channel.read(ByteBuffer.allocate(10));
+      fail("ClosedChannelException should have been thrown");
+    } catch(ClosedChannelException e) {
+      // success
+    }
+  }
+
+  private static byte[] readFully(DecryptingByteChannel channel, int bufSize)
+    throws Exception
+  {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    ByteBuffer buf = ByteBuffer.allocate(bufSize);
+    while(channel.read(buf) >= 0) {
+      bout.write(buf.array(), 0, buf.position());
+      buf.clear();
+    }
+    return bout.toByteArray();
+  }
+}
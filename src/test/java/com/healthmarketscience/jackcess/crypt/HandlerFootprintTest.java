@@ -0,0 +1,228 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import com.healthmarketscience.jackcess.crypt.impl.BaseCryptCodecHandler;
+import com.healthmarketscience.jackcess.crypt.impl.office.AgileEncryptionProvider;
+import com.healthmarketscience.jackcess.impl.CodecHandler;
+import com.healthmarketscience.jackcess.impl.PageChannel;
+import static com.healthmarketscience.jackcess.crypt.CryptCodecHandlerTest.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Measures the memory retained by an open handler for each of the encryption
+ * formats.
+ *
+ * @author James Ahlborn
+ */
+public class HandlerFootprintTest
+{
+  /** max bytes retained by a lean handler (excluding the page size temp
+      buffer) */
+  private static final long MAX_LEAN_BYTES = 8L << 10;
+  /** approximate size of the internal node of a map/collection entry */
+  private static final long MAP_ENTRY_BYTES = 32L;
+  private static final long COLLECTION_ENTRY_BYTES = 16L;
+
+  @Test
+  public void testFootprint() throws Exception
+  {
+    for(String[] dbInfo : ENCRYPTED_DBS) {
+      PageChannel channel = openChannel(dbInfo[0]);
+      try {
+        List<ByteBuffer> rawPages = readRawPages(channel);
+        int pageSize = channel.getFormat().PAGE_SIZE;
+
+        CodecHandler handler = createHandler(channel, dbInfo[1]);
+        CodecHandler leanHandler = new CryptCodecProvider(dbInfo[1])
+          .setLeanHandlers(true)
+          .createHandler(channel, channel.getFormat().CHARSET);
+
+        if(!(handler instanceof BaseCryptCodecHandler)) {
+          // no encryption, nothing to retain
+          assertSame(handler, leanHandler);
+          continue;
+        }
+        assertFalse(((BaseCryptCodecHandler)handler).isLean());
+        assertTrue(((BaseCryptCodecHandler)leanHandler).isLean());
+
+        useHandler(handler, rawPages);
+        useHandler(leanHandler, rawPages);
+
+        long bytes = sizeOf(handler);
+        long leanBytes = sizeOf(leanHandler);
+        assertTrue(dbInfo[0] + ": " + leanBytes + " > " + bytes,
+                   leanBytes <= bytes);
+        assertTrue(dbInfo[0] + ": " + leanBytes,
+                   leanBytes <= (MAX_LEAN_BYTES + pageSize));
+
+        if(handler instanceof AgileEncryptionProvider) {
+          // the (immutable) encryption descriptor is shared by all handlers
+          assertTrue(sizeOf(handler, leanHandler) < (bytes + leanBytes));
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  private static void useHandler(CodecHandler handler,
+                                 List<ByteBuffer> rawPages)
+    throws Exception
+  {
+    int pageNumber = rawPages.size() - 1;
+    for(int i = 1; i <= pageNumber; ++i) {
+      decodePage(handler, rawPages.get(i), i);
+    }
+    ByteBuffer page = decodePage(handler, rawPages.get(pageNumber),
+                                 pageNumber);
+    handler.encodePage(page, pageNumber, 0);
+  }
+
+  /**
+   * Returns an estimate of the bytes retained by the given objects (assuming
+   * a 64-bit jvm with compressed references).  Shared infrastructure (static
+   * state, classes, channels, etc.) is not included.  The fields of jdk
+   * classes are not accessible on newer jvms, so only their shallow size is
+   * counted (plus the contents of any collections).
+   */
+  private static long sizeOf(Object... roots) throws Exception
+  {
+    Set<Object> visited = Collections.newSetFromMap(
+        new IdentityHashMap<Object,Boolean>());
+    Deque<Object> toVisit = new ArrayDeque<Object>();
+    Collections.addAll(toVisit, roots);
+
+    long bytes = 0L;
+    while(!toVisit.isEmpty()) {
+      Object obj = toVisit.pop();
+      if(isShared(obj) || !visited.add(obj)) {
+        continue;
+      }
+
+      if(obj instanceof ThreadLocal) {
+        // only the value for the current thread is interesting
+        addRef(toVisit, ((ThreadLocal<?>)obj).get());
+        continue;
+      }
+      if(obj instanceof Reference) {
+        addRef(toVisit, ((Reference<?>)obj).get());
+        continue;
+      }
+
+      Class<?> clazz = obj.getClass();
+      if(clazz.isArray()) {
+        int len = Array.getLength(obj);
+        Class<?> compType = clazz.getComponentType();
+        bytes += align(16L + ((long)len * sizeOfType(compType)));
+        if(!compType.isPrimitive()) {
+          for(int i = 0; i < len; ++i) {
+            addRef(toVisit, Array.get(obj, i));
+          }
+        }
+        continue;
+      }
+
+      if(obj instanceof Map) {
+        for(Map.Entry<?,?> e : ((Map<?,?>)obj).entrySet()) {
+          bytes += MAP_ENTRY_BYTES;
+          addRef(toVisit, e.getKey());
+          addRef(toVisit, e.getValue());
+        }
+      } else if(obj instanceof Collection) {
+        for(Object o : (Collection<?>)obj) {
+          bytes += COLLECTION_ENTRY_BYTES;
+          addRef(toVisit, o);
+        }
+      }
+
+      long objBytes = 12L;
+      for(Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+        boolean jdkClass = isJdkClass(c);
+        for(Field f : c.getDeclaredFields()) {
+          if(Modifier.isStatic(f.getModifiers())) {
+            continue;
+          }
+          objBytes += sizeOfType(f.getType());
+          if(!jdkClass && !f.getType().isPrimitive()) {
+            f.setAccessible(true);
+            addRef(toVisit, f.get(obj));
+          }
+        }
+      }
+      bytes += align(objBytes);
+    }
+    return bytes;
+  }
+
+  private static void addRef(Deque<Object> toVisit, Object obj) {
+    if(obj != null) {
+      toVisit.push(obj);
+    }
+  }
+
+  private static boolean isJdkClass(Class<?> clazz) {
+    String name = clazz.getName();
+    return (name.startsWith("java.") || name.startsWith("javax.") ||
+            name.startsWith("jdk.") || name.startsWith("sun."));
+  }
+
+  private static boolean isShared(Object obj) {
+    return ((obj instanceof Class) || (obj instanceof PageChannel) ||
+            (obj instanceof Charset) || (obj instanceof Enum) ||
+            (obj instanceof Thread) || (obj instanceof ClassLoader) ||
+            (obj instanceof Executor));
+  }
+
+  private static long sizeOfType(Class<?> type) {
+    if((type == long.class) || (type == double.class)) {
+      return 8L;
+    }
+    if((type == int.class) || (type == float.class)) {
+      return 4L;
+    }
+    if((type == short.class) || (type == char.class)) {
+      return 2L;
+    }
+    if((type == byte.class) || (type == boolean.class)) {
+      return 1L;
+    }
+    // compressed reference
+    return 4L;
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7L) & ~7L;
+  }
+}
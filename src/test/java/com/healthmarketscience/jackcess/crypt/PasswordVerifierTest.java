@@ -0,0 +1,103 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.healthmarketscience.jackcess.TestUtil;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class PasswordVerifierTest
+{
+
+  @Test
+  public void testVerify() throws Exception
+  {
+    File badFile = TestUtil.createTempFile(false);
+
+    List<File> files = Arrays.asList(
+        new File("src/test/data/db2007-enc.accdb"),
+        new File("src/test/data/db2007-oldenc.accdb"),
+        new File("src/test/data/db2013-enc.accdb"),
+        new File("src/test/data/db-nonstandard.accdb"),
+        new File("src/test/data/db-enc.mdb"),
+        new File("src/test/data/money2008-pwd.mny"),
+        badFile);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      PasswordVerifier verifier = new PasswordVerifier(executor, 2);
+
+      List<PasswordVerifier.Verification> results =
+        verifier.verify(files, "Test123");
+      assertEquals(files.size(), results.size());
+      checkResults(files, results,
+                   PasswordVerifier.Result.VALID,
+                   PasswordVerifier.Result.VALID,
+                   PasswordVerifier.Result.INVALID,
+                   PasswordVerifier.Result.INVALID,
+                   PasswordVerifier.Result.NOT_ENCRYPTED,
+                   PasswordVerifier.Result.INVALID,
+                   PasswordVerifier.Result.ERROR);
+      assertTrue(results.get(0).isAccessible());
+      assertFalse(results.get(2).isAccessible());
+      assertTrue(results.get(4).isAccessible());
+      assertEquals(EncryptionInfo.Type.OFFICE_AGILE,
+                   results.get(0).getEncryptionInfo().getType());
+      assertNotNull(results.get(6).getFailure());
+
+      results = verifier.verify(files, "1234");
+      assertEquals(PasswordVerifier.Result.VALID, results.get(2).getResult());
+      assertEquals(PasswordVerifier.Result.INVALID,
+                   results.get(0).getResult());
+
+      assertEquals(PasswordVerifier.Result.VALID,
+                   verifier.verify(files.get(3), "password").getResult());
+      assertEquals(PasswordVerifier.Result.VALID,
+                   verifier.verify(files.get(5), "Test12345").getResult());
+
+      // files are still checked if the executor never gets to them (they are
+      // checked in the calling thread)
+      results = new PasswordVerifier(r -> {}, 1).verify(files, "Test123");
+      assertEquals(PasswordVerifier.Result.VALID, results.get(0).getResult());
+      assertEquals(PasswordVerifier.Result.INVALID,
+                   results.get(2).getResult());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void checkResults(
+      List<File> files, List<PasswordVerifier.Verification> results,
+      PasswordVerifier.Result... expected)
+  {
+    for(int i = 0; i < expected.length; ++i) {
+      PasswordVerifier.Verification result = results.get(i);
+      assertEquals(files.get(i), result.getFile());
+      assertEquals(result.toString(), expected[i], result.getResult());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.crypt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import com.healthmarketscience.jackcess.TestUtil;
+import static com.healthmarketscience.jackcess.crypt.DecryptedPageCacheTest.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class SharedPageCacheTest
+{
+
+  @Test
+  public void testShared() throws Exception
+  {
+    Path cacheFile = TestUtil.createTempFile(false).toPath();
+    Files.delete(cacheFile);
+
+    File snapshot1 = copy("src/test/data/db2013-enc.accdb");
+    File snapshot2 = copy("src/test/data/db2013-enc.accdb");
+
+    // two cache instances over the same file act like two processes
+    try(SharedPageCache cache1 = SharedPageCache.open(cacheFile, 8L << 20);
+        SharedPageCache cache2 = SharedPageCache.open(cacheFile, 1L << 20)) {
+
+      assertEquals(cache1.getSlotCount(), cache2.getSlotCount());
+      if(Files.getFileStore(cacheFile).supportsFileAttributeView("posix")) {
+        assertEquals("rw-------", PosixFilePermissions.toString(
+                         Files.getPosixFilePermissions(cacheFile)));
+      }
+
+      List<String> rows1 = readAll(snapshot1, provider("1234", cache1));
+      assertTrue(cache1.getMissCount() > 0L);
+      assertTrue(cache1.getStoreCount() > 0L);
+
+      // the pages decrypted by the "other process" are reused
+      List<String> rows2 = readAll(snapshot2, provider("1234", cache2));
+      assertEquals(rows1, rows2);
+      assertTrue(cache2.getHitCount() > 0L);
+      assertTrue(cache2.getHitRate() >= 0.5d);
+
+      // a different database does not share cached pages
+      long misses = cache2.getMissCount();
+      readAll(copy("src/test/data/db2007-enc.accdb"),
+              provider("Test123", cache2));
+      assertTrue(cache2.getMissCount() > misses);
+
+      // invalidation is seen by all the processes
+      long generation = cache2.getGeneration();
+      cache1.invalidate();
+      assertEquals(generation + 1L, cache2.getGeneration());
+      misses = cache2.getMissCount();
+      assertEquals(rows1, readAll(snapshot1, provider("1234", cache2)));
+      assertTrue(cache2.getMissCount() > misses);
+    }
+
+    // a cache file accessible by other users is rejected
+    if(Files.getFileStore(cacheFile).supportsFileAttributeView("posix")) {
+      Files.setPosixFilePermissions(
+          cacheFile, PosixFilePermissions.fromString("rw-r--r--"));
+      try {
+        SharedPageCache.open(cacheFile, 8L << 20);
+        fail("IOException should have been thrown");
+      } catch(IOException e) {
+        // success
+      }
+    }
+
+    // garbage is rejected
+    Files.write(cacheFile, new byte[1024]);
+    if(Files.getFileStore(cacheFile).supportsFileAttributeView("posix")) {
+      Files.setPosixFilePermissions(
+          cacheFile, PosixFilePermissions.fromString("rw-------"));
+    }
+    try {
+      SharedPageCache.open(cacheFile, 8L << 20);
+      fail("IOException should have been thrown");
+    } catch(IOException e) {
+      // success
+    }
+
+    Files.delete(cacheFile);
+  }
+
+  private static CryptCodecProvider provider(String pwd,
+                                             SharedPageCache cache) {
+    return new CryptCodecProvider(pwd).setSharedPageCache(cache);
+  }
+}